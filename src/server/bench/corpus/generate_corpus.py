@@ -0,0 +1,208 @@
+#!/usr/bin/env python3
+"""
+Generate the benchmark corpus: synthetic TAIS and ITWS 9850 XML shaped like the SWIM feeds.
+
+Output is deterministic (fixed seed) so benchmark results stay comparable across checkouts.
+
+TAIS
+- tais-single.xml   one track + flight plan record
+- tais-multi.xml    a TATrackAndFlightPlan message carrying several records
+
+ITWS 9850 (TRACON precipitation)
+- itws-9850-sparse.xml  scattered cells, mostly level 0 with no-coverage corners
+- itws-9850-dense.xml   a convective line plus stratiform rain; many short runs
+
+Grids are row-major RLE ("level,count" tokens, whitespace separated), the same text the
+consumer's RleDecoder streams through.
+"""
+
+from __future__ import annotations
+
+import argparse
+import math
+import random
+from pathlib import Path
+
+HERE = Path(__file__).resolve().parent
+
+ITWS_HEADER = """<?xml version="1.0" encoding="UTF-8"?>
+<ns2:itws_msg xmlns:ns2="urn:us:gov:dot:faa:atm:tfm:itwsproduct">
+  <product_msg_id>9850</product_msg_id>
+  <product_msg_name>TRACON Precipitation 5nm</product_msg_name>
+  <product_header_itws_sites>SEA</product_header_itws_sites>
+  <product_header_airports>KSEA</product_header_airports>
+  <product_header_generation_time_seconds>1760000000</product_header_generation_time_seconds>
+  <prcp_TRP_latitude>47449889</prcp_TRP_latitude>
+  <prcp_TRP_longitude>-122311778</prcp_TRP_longitude>
+  <prcp_xoffset>{xoff}</prcp_xoffset>
+  <prcp_yoffset>{yoff}</prcp_yoffset>
+  <prcp_dx>{dx}</prcp_dx>
+  <prcp_dy>{dx}</prcp_dy>
+  <prcp_rotation>0</prcp_rotation>
+  <prcp_nrows>{rows}</prcp_nrows>
+  <prcp_ncols>{cols}</prcp_ncols>
+  <prcp_attenuated>7</prcp_attenuated>
+  <prcp_ap_detected>8</prcp_ap_detected>
+  <prcp_bad_value>9</prcp_bad_value>
+  <prcp_no_coverage>15</prcp_no_coverage>
+  <prcp_grid_compression_encoding_scheme>RLE</prcp_grid_compression_encoding_scheme>
+  <prcp_grid_max_precip_level>{maxlvl}</prcp_grid_max_precip_level>
+  <prcp_grid_compressed>"""
+
+ITWS_FOOTER = """</prcp_grid_compressed>
+</ns2:itws_msg>
+"""
+
+
+def precip_grid(rows: int, cols: int, cells: list[tuple[float, float, float, float]], seed: int) -> list[int]:
+    """Sum of gaussian cells -> levels 0..6; outside the radar circle is no-coverage (15)."""
+    rnd = random.Random(seed)
+    grid = []
+    cy, cx, radius = rows / 2, cols / 2, min(rows, cols) * 0.52
+    for y in range(rows):
+        for x in range(cols):
+            if math.hypot(y - cy, x - cx) > radius:
+                grid.append(15)
+                continue
+            v = 0.0
+            for (by, bx, sigma, peak) in cells:
+                d2 = (y - by) ** 2 + (x - bx) ** 2
+                v += peak * math.exp(-d2 / (2 * sigma * sigma))
+            v += rnd.uniform(-0.6, 0.6)
+            lvl = max(0, min(6, int(v)))
+            # a little attenuation and AP clutter near the site
+            if lvl >= 5 and rnd.random() < 0.01:
+                lvl = 7
+            elif math.hypot(y - cy, x - cx) < 6 and rnd.random() < 0.05:
+                lvl = 8
+            grid.append(lvl)
+    return grid
+
+
+def rle(grid: list[int], per_line: int = 24) -> str:
+    tokens = []
+    run_v, run_n = grid[0], 0
+    for v in grid:
+        if v == run_v:
+            run_n += 1
+        else:
+            tokens.append(f"{run_v},{run_n}")
+            run_v, run_n = v, 1
+    tokens.append(f"{run_v},{run_n}")
+    lines = [" ".join(tokens[i:i + per_line]) for i in range(0, len(tokens), per_line)]
+    return "\n".join(lines)
+
+
+def write_itws(path: Path, rows: int, cols: int, cells, seed: int) -> None:
+    grid = precip_grid(rows, cols, cells, seed)
+    maxlvl = max(v for v in grid if v <= 6)
+    dx = 1000
+    head = ITWS_HEADER.format(xoff=-(cols // 2) * dx, yoff=-(rows // 2) * dx, dx=dx,
+                              rows=rows, cols=cols, maxlvl=maxlvl)
+    path.write_text(head + rle(grid) + ITWS_FOOTER, encoding="utf-8")
+
+
+TAIS_RECORD = """    <record>
+      <track>
+        <trackNum>{track}</trackNum>
+        <mrtTime>2025-10-09T18:22:{sec:02d}.120Z</mrtTime>
+        <status>active</status>
+        <xPos>{x}</xPos>
+        <yPos>{y}</yPos>
+        <lat>{lat:.6f}</lat>
+        <lon>{lon:.6f}</lon>
+        <vVert>{vvert}</vVert>
+        <vx>{vx}</vx>
+        <vy>{vy}</vy>
+        <frozen>0</frozen>
+        <new>0</new>
+        <pseudo>0</pseudo>
+        <adsb>1</adsb>
+        <reportedBeaconCode>{beacon}</reportedBeaconCode>
+        <reportedAltitude>{alt}</reportedAltitude>
+        <acAddress>{addr}</acAddress>
+      </track>
+      <flightPlan>
+        <flightRules>{rules}</flightRules>
+        <runway>16L</runway>
+        <scratchPad1>{scratch}</scratchPad1>
+        <assignedBeaconCode>{beacon}</assignedBeaconCode>
+        <requestedAltitude>{req}</requestedAltitude>
+        <category>{cat}</category>
+        <acid>{acid}</acid>
+        <acType>{actype}</acType>
+        <status>active</status>
+        <sfpn>{sfpn}</sfpn>
+        <rawFlightRules>{raw}</rawFlightRules>
+      </flightPlan>
+      <enhancedData>
+        <eramGufi>KS{gufi}</eramGufi>
+        <sfdpsGufi>us.fdps.2025-10-09T17:51:08Z.000/14/{gufi}</sfdpsGufi>
+        <departureAirport>{dep}</departureAirport>
+        <destinationAirport>{dest}</destinationAirport>
+      </enhancedData>
+    </record>
+"""
+
+TAIS_HEADER = """<?xml version="1.0" encoding="UTF-8"?>
+<ns2:TATrackAndFlightPlan xmlns:ns2="urn:us:gov:dot:faa:atm:terminal:entities:v4-0:tais:terminalautomationinformation">
+  <src>S46</src>
+  <record_set>
+"""
+
+TAIS_FOOTER = """  </record_set>
+</ns2:TATrackAndFlightPlan>
+"""
+
+AIRLINES = ["ASA", "SWA", "DAL", "UAL", "AAL", "QXE", "SKW", "FDX", "N"]
+TYPES = ["B738", "A320", "B739", "E75L", "DH8D", "B77W", "C172", "A21N"]
+AIRPORTS = ["KSEA", "KPDX", "KSFO", "KLAX", "KDEN", "KORD", "KBFI", "PANC"]
+
+
+def tais_record(rnd: random.Random, i: int) -> str:
+    airline = rnd.choice(AIRLINES)
+    vfr = airline == "N"
+    acid = f"N{rnd.randint(100, 999)}{rnd.choice('ABCDEFGH')}{rnd.choice('ABCDEFGH')}" if vfr \
+        else f"{airline}{rnd.randint(1, 2999)}"
+    return TAIS_RECORD.format(
+        track=rnd.randint(1, 4095), sec=i % 60,
+        x=rnd.randint(-60000, 60000), y=rnd.randint(-60000, 60000),
+        lat=47.45 + rnd.uniform(-0.8, 0.8), lon=-122.31 + rnd.uniform(-0.8, 0.8),
+        vvert=rnd.randint(-2000, 2000), vx=rnd.randint(-250, 250), vy=rnd.randint(-250, 250),
+        beacon=f"{rnd.randint(0, 7)}{rnd.randint(0, 7)}{rnd.randint(0, 7)}{rnd.randint(0, 7)}",
+        alt=rnd.randint(10, 400) * 100, addr=f"{rnd.randint(0xA00000, 0xADFFFF):06X}",
+        rules="V" if vfr else "I", raw="V" if vfr else "E",
+        scratch=rnd.choice(["", "SEA", "BFI", "R16"]), req=rnd.randint(30, 400) * 100,
+        cat=rnd.choice(["L", "M", "H"]), acid=acid, actype=rnd.choice(TYPES),
+        sfpn=rnd.randint(100, 999), gufi=rnd.randint(10000000, 99999999),
+        dep=rnd.choice(AIRPORTS), dest=rnd.choice(AIRPORTS),
+    )
+
+
+def write_tais(path: Path, records: int, seed: int) -> None:
+    rnd = random.Random(seed)
+    body = "".join(tais_record(rnd, i) for i in range(records))
+    path.write_text(TAIS_HEADER + body + TAIS_FOOTER, encoding="utf-8")
+
+
+def main() -> None:
+    ap = argparse.ArgumentParser(description=__doc__, formatter_class=argparse.RawDescriptionHelpFormatter)
+    ap.add_argument("--out", type=Path, default=HERE)
+    ap.add_argument("--rows", type=int, default=400)
+    ap.add_argument("--cols", type=int, default=400)
+    args = ap.parse_args()
+
+    args.out.mkdir(parents=True, exist_ok=True)
+    write_tais(args.out / "tais-single.xml", 1, seed=1)
+    write_tais(args.out / "tais-multi.xml", 12, seed=2)
+
+    r, c = args.rows, args.cols
+    sparse = [(r * 0.3, c * 0.7, 9, 3.5), (r * 0.65, c * 0.25, 6, 2.5)]
+    dense = [(r * (0.2 + 0.04 * k), c * (0.15 + 0.06 * k), 5 + k % 3, 5.5 + (k % 2)) for k in range(12)] \
+        + [(r * 0.55, c * 0.55, 60, 2.2), (r * 0.75, c * 0.35, 35, 1.8)]
+    write_itws(args.out / "itws-9850-sparse.xml", r, c, sparse, seed=3)
+    write_itws(args.out / "itws-9850-dense.xml", r, c, dense, seed=4)
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,31 @@
+package dev.vstars;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import javax.xml.stream.XMLInputFactory;
+
+/** Loads the checked-in samples under bench/corpus (packaged as /corpus/*.xml). */
+final class Corpus {
+
+    private Corpus() {}
+
+    static byte[] load(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+            if (in == null) throw new IllegalArgumentException("No corpus file: " + name);
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Same hardening as the consumers
+    static XMLInputFactory xmlInputFactory() {
+        XMLInputFactory xif = XMLInputFactory.newFactory();
+        xif.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        try {
+            xif.setProperty("javax.xml.stream.isSupportingExternalEntities", false);
+        } catch (IllegalArgumentException ignored) {}
+        return xif;
+    }
+}
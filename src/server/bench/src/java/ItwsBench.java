@@ -0,0 +1,150 @@
+package dev.vstars;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/** ITWS 9850 frames: full parse + RLE decode, and JSON encoding of the decoded grid. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ItwsBench {
+
+    @Param({ "itws-9850-sparse.xml", "itws-9850-dense.xml" })
+    public String sample;
+
+    /** ITWS_CELL_LAYOUT: expanded grid, or the feed's runs passed through. */
+    @Param({ "grid", "rle" })
+    public String layout;
+
+    private byte[] xml;
+    private XMLInputFactory xif;
+    private ItwsJsonConsumer.PrecipFrame frame;
+    private final ByteSink body = new ByteSink(1 << 20);
+
+    @Setup
+    public void setup() throws Exception {
+        xml = Corpus.load(sample);
+        xif = Corpus.xmlInputFactory();
+        frame = ItwsJsonConsumer.parseAndDecode(new ByteArrayInputStream(xml), xif, layout.equals("rle"));
+        if (frame == null) throw new IllegalStateException("not a 9850 frame: " + sample);
+    }
+
+    /** Parse + decode of a byte body, handing the grid back to the pool as the consumer does once the body is built. */
+    @Benchmark
+    public int parseAndDecode() throws Exception {
+        ItwsJsonConsumer.PrecipFrame f = ItwsJsonConsumer.parseAndDecode(xml, 0, xml.length, xif, layout.equals("rle"));
+        ItwsJsonConsumer.releaseGrid(f);
+        return f.nonZeroCells;
+    }
+
+    /** The same through StAX alone, the grid text decoded from its CHARACTERS events (text bodies, fallback). */
+    @Benchmark
+    public int parseAndDecodeStax() throws Exception {
+        ItwsJsonConsumer.PrecipFrame f = ItwsJsonConsumer.parseAndDecode(new ByteArrayInputStream(xml), xif, layout.equals("rle"));
+        ItwsJsonConsumer.releaseGrid(f);
+        return f.nonZeroCells;
+    }
+
+    @Benchmark
+    public byte[] buildJsonBytes() throws IOException {
+        return ItwsJsonConsumer.buildJsonBytes(frame, 0);
+    }
+
+    /** The consumer's path: JSON written into a reused body buffer, no per-frame copy (compare gc.alloc.rate.norm). */
+    @Benchmark
+    public int writeJsonReused() throws IOException {
+        body.reset();
+        ItwsJsonConsumer.writeJson(body, frame, 0, null, null, null);
+        return body.size();
+    }
+
+    @Benchmark
+    public byte[] encodeBinary() {
+        return PrecipGridCodec.encode(frame, 0);
+    }
+
+    /** Level contours of the decoded grid at a few simplification tolerances (ITWS_CONTOURS). */
+    @State(Scope.Thread)
+    public static class ContourInput {
+        @Param({ "itws-9850-sparse.xml", "itws-9850-dense.xml" })
+        public String sample;
+
+        @Param({ "0", "500", "2000" })
+        public int toleranceM;
+
+        ItwsJsonConsumer.PrecipFrame frame;
+        PrecipContours contours;
+
+        @Setup
+        public void setup() throws Exception {
+            frame = ItwsJsonConsumer.parseAndDecode(new ByteArrayInputStream(Corpus.load(sample)), Corpus.xmlInputFactory(), false);
+            contours = new PrecipContours(toleranceM);
+        }
+    }
+
+    @Benchmark
+    public int traceContours(ContourInput in) {
+        return in.contours.trace(in.frame).vertices;
+    }
+
+    /** The RLE text alone, fed in the chunk sizes StAX may hand over (0 = one chunk). */
+    @State(Scope.Thread)
+    public static class RleInput {
+        @Param({ "itws-9850-sparse.xml", "itws-9850-dense.xml" })
+        public String sample;
+
+        @Param({ "64", "1024", "8192", "0" })
+        public int chunkChars;
+
+        String[] chunks;
+        byte[] rleBytes;
+        byte[] grid;
+        int[] specials;    // bad, noCoverage, attenuated, ap
+
+        @Setup
+        public void setup() throws Exception {
+            String text = new String(Corpus.load(sample), StandardCharsets.UTF_8);
+            int start = text.indexOf("<prcp_grid_compressed>") + "<prcp_grid_compressed>".length();
+            String rle = text.substring(start, text.indexOf("</prcp_grid_compressed>", start));
+            rleBytes = rle.getBytes(StandardCharsets.US_ASCII);
+
+            int size = chunkChars <= 0 ? rle.length() : chunkChars;
+            chunks = new String[(rle.length() + size - 1) / size];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = rle.substring(i * size, Math.min(rle.length(), (i + 1) * size));
+            }
+
+            ItwsJsonConsumer.PrecipFrame f = ItwsJsonConsumer.parseAndDecode(
+                    new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), Corpus.xmlInputFactory());
+            grid = new byte[f.rows * f.cols];
+            specials = new int[] { f.badValue, f.noCoverage, f.attenuated, f.apDetected };
+        }
+    }
+
+    @Benchmark
+    public int rleFeed(RleInput in) {
+        ItwsJsonConsumer.RleDecoder dec = new ItwsJsonConsumer.RleDecoder(in.grid);
+        dec.setSpecials(in.specials[0], in.specials[1], in.specials[2], in.specials[3]);
+        for (String chunk : in.chunks) dec.feed(chunk);
+        dec.finish();
+        return dec.filled();
+    }
+
+    /** The same text decoded from its bytes in one call (chunkChars does not apply). */
+    @Benchmark
+    public int rleFeedBytes(RleInput in) {
+        ItwsJsonConsumer.RleDecoder dec = new ItwsJsonConsumer.RleDecoder(in.grid);
+        dec.setSpecials(in.specials[0], in.specials[1], in.specials[2], in.specials[3]);
+        dec.feed(in.rleBytes, 0, in.rleBytes.length);
+        dec.finish();
+        return dec.filled();
+    }
+}
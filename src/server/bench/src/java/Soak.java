@@ -0,0 +1,254 @@
+package dev.vstars;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * End-to-end soak: generates a synthetic feed, replays it through a real consumer process against a
+ * {@link StubSink}, samples the consumer's {@code /metrics} every second, and prints a report of
+ * sustained throughput, stage latencies, heap high-water mark and GC pauses.
+ *
+ * The consumer runs as a child JVM (same classpath) so its heap and GC numbers are its own. Any
+ * consumer setting not driven by the soak (TAIS_STRIPES, HTTP_MAX_IN_FLIGHT, ...) is inherited from
+ * the environment.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar dev.vstars.Soak tais tracks=6000 seconds=300 latency=20 errors=0.01
+ * java -cp target/benchmarks.jar dev.vstars.Soak itws rows=800 cols=800 coverage=0.4 frames=60 speed=10
+ * </pre>
+ */
+final class Soak {
+
+    private Soak() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || !(args[0].equals("tais") || args[0].equals("itws"))) {
+            System.err.println("usage: Soak tais|itws [key=value ...]");
+            System.exit(2);
+        }
+        boolean tais = args[0].equals("tais");
+        TrafficGenerator.Options o = TrafficGenerator.Options.parse(Arrays.copyOfRange(args, 1, args.length));
+        String speed = o.string("speed", "1");
+        double speedFactor = ReplaySource.parseSpeed(speed, 1);
+        Path dir = Files.createTempDirectory("soak-");
+
+        // 1. Feed
+        Path capture = dir.resolve(args[0] + ".cap");
+        long messages;
+        double feedSeconds;
+        String feed;
+        if (tais) {
+            TrafficGenerator.TaisOptions t = TrafficGenerator.TaisOptions.from(o);
+            messages = TrafficGenerator.tais(capture, t);
+            feedSeconds = t.seconds();
+            feed = String.format(Locale.ROOT, "%d tracks, %.0f records/s, %d records/message",
+                    t.tracks(), t.recordsPerSecond(), t.recordsPerMessage());
+        } else {
+            TrafficGenerator.ItwsOptions i = TrafficGenerator.ItwsOptions.from(o);
+            messages = TrafficGenerator.itws(capture, i);
+            feedSeconds = i.frames() * i.intervalSeconds();
+            feed = String.format(Locale.ROOT, "%dx%d grid, %.0f%% coverage, a frame every %.0f s",
+                    i.rows(), i.cols(), i.coverage() * 100, i.intervalSeconds());
+        }
+        double playSeconds = speedFactor == 0 ? 0 : feedSeconds / speedFactor;
+
+        // 2. Sink + consumer
+        int metricsPort = freePort();
+        try (StubSink sink = new StubSink(o.integer("latency", 10), o.integer("jitter", 20), o.decimal("errors", 0))) {
+            ProcessBuilder pb = new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-Xmx" + o.string("heap", "512m"),
+                    "-cp", System.getProperty("java.class.path"),
+                    tais ? "dev.vstars.TaisJsonConsumer" : "dev.vstars.ItwsJsonConsumer");
+            Map<String, String> env = pb.environment();
+            String p = tais ? "TAIS_" : "ITWS_";
+            env.put(p + "REPLAY_FILE", capture.toString());
+            env.put(p + "REPLAY_SPEED", speed);
+            env.put(p + "METRICS_PORT", String.valueOf(metricsPort));
+            if (tais) {
+                env.put("FLIGHTRULES_POST_URL", sink.url() + "/api/flightRules");
+                env.putIfAbsent("TAIS_INGEST_TOKEN", "soak");
+                env.put("PRINT_JSON", "false");
+            } else {
+                env.put("WX_POST_URL", sink.url() + "/api/wx/radar");
+                env.put("ITWS_PRINT_JSON", "false");
+            }
+            pb.redirectErrorStream(true);
+
+            Path log = dir.resolve("consumer.log");
+            System.out.println("Soak " + args[0] + ": " + messages + " messages (" + feed + ") over "
+                    + (long) feedSeconds + " s of feed time, replay speed " + speed + "; logs in " + dir);
+
+            Process consumer = pb.start();
+            long launchNanos = System.nanoTime();
+            long[] marks = { 0, 0 };     // consumer connected to the replay, replay fully acked
+            Thread reader = new Thread(() -> pump(consumer, log, marks), "soak-log");
+            reader.setDaemon(true);
+            reader.start();
+
+            // 3. Sample /metrics until the replay has been fully acked (or a generous timeout)
+            HttpClient http = HttpClient.newHttpClient();
+            String receivedKey = (tais ? "tais" : "itws") + "_messages_received_total";
+            String heapKey = (tais ? "tais" : "itws") + "_jvm_heap_used_bytes";
+            long timeoutNanos = (long) ((Math.max(playSeconds, 30) * 3 + 60) * 1e9);
+            List<Double> received = new ArrayList<>();
+            double heapHigh = 0;
+            Map<String, Double> last = Map.of();
+            while (consumer.isAlive() && System.nanoTime() - launchNanos < timeoutNanos) {
+                synchronized (marks) {
+                    if (marks[1] != 0) break;
+                    marks.wait(1000);
+                }
+                Map<String, Double> m = scrape(http, metricsPort);
+                if (m.isEmpty()) continue;
+                last = m;
+                received.add(m.getOrDefault(receivedKey, 0.0));
+                heapHigh = Math.max(heapHigh, m.getOrDefault(heapKey, 0.0));
+            }
+            Map<String, Double> fin = scrape(http, metricsPort);
+            if (!fin.isEmpty()) last = fin;
+            consumer.destroy();
+            reader.join(5000);   // let the log pump drain and flush
+
+            long startNanos, endNanos;
+            boolean completed;
+            synchronized (marks) {
+                startNanos = marks[0] != 0 ? marks[0] : launchNanos;
+                completed = marks[1] != 0;
+                endNanos = completed ? marks[1] : System.nanoTime();
+            }
+            report(tais ? "tais" : "itws", messages, playSeconds, (endNanos - startNanos) / 1e9,
+                    completed, received, heapHigh, last, sink);
+        }
+    }
+
+    // Copies the consumer's output to the log file and notes when the replay starts and has been fully acked
+    private static void pump(Process consumer, Path log, long[] marks) {
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(consumer.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter w = new PrintWriter(Files.newBufferedWriter(log))) {
+            for (String line; (line = r.readLine()) != null; ) {
+                w.println(line);
+                if (line.startsWith("Connected.")) {
+                    synchronized (marks) {
+                        marks[0] = System.nanoTime();
+                    }
+                } else if (line.contains("replay complete")) {
+                    synchronized (marks) {
+                        marks[1] = System.nanoTime();
+                        marks.notifyAll();
+                    }
+                }
+            }
+        } catch (IOException ignored) {
+            // consumer gone
+        }
+    }
+
+    // ---------------- Report ----------------
+
+    private static void report(String prefix, long messages, double playSeconds, double elapsed, boolean completed,
+                               List<Double> received, double heapHigh, Map<String, Double> m, StubSink sink) {
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-22s %s%n", "completed", completed
+                ? String.format(Locale.ROOT, "yes, in %.1f s", elapsed)
+                : String.format(Locale.ROOT, "NO (stopped after %.1f s)", elapsed));
+        if (playSeconds > 0) {
+            System.out.printf(Locale.ROOT, "%-22s %.1f msg/s%n", "offered", messages / playSeconds);
+            if (completed) {
+                System.out.printf(Locale.ROOT, "%-22s %+.1f s (%s)%n", "finish vs schedule", elapsed - playSeconds,
+                        elapsed - playSeconds < Math.max(2, playSeconds * 0.05) ? "kept up" : "fell behind");
+            }
+        }
+        double total = m.getOrDefault(prefix + "_messages_received_total", 0.0);
+        System.out.printf(Locale.ROOT, "%-22s %.1f msg/s (%.0f messages)%n", "sustained", total / elapsed, total);
+        if (received.size() > 6) {
+            // Worst 5 s window, skipping the first and last few seconds
+            double worst = Double.MAX_VALUE;
+            for (int i = 2; i + 5 < received.size() - 1; i++) {
+                worst = Math.min(worst, (received.get(i + 5) - received.get(i)) / 5);
+            }
+            if (worst != Double.MAX_VALUE) System.out.printf(Locale.ROOT, "%-22s %.1f msg/s%n", "worst 5 s window", worst);
+        }
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-22s %10s %10s %10s %10s %10s%n", "latency (ms)", "count", "p50", "p99", "p999", "max");
+        for (String name : summaries(m, prefix)) {
+            String base = prefix + "_" + name;
+            System.out.printf(Locale.ROOT, "%-22s %10.0f %10.2f %10.2f %10.2f %10.2f%n", name.replace("_seconds", ""),
+                    m.getOrDefault(base + "_count", 0.0),
+                    ms(m, base, "0.5"), ms(m, base, "0.99"), ms(m, base, "0.999"), ms(m, base, "1.0"));
+        }
+
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%-22s %.1f MB (sampled used: %.1f MB)%n", "heap high-water",
+                m.getOrDefault(prefix + "_jvm_heap_peak_bytes", 0.0) / 1e6, heapHigh / 1e6);
+        System.out.printf(Locale.ROOT, "%-22s %.0f collections, %.0f ms total, %.1f%% of run%n", "GC",
+                m.getOrDefault(prefix + "_jvm_gc_collections_total", 0.0),
+                m.getOrDefault(prefix + "_jvm_gc_time_ms_total", 0.0),
+                m.getOrDefault(prefix + "_jvm_gc_time_ms_total", 0.0) / 10 / elapsed);
+        System.out.printf(Locale.ROOT, "%-22s %d accepted, %d rejected, %.1f MB%n", "sink",
+                sink.accepted.sum(), sink.rejected.sum(), sink.bytes.sum() / 1e6);
+
+        System.out.println();
+        for (Map.Entry<String, Double> e : m.entrySet()) {
+            String k = e.getKey();
+            if (k.endsWith("_total") && !k.contains("_jvm_") && !k.contains("{")) {
+                System.out.printf(Locale.ROOT, "%-40s %.0f%n", k.substring(prefix.length() + 1), e.getValue());
+            }
+        }
+    }
+
+    // Names of every summary the consumer exports (post_lag_seconds, parse_seconds, jvm_gc_pause_seconds, ...)
+    private static List<String> summaries(Map<String, Double> m, String prefix) {
+        List<String> out = new ArrayList<>();
+        for (String k : m.keySet()) {
+            if (k.endsWith("{quantile=\"0.5\"}")) {
+                out.add(k.substring(prefix.length() + 1, k.indexOf('{')));
+            }
+        }
+        return out;
+    }
+
+    private static double ms(Map<String, Double> m, String base, String q) {
+        return m.getOrDefault(base + "{quantile=\"" + q + "\"}", 0.0) * 1000;
+    }
+
+    private static Map<String, Double> scrape(HttpClient http, int port) {
+        try {
+            HttpResponse<String> r = http.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/metrics"))
+                    .timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.ofString());
+            Map<String, Double> out = new TreeMap<>();
+            for (String line : r.body().split("\n")) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int sp = line.lastIndexOf(' ');
+                out.put(line.substring(0, sp), Double.parseDouble(line.substring(sp + 1)));
+            }
+            return out;
+        } catch (Exception e) {
+            return Map.of();   // not up yet, or already gone
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+}
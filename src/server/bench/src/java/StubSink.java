@@ -0,0 +1,89 @@
+package dev.vstars;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for the Node ingest endpoints: accepts any POST, after a configurable latency
+ * (fixed plus uniform jitter), and fails a configurable fraction of requests with 503 so the
+ * consumers' retry and spool paths are exercised. Requests are served on a thread per connection,
+ * so latency does not serialize concurrent POSTs.
+ */
+final class StubSink implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "stub-sink");
+        t.setDaemon(true);
+        return t;
+    });
+    private final int latencyMs;
+    private final int jitterMs;
+    private final double errorRate;
+
+    final LongAdder accepted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+
+    StubSink(int latencyMs, int jitterMs, double errorRate) throws IOException {
+        this.latencyMs = Math.max(0, latencyMs);
+        this.jitterMs = Math.max(0, jitterMs);
+        this.errorRate = Math.max(0, Math.min(1, errorRate));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(pool);
+        server.start();
+    }
+
+    /** Base URL, e.g. {@code http://127.0.0.1:41234}. */
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange ex) throws IOException {
+        try (ex; InputStream in = ex.getRequestBody()) {
+            long n = 0;
+            byte[] buf = new byte[64 * 1024];
+            for (int r; (r = in.read(buf)) > 0; ) n += r;
+
+            int delay = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextInt(jitterMs + 1) : 0);
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            boolean fail = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+            if (fail) {
+                rejected.increment();
+            } else {
+                accepted.increment();
+                bytes.add(n);
+            }
+            byte[] body = (fail ? "unavailable" : "ok").getBytes();
+            ex.sendResponseHeaders(fail ? 503 : 200, body.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,76 @@
+package dev.vstars;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TAIS per-message work: the StAX fallback, the byte scanner, rules normalization, and the
+ * scan-plus-serialize path the consumer runs for every message.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TaisBench {
+
+    @Param({ "tais-single.xml", "tais-multi.xml" })
+    public String sample;
+
+    private byte[] xml;
+    private XMLInputFactory xif;
+    private TaisScanner scanner;
+    private TaisScanner scanned;            // pre-scanned copy for normalizeRules
+    private TaisJsonConsumer.RecordWriter writer;
+    private ByteSink body;
+
+    @Setup
+    public void setup() throws IOException {
+        xml = Corpus.load(sample);
+        xif = Corpus.xmlInputFactory();
+        scanner = new TaisScanner();
+        scanned = new TaisScanner();
+        if (!scanned.scan(xml, 0, xml.length)) throw new IllegalStateException("scan failed: " + sample);
+        writer = new TaisJsonConsumer.RecordWriter();
+        body = new ByteSink(4096);
+    }
+
+    @Benchmark
+    public Map<String, String> parseMinimalFields() throws Exception {
+        return TaisJsonConsumer.parseMinimalFields(xif, new ByteArrayInputStream(xml));
+    }
+
+    @Benchmark
+    public int scan() {
+        scanner.scan(xml, 0, xml.length);
+        return scanner.records();
+    }
+
+    @Benchmark
+    public void normalizeRules(Blackhole bh) {
+        for (int r = 0, n = scanned.records(); r < n; r++) {
+            scanned.select(r);
+            bh.consume(TaisJsonConsumer.normalizeRules(scanned));
+        }
+    }
+
+    @Benchmark
+    public int scanAndWrite() throws IOException {
+        scanner.scan(xml, 0, xml.length);
+        body.reset();
+        long now = 1_760_000_000_000L;
+        for (int r = 0, n = scanner.records(); r < n; r++) {
+            scanner.select(r);
+            if (r > 0) body.write(',');
+            writer.write(body, scanner, TaisJsonConsumer.normalizeRules(scanner), now);
+        }
+        return body.size();
+    }
+}
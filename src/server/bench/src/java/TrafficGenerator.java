@@ -0,0 +1,373 @@
+package dev.vstars;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Synthetic SWIM traffic written as {@link CaptureFile}s, so it can be replayed through the real consumers
+ * ({@code *_REPLAY_FILE}) at any speed.
+ *
+ * TAIS: a fleet of concurrently active tracks that move, climb and descend, report once per radar scan,
+ * and occasionally change beacon code or flight rules; tracks drop and new ones appear so the consumer's
+ * track table sees churn. Updates are packed several records per message like the STARS feed.
+ *
+ * ITWS: a sequence of 9850 frames whose storm cells drift between frames. Storm coverage is the
+ * fraction of in-range cells with precipitation (level 1 or more), hit exactly by thresholding.
+ *
+ * Deterministic for a given seed.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar dev.vstars.TrafficGenerator tais out.cap tracks=6000 seconds=300
+ * java -cp target/benchmarks.jar dev.vstars.TrafficGenerator itws out.cap rows=800 cols=800 coverage=0.35
+ * </pre>
+ */
+final class TrafficGenerator {
+
+    static final long EPOCH_MS = 1_760_000_000_000L;
+
+    private TrafficGenerator() {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TrafficGenerator tais|itws <out.cap> [key=value ...]");
+            System.exit(2);
+        }
+        Options o = Options.parse(Arrays.copyOfRange(args, 2, args.length));
+        Path out = Path.of(args[1]);
+        long n = switch (args[0]) {
+            case "tais" -> tais(out, TaisOptions.from(o));
+            case "itws" -> itws(out, ItwsOptions.from(o));
+            default -> throw new IllegalArgumentException("unknown feed: " + args[0]);
+        };
+        System.out.println("Wrote " + n + " messages to " + out);
+    }
+
+    // ---------------- TAIS ----------------
+
+    record TaisOptions(int tracks, double scanSeconds, int seconds, int recordsPerMessage,
+                       double changeRate, double churnRate, long seed) {
+        static TaisOptions from(Options o) {
+            return new TaisOptions(
+                    o.integer("tracks", 600),           // concurrently active tracks
+                    o.decimal("scan", 4.8),             // seconds between updates of one track
+                    o.integer("seconds", 120),          // simulated duration
+                    o.integer("records", 4),            // records per message
+                    o.decimal("changes", 0.002),        // per-update chance of a beacon or rules change
+                    o.decimal("churn", 0.001),          // per-update chance the track ends and a new one starts
+                    o.integer("seed", 1));
+        }
+
+        double recordsPerSecond() {
+            return tracks / scanSeconds;
+        }
+    }
+
+    private static final String[] AIRLINES = { "ASA", "SWA", "DAL", "UAL", "AAL", "QXE", "SKW", "FDX", "N" };
+    private static final String[] TYPES = { "B738", "A320", "B739", "E75L", "DH8D", "B77W", "C172", "A21N" };
+    private static final String[] AIRPORTS = { "KSEA", "KPDX", "KSFO", "KLAX", "KDEN", "KORD", "KBFI", "PANC" };
+
+    private static final class Track {
+        int trackNum;
+        String acAddress, acid, acType, dep, dest, beacon;
+        boolean vfr;
+        double x, y, vx, vy, alt, vVert;
+        long nextUpdateMs;
+    }
+
+    /** Writes the TAIS feed; returns the number of messages. */
+    static long tais(Path out, TaisOptions o) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(o.seed());
+        long scanMs = Math.max(1, Math.round(o.scanSeconds() * 1000));
+        Track[] tracks = new Track[o.tracks()];
+        int[] nextTrackNum = { 1 };
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = newTrack(rnd, nextTrackNum);
+            tracks[i].nextUpdateMs = EPOCH_MS + rnd.nextLong(scanMs);   // spread over one scan
+        }
+
+        long endMs = EPOCH_MS + o.seconds() * 1000L;
+        long messages = 0;
+        StringBuilder xml = new StringBuilder(4096);
+        List<Track> due = new ArrayList<>();
+        try (CaptureFile.Writer w = new CaptureFile.Writer(out)) {
+            // 100 ms ticks; all tracks due in a tick are packed into messages of up to N records
+            for (long now = EPOCH_MS; now < endMs; now += 100) {
+                due.clear();
+                for (int i = 0; i < tracks.length; i++) {
+                    Track t = tracks[i];
+                    if (t.nextUpdateMs > now) continue;
+                    if (rnd.nextDouble() < o.churnRate()) {
+                        t = tracks[i] = newTrack(rnd, nextTrackNum);
+                    }
+                    advance(rnd, t, o, scanMs);
+                    t.nextUpdateMs += scanMs;
+                    due.add(t);
+                }
+                for (int from = 0; from < due.size(); from += o.recordsPerMessage()) {
+                    int to = Math.min(due.size(), from + o.recordsPerMessage());
+                    xml.setLength(0);
+                    xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ns2:TATrackAndFlightPlan xmlns:ns2=\"urn:us:gov:dot:faa:atm:terminal:entities:v4-0:tais:terminalautomationinformation\">\n  <src>S46</src>\n  <record_set>\n");
+                    for (int k = from; k < to; k++) appendRecord(xml, due.get(k), now);
+                    xml.append("  </record_set>\n</ns2:TATrackAndFlightPlan>\n");
+
+                    // Receive time spread within the tick; broker timestamp 20-80 ms earlier
+                    long received = now + rnd.nextInt(100);
+                    w.append(received, received - 20 - rnd.nextInt(60), CaptureFile.KIND_TEXT, Map.of(),
+                            xml.toString().getBytes(StandardCharsets.UTF_8));
+                    messages++;
+                }
+            }
+        }
+        return messages;
+    }
+
+    private static Track newTrack(SplittableRandom rnd, int[] nextTrackNum) {
+        Track t = new Track();
+        t.trackNum = nextTrackNum[0];
+        nextTrackNum[0] = nextTrackNum[0] % 9999 + 1;
+        String airline = AIRLINES[rnd.nextInt(AIRLINES.length)];
+        t.vfr = airline.equals("N");
+        t.acid = t.vfr
+                ? "N" + (100 + rnd.nextInt(900)) + (char) ('A' + rnd.nextInt(8)) + (char) ('A' + rnd.nextInt(8))
+                : airline + (1 + rnd.nextInt(2999));
+        t.acAddress = String.format("%06X", 0xA00000 + rnd.nextInt(0xE0000));
+        t.acType = TYPES[rnd.nextInt(TYPES.length)];
+        t.dep = AIRPORTS[rnd.nextInt(AIRPORTS.length)];
+        t.dest = AIRPORTS[rnd.nextInt(AIRPORTS.length)];
+        t.beacon = octal4(rnd);
+        t.x = rnd.nextInt(-60_000, 60_000);
+        t.y = rnd.nextInt(-60_000, 60_000);
+        t.vx = rnd.nextInt(-250, 251);
+        t.vy = rnd.nextInt(-250, 251);
+        t.alt = 1000 + rnd.nextInt(390) * 100;
+        t.vVert = rnd.nextInt(-2000, 2001);
+        return t;
+    }
+
+    private static void advance(SplittableRandom rnd, Track t, TaisOptions o, long scanMs) {
+        double dt = scanMs / 1000.0;
+        t.x += t.vx * dt * 0.514;      // knots to m/s
+        t.y += t.vy * dt * 0.514;
+        t.alt = Math.max(0, Math.min(45_000, t.alt + t.vVert * dt / 60));
+        if (rnd.nextDouble() < 0.05) t.vVert = rnd.nextInt(-2000, 2001);
+        if (rnd.nextDouble() < o.changeRate()) {
+            if (rnd.nextBoolean()) t.beacon = octal4(rnd);
+            else t.vfr = !t.vfr;
+        }
+    }
+
+    private static String octal4(SplittableRandom rnd) {
+        return "" + rnd.nextInt(8) + rnd.nextInt(8) + rnd.nextInt(8) + rnd.nextInt(8);
+    }
+
+    private static void appendRecord(StringBuilder sb, Track t, long nowMs) {
+        double lat = 47.45 + t.y / 111_320.0;
+        double lon = -122.31 + t.x / 75_000.0;
+        String rules = t.vfr ? "V" : "I";
+        sb.append("    <record>\n      <track>\n")
+                .append("        <trackNum>").append(t.trackNum).append("</trackNum>\n")
+                .append("        <mrtTime>").append(Instant.ofEpochMilli(nowMs)).append("</mrtTime>\n")
+                .append("        <status>active</status>\n")
+                .append("        <xPos>").append((long) t.x).append("</xPos>\n")
+                .append("        <yPos>").append((long) t.y).append("</yPos>\n")
+                .append("        <lat>").append(String.format(Locale.ROOT, "%.6f", lat)).append("</lat>\n")
+                .append("        <lon>").append(String.format(Locale.ROOT, "%.6f", lon)).append("</lon>\n")
+                .append("        <vVert>").append((long) t.vVert).append("</vVert>\n")
+                .append("        <vx>").append((long) t.vx).append("</vx>\n")
+                .append("        <vy>").append((long) t.vy).append("</vy>\n")
+                .append("        <frozen>0</frozen>\n        <new>0</new>\n        <pseudo>0</pseudo>\n        <adsb>1</adsb>\n")
+                .append("        <reportedBeaconCode>").append(t.beacon).append("</reportedBeaconCode>\n")
+                .append("        <reportedAltitude>").append((long) t.alt / 100 * 100).append("</reportedAltitude>\n")
+                .append("        <acAddress>").append(t.acAddress).append("</acAddress>\n")
+                .append("      </track>\n      <flightPlan>\n")
+                .append("        <flightRules>").append(rules).append("</flightRules>\n")
+                .append("        <runway>16L</runway>\n")
+                .append("        <assignedBeaconCode>").append(t.beacon).append("</assignedBeaconCode>\n")
+                .append("        <acid>").append(t.acid).append("</acid>\n")
+                .append("        <acType>").append(t.acType).append("</acType>\n")
+                .append("        <status>active</status>\n")
+                .append("        <rawFlightRules>").append(t.vfr ? "V" : "E").append("</rawFlightRules>\n")
+                .append("      </flightPlan>\n      <enhancedData>\n")
+                .append("        <departureAirport>").append(t.dep).append("</departureAirport>\n")
+                .append("        <destinationAirport>").append(t.dest).append("</destinationAirport>\n")
+                .append("      </enhancedData>\n    </record>\n");
+    }
+
+    // ---------------- ITWS ----------------
+
+    record ItwsOptions(int rows, int cols, double coverage, int cells, int frames, double intervalSeconds, long seed) {
+        static ItwsOptions from(Options o) {
+            return new ItwsOptions(
+                    o.integer("rows", 400),
+                    o.integer("cols", 400),
+                    o.decimal("coverage", 0.15),        // fraction of in-range cells with precip
+                    o.integer("cells", 24),             // storm cells
+                    o.integer("frames", 40),
+                    o.decimal("interval", 30),          // seconds between frames
+                    o.integer("seed", 1));
+        }
+    }
+
+    /** Writes the ITWS feed (9850 frames, productID property set); returns the number of messages. */
+    static long itws(Path out, ItwsOptions o) throws IOException {
+        SplittableRandom rnd = new SplittableRandom(o.seed());
+        int rows = o.rows(), cols = o.cols();
+        double[][] cells = new double[o.cells()][];   // y, x, sigma, peak, vy, vx
+        for (int i = 0; i < cells.length; i++) {
+            double sigma = Math.max(2, Math.min(rows, cols) * (0.01 + rnd.nextDouble() * 0.06));
+            cells[i] = new double[] { rnd.nextDouble() * rows, rnd.nextDouble() * cols, sigma,
+                    0.5 + rnd.nextDouble() * 1.5, rnd.nextDouble() * 2 - 0.5, rnd.nextDouble() * 3 - 1 };
+        }
+
+        long intervalMs = Math.max(1, Math.round(o.intervalSeconds() * 1000));
+        double[] field = new double[rows * cols];
+        int[] grid = new int[rows * cols];
+        StringBuilder xml = new StringBuilder(1 << 20);
+        try (CaptureFile.Writer w = new CaptureFile.Writer(out)) {
+            for (int f = 0; f < o.frames(); f++) {
+                precipGrid(rnd, rows, cols, cells, o.coverage(), field, grid);
+                for (double[] c : cells) {   // drift
+                    c[0] += c[4];
+                    c[1] += c[5];
+                }
+                itwsXml(xml, rows, cols, grid);
+                long received = EPOCH_MS + f * intervalMs;
+                w.append(received, received - 500 - rnd.nextInt(1500), CaptureFile.KIND_BYTES,
+                        Map.of("productID", 9850), xml.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return o.frames();
+    }
+
+    private static void precipGrid(SplittableRandom rnd, int rows, int cols, double[][] cells, double coverage,
+                                   double[] field, int[] grid) {
+        Arrays.fill(field, 0);
+        for (double[] c : cells) {
+            double cy = c[0], cx = c[1], sigma = c[2], peak = c[3];
+            int r = (int) Math.ceil(3 * sigma);
+            for (int y = Math.max(0, (int) cy - r); y < Math.min(rows, (int) cy + r); y++) {
+                for (int x = Math.max(0, (int) cx - r); x < Math.min(cols, (int) cx + r); x++) {
+                    double d2 = (y - cy) * (y - cy) + (x - cx) * (x - cx);
+                    field[y * cols + x] += peak * Math.exp(-d2 / (2 * sigma * sigma));
+                }
+            }
+        }
+
+        // Threshold at the coverage quantile of the in-range cells, then scale the rest onto levels 1..6
+        double cy = rows / 2.0, cx = cols / 2.0, radius = Math.min(rows, cols) * 0.52;
+        double[] inRange = new double[field.length];
+        int n = 0;
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                if (Math.hypot(y - cy, x - cx) <= radius) inRange[n++] = field[y * cols + x];
+            }
+        }
+        Arrays.sort(inRange, 0, n);
+        double threshold = n == 0 ? 0 : inRange[(int) Math.min(n - 1, Math.max(0, Math.round(n * (1 - coverage))))];
+        double top = n == 0 ? 1 : Math.max(threshold + 1e-9, inRange[n - 1]);
+
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < cols; x++) {
+                int i = y * cols + x;
+                double d = Math.hypot(y - cy, x - cx);
+                if (d > radius) {
+                    grid[i] = 15;                                   // no coverage
+                } else if (coverage <= 0 || field[i] < threshold) {
+                    grid[i] = d < 6 && rnd.nextDouble() < 0.05 ? 8 : 0;   // AP clutter near the site
+                } else {
+                    int lvl = 1 + (int) (5.99 * (field[i] - threshold) / (top - threshold));
+                    grid[i] = lvl >= 5 && rnd.nextDouble() < 0.01 ? 7 : lvl;   // some attenuation in cores
+                }
+            }
+        }
+    }
+
+    private static void itwsXml(StringBuilder sb, int rows, int cols, int[] grid) {
+        int maxLvl = 0;
+        for (int v : grid) if (v <= 6) maxLvl = Math.max(maxLvl, v);
+        int dx = 1000;
+        sb.setLength(0);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<ns2:itws_msg xmlns:ns2=\"urn:us:gov:dot:faa:atm:tfm:itwsproduct\">\n")
+                .append("  <product_msg_id>9850</product_msg_id>\n")
+                .append("  <product_msg_name>TRACON Precipitation 5nm</product_msg_name>\n")
+                .append("  <product_header_itws_sites>SEA</product_header_itws_sites>\n")
+                .append("  <product_header_airports>KSEA</product_header_airports>\n")
+                .append("  <prcp_TRP_latitude>47449889</prcp_TRP_latitude>\n")
+                .append("  <prcp_TRP_longitude>-122311778</prcp_TRP_longitude>\n")
+                .append("  <prcp_xoffset>").append(-(cols / 2) * dx).append("</prcp_xoffset>\n")
+                .append("  <prcp_yoffset>").append(-(rows / 2) * dx).append("</prcp_yoffset>\n")
+                .append("  <prcp_dx>").append(dx).append("</prcp_dx>\n")
+                .append("  <prcp_dy>").append(dx).append("</prcp_dy>\n")
+                .append("  <prcp_rotation>0</prcp_rotation>\n")
+                .append("  <prcp_nrows>").append(rows).append("</prcp_nrows>\n")
+                .append("  <prcp_ncols>").append(cols).append("</prcp_ncols>\n")
+                .append("  <prcp_attenuated>7</prcp_attenuated>\n")
+                .append("  <prcp_ap_detected>8</prcp_ap_detected>\n")
+                .append("  <prcp_bad_value>9</prcp_bad_value>\n")
+                .append("  <prcp_no_coverage>15</prcp_no_coverage>\n")
+                .append("  <prcp_grid_compression_encoding_scheme>RLE</prcp_grid_compression_encoding_scheme>\n")
+                .append("  <prcp_grid_max_precip_level>").append(maxLvl).append("</prcp_grid_max_precip_level>\n")
+                .append("  <prcp_grid_compressed>");
+
+        // Row-major "level,count" runs, 24 per line as in the feed
+        int runValue = grid[0], runLength = 0, tokens = 0;
+        for (int i = 0; i <= grid.length; i++) {
+            if (i < grid.length && grid[i] == runValue) {
+                runLength++;
+                continue;
+            }
+            if (tokens > 0) sb.append(tokens % 24 == 0 ? '\n' : ' ');
+            sb.append(runValue).append(',').append(runLength);
+            tokens++;
+            if (i < grid.length) {
+                runValue = grid[i];
+                runLength = 1;
+            }
+        }
+        sb.append("</prcp_grid_compressed>\n</ns2:itws_msg>\n");
+    }
+
+    // ---------------- Options ----------------
+
+    /** {@code key=value} arguments. */
+    static final class Options {
+        private final Map<String, String> values;
+
+        private Options(Map<String, String> values) {
+            this.values = values;
+        }
+
+        static Options parse(String[] args) {
+            Map<String, String> m = new HashMap<>();
+            for (String a : args) {
+                int eq = a.indexOf('=');
+                if (eq <= 0) throw new IllegalArgumentException("expected key=value: " + a);
+                m.put(a.substring(0, eq), a.substring(eq + 1));
+            }
+            return new Options(m);
+        }
+
+        int integer(String key, int def) {
+            String v = values.get(key);
+            return v == null ? def : Integer.parseInt(v.trim());
+        }
+
+        double decimal(String key, double def) {
+            String v = values.get(key);
+            return v == null ? def : Double.parseDouble(v.trim());
+        }
+
+        String string(String key, String def) {
+            return values.getOrDefault(key, def);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 const DEFAULT_POLL_INTERVAL_MS = 5_000;
 const DEFAULT_HTTP_PORT = 8080;
+const DEFAULT_INGEST_STREAM_PORT = 8081;
 const DEFAULT_ADSBLOL_BASE_URL = "https://api.adsb.lol";
 const DEFAULT_ADSBLOL_SEARCH_PATH = "/v2/lat/{lat}/lon/{lon}/dist/{radius}";
 const DEFAULT_ADSBLOL_ROUTESET_PATH = "/api/0/routeset/";
@@ -15,6 +16,8 @@ const DEFAULT_WX_REQUEST_CHUNK_SIZE = 1_000;
 export interface ServerConfig {
   pollIntervalMs: number;
   port: number;
+  // Listener for the long-lived ingest streams (POST /api/flightRules/stream, /api/wx/radar/stream); 0 = off
+  ingestStreamPort: number;
   centerLat: number;
   centerLon: number;
   radiusNm: number;
@@ -85,6 +88,7 @@ export function loadConfig(): ServerConfig {
   return {
     pollIntervalMs: readOptionalNumber("POLL_INTERVAL_MS", DEFAULT_POLL_INTERVAL_MS),
     port: readOptionalNumber("PORT", DEFAULT_HTTP_PORT),
+    ingestStreamPort: readOptionalNumber("INGEST_STREAM_PORT", DEFAULT_INGEST_STREAM_PORT),
     centerLat,
     centerLon,
     radiusNm,
@@ -3,11 +3,14 @@ import type { IncomingMessage, ServerResponse } from "node:http";
 import { existsSync, readFileSync } from "node:fs";
 import { dirname, join } from "node:path";
 import { fileURLToPath } from "node:url";
+import { promisify } from "node:util";
+import { gunzip } from "node:zlib";
 import { loadConfig } from "./env.js";
 import { AdsbLolClient } from "./adsb-lol-client.js";
 import { AircraftFeedService } from "./aircraft-feed-service.js";
 import { QnhService } from "./qnh-service.js";
 import { WxRadarService } from "./wx-radar-service.js";
+import { PRECIP_GRID_CONTENT_TYPE, decodePrecipGrid, isPrecipGridContentType } from "./precip-grid.js";
 
 function loadLocalEnv(): void {
   const envPath = join(dirname(fileURLToPath(import.meta.url)), "..", ".env");
@@ -95,7 +98,26 @@ async function readBody(req: IncomingMessage, maxBytes: number): Promise<Buffer>
 
     req.on("end", () => resolve(Buffer.concat(chunks, total)));
     req.on("error", reject);
-  });
+  }).then((raw) => decodeBody(raw, headerValue(req, "content-encoding"), maxBytes));
+}
+
+const gunzipAsync = promisify(gunzip);
+
+// Consumers may gzip large bodies (Content-Encoding: gzip); maxBytes caps the body on the wire and decoded.
+async function decodeBody(raw: Buffer, encoding: string | undefined, maxBytes: number): Promise<Buffer> {
+  const enc = (encoding ?? "").trim().toLowerCase();
+  if (enc === "" || enc === "identity") return raw;
+  if (enc !== "gzip") {
+    throw Object.assign(new Error("unsupported content-encoding"), { statusCode: 415 });
+  }
+  try {
+    return await gunzipAsync(raw, { maxOutputLength: maxBytes });
+  } catch (e: any) {
+    if (e?.code === "ERR_BUFFER_TOO_LARGE") {
+      throw Object.assign(new Error("payload too large"), { statusCode: 413 });
+    }
+    throw Object.assign(new Error("bad gzip body"), { statusCode: 400 });
+  }
 }
 
 function asObject(value: unknown): Record<string, unknown> | null {
@@ -163,6 +185,27 @@ function normalizeWxLevel(value: unknown): number {
   return rounded;
 }
 
+// ITWS_CELL_LAYOUT=rle sends "runs":[[level,count],...] in row-major order instead of every cell
+function extractLevelsFromRuns(runsRaw: unknown, width: number, height: number): number[] | null {
+  if (!Array.isArray(runsRaw)) {
+    return null;
+  }
+
+  const expected = width * height;
+  const out = new Array<number>(expected).fill(0);
+  let index = 0;
+  for (const run of runsRaw) {
+    if (!Array.isArray(run) || index >= expected) {
+      continue;
+    }
+    const count = asNonNegativeInt(run[1]) ?? 0;
+    const end = Math.min(expected, index + count);
+    out.fill(normalizeWxLevel(run[0]), index, end);
+    index = end;
+  }
+  return out;
+}
+
 function extractLevelsFromCells(cellsRaw: unknown, width: number, height: number): number[] | null {
   if (!Array.isArray(cellsRaw)) {
     return null;
@@ -276,6 +319,8 @@ function normalizeWxIngestPayload(
   let levels: number[] | null = null;
   if (rawLevels) {
     levels = rawLevels.map((value) => normalizeWxLevel(value));
+  } else if (Array.isArray(root.runs)) {
+    levels = extractLevelsFromRuns(root.runs, width, height);
   } else {
     levels = extractLevelsFromCells(root.cells ?? root.data, width, height);
   }
@@ -420,20 +465,13 @@ async function handleFlightRulesRoute(req: IncomingMessage, res: ServerResponse)
       return true;
     }
 
-    const text = body.toString("utf8").trim();
-
     // Reject garbage: must be valid JSON
-    try {
-      JSON.parse(text);
-    } catch {
+    if (!ingestFlightRules(body.toString("utf8").trim())) {
       res.writeHead(400, { "content-type": "text/plain" });
       res.end("invalid json");
       return true;
     }
 
-    addToFlightRulesRing(text);
-    broadcastFlightRules(text);
-
     res.writeHead(204);
     res.end();
     return true;
@@ -444,6 +482,125 @@ async function handleFlightRulesRoute(req: IncomingMessage, res: ServerResponse)
   return true;
 }
 
+// Returns false if text is not valid JSON
+function ingestFlightRules(text: string): boolean {
+  let parsed: unknown;
+  try {
+    parsed = JSON.parse(text);
+  } catch {
+    return false;
+  }
+
+  // Batched ingest posts a JSON array; fan it out as one SSE event per record
+  const lines = Array.isArray(parsed) ? parsed.map((record) => JSON.stringify(record)) : [text];
+  for (const line of lines) {
+    addToFlightRulesRing(line);
+    broadcastFlightRules(line);
+  }
+  return true;
+}
+
+// ---- Streaming ingest (POST /api/flightRules/stream, POST /api/wx/radar/stream) ----
+//
+// One long-lived chunked request per Java consumer. Each body line is "<seq> <json>". The response is a
+// stream of cumulative ack lines ("<seq>"); the first is the last sequence already applied for the
+// session (x-stream-session), so a reconnecting client resends only what was not acked. Lines at or
+// below that sequence are dropped as duplicates.
+
+const STREAM_SESSION_TTL_MS = 60 * 60 * 1000;
+const streamSessions = new Map<string, { lastSeq: number; seenAt: number }>();
+
+function handleIngestStream(
+  req: IncomingMessage,
+  res: ServerResponse,
+  label: string,
+  maxLineBytes: number,
+  ingest: (json: string) => boolean
+): void {
+  const sessionHeader = req.headers["x-stream-session"];
+  const sessionId = Array.isArray(sessionHeader) ? sessionHeader[0] : sessionHeader;
+  if (!sessionId) {
+    res.writeHead(400, { "content-type": "text/plain" });
+    res.end("missing x-stream-session");
+    return;
+  }
+
+  const now = Date.now();
+  for (const [id, s] of streamSessions) {
+    if (now - s.seenAt > STREAM_SESSION_TTL_MS) streamSessions.delete(id);
+  }
+  const key = `${label}:${sessionId}`;
+  let session = streamSessions.get(key);
+  if (!session) {
+    session = { lastSeq: 0, seenAt: now };
+    streamSessions.set(key, session);
+  }
+  const state = session;
+
+  res.writeHead(200, {
+    "content-type": "text/plain; charset=utf-8",
+    "cache-control": "no-store",
+    "x-accel-buffering": "no"
+  });
+  res.write(`${state.lastSeq}\n`);
+
+  let partial: Buffer[] = [];
+  let partialLen = 0;
+
+  const handleLine = (line: Buffer): boolean => {
+    if (line.length === 0) return true;
+    const space = line.indexOf(0x20);
+    const seq = space > 0 ? Number(line.subarray(0, space).toString("latin1")) : NaN;
+    if (!Number.isSafeInteger(seq)) {
+      console.error(`[${label}] stream: malformed line, closing`);
+      return false;
+    }
+    if (seq <= state.lastSeq) return true;
+    if (!ingest(line.subarray(space + 1).toString("utf8"))) {
+      // Same outcome as a 400 on the POST route, but skipped rather than retried forever
+      console.error(`[${label}] stream: dropping invalid record #${seq}`);
+    }
+    state.lastSeq = seq;
+    return true;
+  };
+
+  req.on("data", (chunk: Buffer) => {
+    state.seenAt = Date.now();
+    const before = state.lastSeq;
+    let start = 0;
+    let nl: number;
+    while ((nl = chunk.indexOf(0x0a, start)) !== -1) {
+      let line = chunk.subarray(start, nl);
+      if (partialLen > 0) {
+        partial.push(line);
+        line = Buffer.concat(partial, partialLen + line.length);
+        partial = [];
+        partialLen = 0;
+      }
+      start = nl + 1;
+      if (!handleLine(line)) {
+        res.end();
+        req.destroy();
+        return;
+      }
+    }
+    if (start < chunk.length) {
+      partial.push(chunk.subarray(start));
+      partialLen += chunk.length - start;
+      if (partialLen > maxLineBytes) {
+        console.error(`[${label}] stream: record exceeds ${maxLineBytes} bytes, closing`);
+        res.end();
+        req.destroy();
+        return;
+      }
+    }
+    if (state.lastSeq !== before) res.write(`${state.lastSeq}\n`);
+  });
+
+  req.on("end", () => res.end());
+  req.on("error", () => res.destroy());
+}
+
 const config = loadConfig();
 const MAX_WX_RADIUS_NM = 150;
 const feedService = new AircraftFeedService(
@@ -462,6 +619,23 @@ const qnhService = new QnhService(config.aviationWeather);
 const wxReflectivityService = new WxRadarService(config.wxReflectivity);
 let latestIngestedWxRadar: Record<string, unknown> | null = null;
 
+// ITWS_DELTA: the last frame per product/site and its sequence, which the next delta's tiles apply to
+const wxDeltaBases = new Map<string, { seq: number; frame: Record<string, unknown> }>();
+
+// ITWS_PYRAMID: tile cells by content hash, and the latest manifest per product/site referencing them
+type WxPyramid = {
+  tileSize: number;
+  levels: { z: number; rows: number; cols: number; tiles: string[] }[];
+  tileData: Map<string, number[]>;
+};
+const wxPyramidTiles = new Map<string, number[]>();
+const wxPyramids = new Map<string, Omit<WxPyramid, "tileData">>();
+let latestWxPyramid: Record<string, unknown> | null = null;
+
+// ITWS_CONTOURS: polygons of the latest frame, per level ascending (each covers the cells at or above it)
+type WxContourLevel = { level: number; rings: number[][] };
+let latestWxContours: Record<string, unknown> | null = null;
+
 function parseIcaoParams(reqUrl: string): string[] {
   const url = new URL(reqUrl, "http://localhost");
   const fromRepeating = url.searchParams.getAll("icao");
@@ -475,12 +649,260 @@ function parseIcaoParams(reqUrl: string): string[] {
   return ids.split(",");
 }
 
+// "stale": the body refers to a frame or tiles not held here; the consumer follows with a full frame
+type WxIngestResult = "ok" | "invalid payload" | "stale";
+
+function ingestWxRadar(text: string): WxIngestResult | "invalid json" {
+  let parsedPayload: unknown;
+  try {
+    parsedPayload = JSON.parse(text);
+  } catch {
+    return "invalid json";
+  }
+  return ingestWxRadarPayload(parsedPayload);
+}
+
+// Binary frames (application/x-precip-grid) decode to the same shape as the JSON body
+function ingestWxRadarBinary(body: Buffer): WxIngestResult {
+  const decoded = decodePrecipGrid(body);
+  return decoded ? ingestWxRadarPayload(decoded) : "invalid payload";
+}
+
+function ingestWxRadarPayload(parsedPayload: unknown): WxIngestResult {
+  const root = asObject(parsedPayload);
+  const pyramid = root && root.pyramid !== undefined ? readWxPyramid(root.pyramid) : null;
+  if (pyramid === "invalid payload" || pyramid === "stale") {
+    return pyramid;
+  }
+
+  const contours = root && root.contours !== undefined ? readWxContours(root.contours) : null;
+  if (contours === "invalid payload") {
+    return contours;
+  }
+
+  const result = root?.frame === "delta" ? applyWxDelta(root) : ingestWxFrame(parsedPayload, root);
+  if (result === "ok" && root && pyramid) {
+    storeWxPyramid(root, pyramid);
+  }
+  if (result === "ok" && root && contours) {
+    latestWxContours = {
+      productId: root.productId,
+      site: root.site,
+      receivedAt: root.receivedAt,
+      toleranceM: asNonNegativeInt(asObject(root.contours)?.toleranceM) ?? 0,
+      levels: contours
+    };
+  }
+  return result;
+}
+
+// Rings are flat [lat, lon, lat, lon, ...] arrays, implicitly closed
+function readWxContours(value: unknown): WxContourLevel[] | "invalid payload" {
+  const obj = asObject(value);
+  if (!obj || !Array.isArray(obj.levels)) {
+    return "invalid payload";
+  }
+
+  const levels: WxContourLevel[] = [];
+  for (const entry of obj.levels) {
+    const level = asObject(entry);
+    const threshold = asPositiveInt(level?.level);
+    if (!level || threshold === null || threshold > 6 || !Array.isArray(level.rings)) {
+      return "invalid payload";
+    }
+    const rings: number[][] = [];
+    for (const ring of level.rings) {
+      if (!Array.isArray(ring) || ring.length < 6 || ring.length % 2 !== 0
+        || !ring.every((coord) => typeof coord === "number" && Number.isFinite(coord))) {
+        return "invalid payload";
+      }
+      rings.push(ring as number[]);
+    }
+    levels.push({ level: threshold, rings });
+  }
+  return levels;
+}
+
+function ingestWxFrame(parsedPayload: unknown, root: Record<string, unknown> | null): WxIngestResult {
+  const normalized = normalizeWxIngestPayload(parsedPayload, { lat: config.centerLat, lon: config.centerLon }, config.radiusNm);
+  if (!normalized) {
+    return "invalid payload";
+  }
+
+  const seq = root?.frame === "key" ? asPositiveInt(root.seq) : null;
+  if (root && seq !== null) {
+    normalized.seq = seq;
+    wxDeltaBases.set(wxDeltaKey(root), { seq, frame: normalized });
+  }
+  latestIngestedWxRadar = normalized;
+  return "ok";
+}
+
+// Every referenced tile must be in this body's tileData or already held
+function readWxPyramid(value: unknown): WxPyramid | "invalid payload" | "stale" {
+  const obj = asObject(value);
+  const tileSize = asPositiveInt(obj?.tileSize);
+  if (!obj || tileSize === null || !Array.isArray(obj.levels)) {
+    return "invalid payload";
+  }
+
+  const tileData = new Map<string, number[]>();
+  for (const [hash, cells] of Object.entries(asObject(obj.tileData) ?? {})) {
+    if (Array.isArray(cells)) {
+      tileData.set(hash, cells.map((cell) => normalizeWxLevel(cell)));
+    }
+  }
+
+  const levels: WxPyramid["levels"] = [];
+  for (const entry of obj.levels) {
+    const level = asObject(entry);
+    const z = asNonNegativeInt(level?.z);
+    const rows = asPositiveInt(level?.rows);
+    const cols = asPositiveInt(level?.cols);
+    const tiles = level && Array.isArray(level.tiles) ? (level.tiles as unknown[]) : null;
+    if (z === null || rows === null || cols === null || !tiles
+      || tiles.length !== Math.ceil(rows / tileSize) * Math.ceil(cols / tileSize)
+      || !tiles.every((hash) => typeof hash === "string")) {
+      return "invalid payload";
+    }
+    for (const hash of tiles as string[]) {
+      if (!tileData.has(hash) && !wxPyramidTiles.has(hash)) {
+        return "stale";
+      }
+    }
+    levels.push({ z, rows, cols, tiles: tiles as string[] });
+  }
+  return { tileSize, levels, tileData };
+}
+
+function storeWxPyramid(root: Record<string, unknown>, pyramid: WxPyramid): void {
+  for (const [hash, cells] of pyramid.tileData) {
+    wxPyramidTiles.set(hash, cells);
+  }
+  const manifest = { tileSize: pyramid.tileSize, levels: pyramid.levels };
+  wxPyramids.set(wxDeltaKey(root), manifest);
+  latestWxPyramid = {
+    productId: root.productId,
+    site: root.site,
+    receivedAt: root.receivedAt,
+    ...manifest
+  };
+
+  // Keep only tiles some site's latest manifest still references
+  const live = new Set<string>();
+  for (const { levels } of wxPyramids.values()) {
+    for (const level of levels) {
+      for (const hash of level.tiles) live.add(hash);
+    }
+  }
+  for (const hash of wxPyramidTiles.keys()) {
+    if (!live.has(hash)) wxPyramidTiles.delete(hash);
+  }
+}
+
+function wxDeltaKey(root: Record<string, unknown>): string {
+  return `${asFiniteNumber(root.productId) ?? -1}/${typeof root.site === "string" ? root.site : ""}`;
+}
+
+// A delta carries the changed tiles ({row, col, cells} with cells row-major, clipped at the grid edge)
+// against frame baseSeq. If that is not the frame held here (e.g. after a restart) the consumer gets a
+// 409 and sends a keyframe.
+function applyWxDelta(root: Record<string, unknown>): WxIngestResult {
+  const seq = asPositiveInt(root.seq);
+  const baseSeq = asPositiveInt(root.baseSeq);
+  const tileSize = asPositiveInt(root.tileSize);
+  if (seq === null || baseSeq === null || tileSize === null || !Array.isArray(root.tiles)) {
+    return "invalid payload";
+  }
+
+  const key = wxDeltaKey(root);
+  const base = wxDeltaBases.get(key);
+  if (!base || base.seq !== baseSeq) {
+    return "stale";
+  }
+
+  const width = base.frame.width as number;
+  const height = base.frame.height as number;
+  const levels = (base.frame.levels as number[]).slice();
+  const changed: number[][] = [];
+  for (const entry of root.tiles) {
+    const tile = asObject(entry);
+    const cells = tile && Array.isArray(tile.cells) ? (tile.cells as unknown[]) : null;
+    const row = asNonNegativeInt(tile?.row);
+    const col = asNonNegativeInt(tile?.col);
+    if (!cells || row === null || col === null || row >= height || col >= width) {
+      continue;
+    }
+    const tileWidth = Math.min(tileSize, width - col);
+    const count = Math.min(cells.length, tileWidth * Math.min(tileSize, height - row));
+    for (let k = 0; k < count; k += 1) {
+      levels[(row + Math.floor(k / tileWidth)) * width + col + (k % tileWidth)] = normalizeWxLevel(cells[k]);
+    }
+    changed.push([row, col]);
+  }
+
+  const frame: Record<string, unknown> = {
+    ...base.frame,
+    updatedAtMs: Date.now(),
+    receivedAt: asString(root.receivedAt) ?? base.frame.receivedAt,
+    maxPrecipLevel: asNonNegativeInt(root.maxPrecipLevel) ?? base.frame.maxPrecipLevel,
+    filledCells: asNonNegativeInt(root.filledCells) ?? base.frame.filledCells,
+    levels,
+    cells: levels,
+    seq,
+    // Lets clients redraw only these tiles when they already hold frame baseSeq
+    delta: { baseSeq, tileSize, tiles: changed }
+  };
+  wxDeltaBases.set(key, { seq, frame });
+  latestIngestedWxRadar = frame;
+  return "ok";
+}
+
+function headerValue(req: IncomingMessage, name: string): string | undefined {
+  const value = req.headers[name];
+  return Array.isArray(value) ? value[0] : value;
+}
+
+const INGEST_STREAM_PATHS = new Set(["/api/flightRules/stream", "/api/wx/radar/stream"]);
+
+function handleIngestStreamRoute(req: IncomingMessage, res: ServerResponse): void {
+  const url = new URL(req.url ?? "/", "http://localhost");
+
+  if (req.method === "POST" && url.pathname === "/api/flightRules/stream") {
+    if (!FLIGHT_RULES_TOKEN || headerValue(req, "x-tais-token") !== FLIGHT_RULES_TOKEN) {
+      res.writeHead(401, { "content-type": "text/plain" });
+      res.end("unauthorized");
+      return;
+    }
+    handleIngestStream(req, res, "flightRules", 1024 * 1024, ingestFlightRules);
+    return;
+  }
+
+  if (req.method === "POST" && url.pathname === "/api/wx/radar/stream") {
+    const token = headerValue(req, "x-wx-token") ?? headerValue(req, "x-tais-token");
+    if (!WX_INGEST_TOKEN || token !== WX_INGEST_TOKEN) {
+      res.writeHead(401, { "content-type": "text/plain" });
+      res.end("unauthorized");
+      return;
+    }
+    handleIngestStream(req, res, "wx", WX_INGEST_MAX_BYTES, (json) => ingestWxRadar(json) === "ok");
+    return;
+  }
+
+  res.writeHead(404, { "content-type": "application/json" });
+  res.end(JSON.stringify({ error: "Not Found" }));
+}
+
 const server = createServer(async (req, res) => {
   res.setHeader("access-control-allow-origin", "*");
   res.setHeader("access-control-allow-methods", "GET,OPTIONS,POST");
   res.setHeader("access-control-allow-headers", "accept,content-type,x-tais-token,x-wx-token");
 
   if (req.method === "OPTIONS") {
+    if (req.url?.split("?")[0] === "/api/wx/radar") {
+      // Lets the ITWS consumer (ITWS_WIRE_FORMAT=auto) discover the binary frame format
+      res.setHeader("accept-post", `application/json, ${PRECIP_GRID_CONTENT_TYPE}`);
+    }
     res.writeHead(204);
     res.end();
     return;
@@ -489,6 +911,16 @@ const server = createServer(async (req, res) => {
   const reqUrl = req.url ?? "/";
   const url = new URL(reqUrl, "http://localhost");
 
+  if (req.method === "POST" && INGEST_STREAM_PATHS.has(url.pathname)) {
+    res.writeHead(404, { "content-type": "application/json" });
+    res.end(JSON.stringify({
+      error: config.ingestStreamPort > 0
+        ? `Ingest streams are served on port ${config.ingestStreamPort}`
+        : "Ingest streams are disabled (INGEST_STREAM_PORT=0)"
+    }));
+    return;
+  }
+
   if (await handleFlightRulesRoute(req, res)) {
     return;
   }
@@ -511,24 +943,26 @@ const server = createServer(async (req, res) => {
       return;
     }
 
-    const text = body.toString("utf8").trim();
-    let parsedPayload: unknown;
-    try {
-      parsedPayload = JSON.parse(text);
-    } catch {
+    const result = isPrecipGridContentType(headerValue(req, "content-type"))
+      ? ingestWxRadarBinary(body)
+      : ingestWxRadar(body.toString("utf8").trim());
+    if (result === "invalid json") {
       res.writeHead(400, { "content-type": "text/plain" });
       res.end("invalid json");
       return;
     }
-
-    const normalized = normalizeWxIngestPayload(parsedPayload, { lat: config.centerLat, lon: config.centerLon }, config.radiusNm);
-    if (!normalized) {
+    if (result === "invalid payload") {
       res.writeHead(400, { "content-type": "application/json" });
       res.end(JSON.stringify({ error: "invalid wx payload" }));
       return;
     }
+    if (result === "stale") {
+      // The consumer answers with a keyframe (and every pyramid tile)
+      res.writeHead(409, { "content-type": "application/json" });
+      res.end(JSON.stringify({ error: "keyframe required" }));
+      return;
+    }
 
-    latestIngestedWxRadar = normalized;
     res.writeHead(204);
     res.end();
     return;
@@ -574,6 +1008,47 @@ const server = createServer(async (req, res) => {
     return;
   }
 
+  // Pyramid of the latest ingested frame: per level, tile hashes in row-major order (tiles are
+  // tileSize square, clipped at the level edge). Tiles never change content, so clients cache them.
+  if (req.method === "GET" && url.pathname === "/api/wx/radar/pyramid") {
+    res.writeHead(latestWxPyramid ? 200 : 404, {
+      "content-type": "application/json",
+      "cache-control": "no-store"
+    });
+    res.end(JSON.stringify(latestWxPyramid ?? { error: "no pyramid ingested" }));
+    return;
+  }
+
+  // Level polygons of the latest frame that carried them: a few hundred vertices instead of the grid
+  if (req.method === "GET" && url.pathname === "/api/wx/radar/contours") {
+    res.writeHead(latestWxContours ? 200 : 404, {
+      "content-type": "application/json",
+      "cache-control": "no-store"
+    });
+    res.end(JSON.stringify(latestWxContours ?? { error: "no contours ingested" }));
+    return;
+  }
+
+  if (req.method === "GET" && url.pathname.startsWith("/api/wx/radar/tiles/")) {
+    const hash = url.pathname.slice("/api/wx/radar/tiles/".length);
+    const cells = wxPyramidTiles.get(hash);
+    if (!cells) {
+      res.writeHead(404, { "content-type": "application/json" });
+      res.end(JSON.stringify({ error: "unknown tile" }));
+      return;
+    }
+    const etag = `"${hash}"`;
+    const headers = { etag, "cache-control": "public, max-age=31536000, immutable" };
+    if (headerValue(req, "if-none-match") === etag) {
+      res.writeHead(304, headers);
+      res.end();
+      return;
+    }
+    res.writeHead(200, { ...headers, "content-type": "application/json" });
+    res.end(JSON.stringify({ hash, cells }));
+    return;
+  }
+
   if (req.method === "GET" && url.pathname === "/api/wx/radar") {
     if (latestIngestedWxRadar !== null) {
       res.writeHead(200, {
@@ -620,8 +1095,23 @@ server.listen(config.port, () => {
   console.log(`Aircraft feed server listening on http://localhost:${config.port}`);
 });
 
+// Ingest streams are single requests that stay open indefinitely, so they get a listener of their own
+// without a request timeout (headersTimeout still applies); the main server keeps Node's default.
+const streamServer = config.ingestStreamPort > 0 ? createServer(handleIngestStreamRoute) : null;
+if (streamServer) {
+  streamServer.requestTimeout = 0;
+  streamServer.listen(config.ingestStreamPort, () => {
+    console.log(`Ingest streams listening on http://localhost:${config.ingestStreamPort}`);
+  });
+}
+
 const shutdown = (): void => {
   feedService.stop();
+  if (streamServer) {
+    streamServer.close();
+    // Open streams would otherwise hold the process; consumers reconnect and resend what was not acked
+    streamServer.closeAllConnections();
+  }
   server.close(() => process.exit(0));
 };
 
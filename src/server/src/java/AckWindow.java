@@ -0,0 +1,85 @@
+package dev.vstars;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import java.util.ArrayDeque;
+
+/**
+ * Ordered window of in-flight deliveries.
+ *
+ * Deliveries may complete in any order (from HTTP client threads), but messages are only acknowledged
+ * for the longest contiguous completed prefix, so a crash still redelivers everything that was not
+ * safely posted. The session must use Solace individual acknowledgement
+ * ({@code SupportedProperty.SOL_CLIENT_ACKNOWLEDGE}); plain CLIENT_ACKNOWLEDGE would ack every
+ * message consumed so far, including ones still in flight.
+ *
+ * {@link #open} and {@link #ackCompleted} must be called from the thread that owns the JMS session.
+ */
+final class AckWindow {
+
+    static final class Slot {
+        private final Message[] acks;
+        private boolean done;
+
+        private Slot(Message[] acks) { this.acks = acks; }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Slot> slots;
+
+    AckWindow(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Reserves a slot for a delivery covering {@code acks}. Blocks while the window is full,
+     * acknowledging completed deliveries as they drain.
+     */
+    Slot open(Message... acks) throws InterruptedException, JMSException {
+        while (true) {
+            ackCompleted();
+            synchronized (this) {
+                if (slots.size() < capacity) {
+                    Slot s = new Slot(acks);
+                    slots.addLast(s);
+                    return s;
+                }
+                wait(50);
+            }
+        }
+    }
+
+    /** Marks a delivery as finished; safe to call from any thread. */
+    synchronized void complete(Slot s) {
+        s.done = true;
+        notifyAll();
+    }
+
+    /** Acknowledges the contiguous completed prefix, oldest first. Returns the number of slots released. */
+    int ackCompleted() throws JMSException {
+        int n = 0;
+        while (true) {
+            Slot head;
+            synchronized (this) {
+                head = slots.peekFirst();
+                if (head == null || !head.done) {
+                    if (n > 0) notifyAll();
+                    return n;
+                }
+            }
+            // Only the session thread removes slots, so the head is stable while we ack outside the lock.
+            for (Message m : head.acks) {
+                if (m != null) m.acknowledge();
+            }
+            synchronized (this) {
+                slots.pollFirst();
+            }
+            n++;
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        return slots.isEmpty();
+    }
+}
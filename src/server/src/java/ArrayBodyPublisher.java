@@ -0,0 +1,95 @@
+package dev.vstars;
+
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body straight from a region of a byte array. {@code BodyPublishers.ofByteArray} copies
+ * the whole region into fresh 16 KiB buffers on every send; this hands out read-only views of the
+ * array instead, one chunk per unit of demand, so a body built in a reused buffer goes on the wire
+ * without another copy of it on the heap.
+ *
+ * Every subscription starts over from the first byte, so the same publisher can be sent again on
+ * a retry. The array must not change until the exchange has completed.
+ */
+final class ArrayBodyPublisher implements HttpRequest.BodyPublisher {
+
+    private static final int CHUNK = 16 * 1024;
+
+    private final byte[] body;
+    private final int offset;
+    private final int length;
+
+    ArrayBodyPublisher(byte[] body, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, body.length);
+        this.body = body;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        Chunks chunks = new Chunks(subscriber);
+        subscriber.onSubscribe(chunks);
+        chunks.drain();     // an empty body completes without demand
+    }
+
+    private final class Chunks implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();   // serialises drain(); request() may re-enter from onNext
+        private volatile boolean cancelled;
+        private int pos = offset;
+        private boolean done;
+
+        Chunks(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("non-positive request: " + n));
+                return;
+            }
+            demand.getAndUpdate(d -> (d + n < 0) ? Long.MAX_VALUE : d + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) return;
+            do {
+                int end = offset + length;
+                while (!cancelled && !done) {
+                    if (pos == end) {
+                        done = true;
+                        subscriber.onComplete();
+                    } else if (demand.get() > 0) {
+                        int n = Math.min(CHUNK, end - pos);
+                        ByteBuffer chunk = ByteBuffer.wrap(body, pos, n).slice().asReadOnlyBuffer();
+                        pos += n;
+                        demand.decrementAndGet();
+                        subscriber.onNext(chunk);
+                    } else {
+                        break;
+                    }
+                }
+            } while (wip.decrementAndGet() != 0);
+        }
+    }
+}
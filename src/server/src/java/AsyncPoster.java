@@ -0,0 +1,101 @@
+package dev.vstars;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non-blocking counterpart of the consumers' {@code postWithRetry}: same retry-until-2xx semantics,
+ * but retries are scheduled on a timer instead of sleeping on the JMS receive thread.
+ *
+ * With a {@link Spool}, a failed POST is written to disk instead of retried, and bodies go straight
+ * to the spool while it still holds undrained records.
+ */
+final class AsyncPoster implements IngestSink {
+
+    private final HttpClient http;
+    private final URI url;
+    private final String contentType;
+    private final String tokenHeader;
+    private final String token;          // optional
+    private final Duration requestTimeout;
+    private final Executor retryDelay;
+    private final String label;          // log prefix, e.g. "POST" / "WX POST"
+    private final Spool spool;           // optional
+    private final Metrics.Counter retries;
+    private volatile boolean closed;
+
+    AsyncPoster(HttpClient http, URI url, String contentType, String tokenHeader, String token,
+                int requestTimeoutMs, int retrySleepMs, String label, Spool spool, Metrics.Counter retries) {
+        this.http = http;
+        this.url = url;
+        this.contentType = contentType;
+        this.tokenHeader = tokenHeader;
+        this.token = token;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.retryDelay = CompletableFuture.delayedExecutor(Math.max(50, retrySleepMs), TimeUnit.MILLISECONDS);
+        this.label = label;
+        this.spool = spool;
+        this.retries = retries;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> post(byte[] body, int offset, int length) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        if (spool != null && spool.isActive() && trySpool(body, offset, length, done)) {
+            return done;
+        }
+        attempt(body, offset, length, done);
+        return done;
+    }
+
+    private void attempt(byte[] body, int offset, int length, CompletableFuture<Boolean> done) {
+        HttpRequest.Builder b = HttpRequest.newBuilder(url)
+                .timeout(requestTimeout)
+                .header("Content-Type", contentType)
+                .POST(new ArrayBodyPublisher(body, offset, length));
+        if (BodyGzip.isGzip(body, offset, length)) {
+            b.header("Content-Encoding", BodyGzip.ENCODING);
+        }
+        if (token != null && !token.isBlank()) {
+            b.header(tokenHeader, token);
+        }
+
+        http.sendAsync(b.build(), HttpResponse.BodyHandlers.discarding()).whenComplete((resp, err) -> {
+            if (err == null && resp.statusCode() >= 200 && resp.statusCode() < 300) {
+                done.complete(true);
+                return;
+            }
+            if (err != null) {
+                System.err.println(label + " error: " + err.getMessage());
+            } else {
+                System.err.println(label + " failed: HTTP " + resp.statusCode());
+            }
+            if (spool != null && trySpool(body, offset, length, done)) return;
+            if (closed) return;
+            retries.inc();
+            retryDelay.execute(() -> attempt(body, offset, length, done));
+        });
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private boolean trySpool(byte[] body, int offset, int length, CompletableFuture<Boolean> done) {
+        try {
+            spool.append(body, offset, length);
+        } catch (Exception e) {
+            System.err.println(label + " spool error: " + e.getMessage());
+            return false;
+        }
+        done.complete(false);
+        return true;
+    }
+}
@@ -0,0 +1,144 @@
+package dev.vstars;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * gzip Content-Encoding for POST bodies (HTTP_CONTENT_ENCODING=gzip), compressed while the body is
+ * being written: {@link #update} deflates whatever was appended to the body buffer since the last
+ * call, so once the body is complete {@link #finish} only flushes the deflater and writes the trailer.
+ * Bodies below HTTP_COMPRESS_MIN_BYTES are not worth it and go out as written.
+ *
+ * Whether a body is gzip is recognisable from its first two bytes (JSON and binary frames never start
+ * with them), so spooled bodies keep their encoding across a restart. One instance per thread; the
+ * deflater is reused from body to body.
+ */
+final class BodyGzip {
+
+    static final String ENCODING = "gzip";
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final int minBytes;
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);   // raw deflate, gzip framing below
+    private final CRC32 crc = new CRC32();
+    private final ByteSink out = new ByteSink(8192);
+    private final byte[] chunk = new byte[8192];
+    private int done;   // body bytes compressed so far
+
+    BodyGzip(int minBytes) {
+        this.minBytes = Math.max(0, minBytes);
+    }
+
+    /** Parses HTTP_CONTENT_ENCODING: null for identity; zstd has no JDK codec and falls back to identity. */
+    static BodyGzip fromEnv(String encoding, int minBytes, String consumer) {
+        String e = (encoding == null) ? "" : encoding.trim().toLowerCase(Locale.ROOT);
+        if (e.isEmpty() || e.equals("identity")) return null;
+        if (e.equals(ENCODING)) return new BodyGzip(minBytes);
+        System.out.println(consumer + ": HTTP_CONTENT_ENCODING=" + encoding + " not supported; sending bodies uncompressed");
+        return null;
+    }
+
+    /** Another instance with the same threshold, for another thread. */
+    BodyGzip copy() {
+        return new BodyGzip(minBytes);
+    }
+
+    /** Compresses body[0..size) as far as it has grown, once it has reached the threshold. */
+    void update(byte[] body, int size) {
+        if (size < minBytes || size <= done) return;
+        if (done == 0) out.write(HEADER, 0, HEADER.length);
+        crc.update(body, done, size - done);
+        deflater.setInput(body, done, size - done);
+        while (!deflater.needsInput()) drain();
+        done = size;
+    }
+
+    /**
+     * The gzip encoding of body[0..size), or null if the body is below the threshold (send it as is).
+     * Returns a fresh array, so the body can be posted asynchronously while this instance moves on.
+     */
+    byte[] finish(byte[] body, int size) {
+        if (size < minBytes) {
+            reset();
+            return null;
+        }
+        update(body, size);
+        deflater.finish();
+        while (!deflater.finished()) drain();
+        writeIntLE((int) crc.getValue());
+        writeIntLE(size);
+        byte[] gz = out.toByteArray();
+        reset();
+        return gz;
+    }
+
+    /** Discards a body that will not be finished (e.g. its buffer was reset). */
+    void reset() {
+        deflater.reset();
+        crc.reset();
+        out.reset();
+        done = 0;
+    }
+
+    /** Writes to {@code sink} and compresses along, for bodies produced through an OutputStream. */
+    OutputStream tee(ByteSink sink) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                sink.write(b);
+                update(sink.array(), sink.size());
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                sink.write(b, off, len);
+                update(sink.array(), sink.size());
+            }
+        };
+    }
+
+    private void drain() {
+        int n = deflater.deflate(chunk, 0, chunk.length, Deflater.NO_FLUSH);
+        out.write(chunk, 0, n);
+    }
+
+    private void writeIntLE(int v) {
+        out.write(v);
+        out.write(v >>> 8);
+        out.write(v >>> 16);
+        out.write(v >>> 24);
+    }
+
+    static boolean isGzip(byte[] body, int offset, int length) {
+        return length >= 2 && body[offset] == HEADER[0] && body[offset + 1] == HEADER[1];
+    }
+
+    static boolean isGzip(byte[] body) {
+        return isGzip(body, 0, body.length);
+    }
+
+    /** The body as written: gunzipped if it is gzip, else {@code body} itself. */
+    static byte[] plain(byte[] body) throws IOException {
+        if (!isGzip(body)) return body;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** The first {@code n} bytes of the body as written (fewer if it is shorter). */
+    static byte[] head(byte[] body, int n) {
+        if (!isGzip(body)) return Arrays.copyOf(body, Math.min(n, body.length));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readNBytes(n);
+        } catch (IOException e) {
+            return new byte[0];
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package dev.vstars;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * {@link ByteArrayOutputStream} that exposes its backing array, so a body can be posted with
+ * {@code new ArrayBodyPublisher(array(), 0, size())} and the buffer reused afterwards, instead
+ * of paying a {@code toByteArray()} copy per request.
+ */
+final class ByteSink extends ByteArrayOutputStream {
+
+    ByteSink(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    byte[] array() {
+        return buf;
+    }
+}
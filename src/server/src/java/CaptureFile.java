@@ -0,0 +1,220 @@
+package dev.vstars;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Raw JMS messages captured for offline replay.
+ *
+ * After an 8-byte header ({@code "JMSCAP"} plus a 2-byte version), each entry is
+ * {@code [int length][entry]} with the entry being
+ * {@code [long receivedAtMs][long jmsTimestamp][byte kind][short propertyCount]
+ * ([utf name][byte type][value])*[int bodyLength][body]}, big-endian. Property values keep their
+ * JMS type (int, long, boolean, double, or string), so {@code productID} filters see the same objects
+ * as from the broker. A torn entry at the end of the file (e.g. the recorder was killed) is ignored.
+ */
+final class CaptureFile {
+
+    private static final byte[] MAGIC = { 'J', 'M', 'S', 'C', 'A', 'P' };
+    private static final short VERSION = 1;
+
+    static final byte KIND_BYTES = 0;
+    static final byte KIND_TEXT = 1;
+
+    /** One captured message; {@code body} is the raw bytes, or UTF-8 text for {@link #KIND_TEXT}. */
+    record Entry(long receivedAtMs, long jmsTimestamp, byte kind, Map<String, Object> properties, byte[] body) {}
+
+    private CaptureFile() {}
+
+    // ---------------- Writer ----------------
+
+    /**
+     * Appends messages as they are received; safe to share between receiver threads. The buffer is
+     * flushed about once a second and at shutdown. A write error stops the capture but never the consumer.
+     */
+    static final class Writer implements Closeable {
+        private final Path file;
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream entry = new ByteArrayOutputStream(64 * 1024);
+        private final DataOutputStream entryOut = new DataOutputStream(entry);
+        private long count;
+        private long lastFlushMs = System.currentTimeMillis();
+        private boolean failed;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 256 * 1024));
+            out.write(MAGIC);
+            out.writeShort(VERSION);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::close, "capture-flush"));
+        }
+
+        void append(Message msg) throws JMSException {
+            byte kind;
+            byte[] body;
+            if (msg instanceof BytesMessage bm) {
+                kind = KIND_BYTES;
+                body = new byte[(int) bm.getBodyLength()];
+                bm.readBytes(body);
+                bm.reset();     // leave the body readable for the consumer
+            } else if (msg instanceof TextMessage tm) {
+                kind = KIND_TEXT;
+                String s = tm.getText();
+                body = s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+            } else {
+                return;         // nothing the consumers could parse either
+            }
+
+            Map<String, Object> props = new LinkedHashMap<>();
+            for (Enumeration<?> e = msg.getPropertyNames(); e != null && e.hasMoreElements(); ) {
+                String name = (String) e.nextElement();
+                Object v = msg.getObjectProperty(name);
+                if (v != null) props.put(name, v);
+            }
+            append(System.currentTimeMillis(), msg.getJMSTimestamp(), kind, props, body);
+        }
+
+        /** Appends one entry as given, e.g. from a traffic generator with its own clock. */
+        synchronized void append(long receivedAtMs, long jmsTimestamp, byte kind, Map<String, Object> props, byte[] body) {
+            if (failed) return;
+            try {
+                entry.reset();
+                entryOut.writeLong(receivedAtMs);
+                entryOut.writeLong(jmsTimestamp);
+                entryOut.writeByte(kind);
+                writeProperties(props, entryOut);
+                entryOut.writeInt(body.length);
+                entryOut.write(body);
+
+                out.writeInt(entry.size());
+                entry.writeTo(out);
+                count++;
+                long now = System.currentTimeMillis();
+                if (now - lastFlushMs >= 1000) {
+                    out.flush();
+                    lastFlushMs = now;
+                }
+            } catch (IOException e) {
+                failed = true;
+                System.err.println("Capture to " + file + " stopped: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                out.close();
+                if (!failed && count > 0) System.out.println("Captured " + count + " messages to " + file);
+                count = 0;
+            } catch (IOException e) {
+                System.err.println("Capture to " + file + " not closed cleanly: " + e.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return file.toString();
+        }
+
+        private static void writeProperties(Map<String, Object> props, DataOutputStream o) throws IOException {
+            o.writeShort(props.size());
+            for (Map.Entry<String, Object> p : props.entrySet()) {
+                o.writeUTF(p.getKey());
+                Object v = p.getValue();
+                if (v instanceof Integer || v instanceof Short || v instanceof Byte) {
+                    o.writeByte('I');
+                    o.writeInt(((Number) v).intValue());
+                } else if (v instanceof Long l) {
+                    o.writeByte('J');
+                    o.writeLong(l);
+                } else if (v instanceof Boolean b) {
+                    o.writeByte('Z');
+                    o.writeBoolean(b);
+                } else if (v instanceof Double || v instanceof Float) {
+                    o.writeByte('D');
+                    o.writeDouble(((Number) v).doubleValue());
+                } else {
+                    o.writeByte('S');
+                    o.writeUTF(String.valueOf(v));
+                }
+            }
+        }
+    }
+
+    // ---------------- Reader ----------------
+
+    /** Reads entries in capture order. */
+    static final class Reader implements Closeable {
+        private final Path file;
+        private final DataInputStream in;
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 256 * 1024));
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+                short version = in.readShort();
+                if (!Arrays.equals(magic, MAGIC) || version != VERSION) {
+                    throw new IOException("not a capture file (or unsupported version): " + file);
+                }
+            } catch (EOFException e) {
+                throw new IOException("not a capture file: " + file, e);
+            }
+        }
+
+        /** Next entry, or null at the end of the file (including a torn last entry). */
+        Entry next() throws IOException {
+            byte[] raw;
+            try {
+                int length = in.readInt();
+                if (length < 0) throw new IOException("corrupt entry length " + length + " in " + file);
+                raw = new byte[length];
+                in.readFully(raw);
+            } catch (EOFException e) {
+                return null;
+            }
+
+            DataInputStream d = new DataInputStream(new ByteArrayInputStream(raw));
+            long receivedAtMs = d.readLong();
+            long jmsTimestamp = d.readLong();
+            byte kind = d.readByte();
+            int n = d.readUnsignedShort();
+            Map<String, Object> props = n == 0 ? Collections.emptyMap() : new LinkedHashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                String name = d.readUTF();
+                byte type = d.readByte();
+                Object v = switch (type) {
+                    case 'I' -> d.readInt();
+                    case 'J' -> d.readLong();
+                    case 'Z' -> d.readBoolean();
+                    case 'D' -> d.readDouble();
+                    case 'S' -> d.readUTF();
+                    default -> throw new IOException("unknown property type '" + (char) type + "' in " + file);
+                };
+                props.put(name, v);
+            }
+            byte[] body = new byte[d.readInt()];
+            d.readFully(body);
+            return new Entry(receivedAtMs, jmsTimestamp, kind, props, body);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
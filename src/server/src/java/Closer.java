@@ -0,0 +1,38 @@
+package dev.vstars;
+
+import java.util.ArrayDeque;
+
+/**
+ * What one run of a consumer started (spool drainer, stream connection, delivery threads, metric
+ * registrations), released in reverse order when the run ends. A standalone consumer exits with its
+ * run anyway; the ingest host ({@link IngestHost}) restarts a failed pipeline in the same process, and
+ * the new run must not find the old one's threads still draining the same spool.
+ */
+final class Closer implements AutoCloseable {
+
+    private final String label;
+    private final ArrayDeque<AutoCloseable> resources = new ArrayDeque<>();
+
+    Closer(String label) {
+        this.label = label;
+    }
+
+    /** Registers {@code resource} (null is ignored) and returns it. */
+    <T extends AutoCloseable> T add(T resource) {
+        if (resource != null) resources.push(resource);
+        return resource;
+    }
+
+    /** Closes everything registered, newest first; failures are logged, not thrown. */
+    @Override
+    public void close() {
+        AutoCloseable r;
+        while ((r = resources.poll()) != null) {
+            try {
+                r.close();
+            } catch (Exception e) {
+                System.err.println(label + ": error releasing " + r + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package dev.vstars;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Latest-wins handoff to a single consumer thread: at most one pending value per key, and a newer
+ * value replaces the pending one instead of queueing behind it. However long the consumer stalls,
+ * it only ever finds the newest value of each key waiting.
+ *
+ * Keys are taken in the order they became pending (a replaced value keeps its key's place), so a key
+ * that updates often cannot starve the others.
+ */
+final class ConflatingQueue<K, V> {
+
+    private final LinkedHashMap<K, V> pending = new LinkedHashMap<>();
+    private int busy;   // values taken and not yet done()
+
+    /** Makes {@code value} the pending value of {@code key}; returns the value it supersedes, or null. */
+    synchronized V offer(K key, V value) {
+        V old = pending.put(key, value);
+        if (old == null) notifyAll();
+        return old;
+    }
+
+    /** Removes the oldest pending value, waiting for one. Call {@link #done} once it is handled. */
+    synchronized V take() throws InterruptedException {
+        while (pending.isEmpty()) wait();
+        Iterator<V> it = pending.values().iterator();
+        V v = it.next();
+        it.remove();
+        busy++;
+        return v;
+    }
+
+    /** Marks a taken value as handled. */
+    synchronized void done() {
+        busy--;
+    }
+
+    /** Values waiting to be taken. */
+    synchronized int size() {
+        return pending.size();
+    }
+
+    /** True when nothing is pending or being handled. */
+    synchronized boolean isIdle() {
+        return pending.isEmpty() && busy == 0;
+    }
+}
@@ -0,0 +1,128 @@
+package dev.vstars;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per product and site, the last published grid, so each new frame can be sent as the fixed-size
+ * tiles that changed since then instead of the whole grid (ITWS_DELTA).
+ *
+ * Every frame gets a sequence number. A delta names the sequence it applies to ({@code baseSeq}), and
+ * the endpoint answers 409 when that is not the frame it holds (e.g. after a restart), and the same
+ * frame is then encoded again as a keyframe carrying every cell. A change of grid geometry, a new site,
+ * or ITWS_KEYFRAME_EVERY frames since the last keyframe makes the next frame a keyframe.
+ *
+ * Deltas only make sense delivered in order, one POST at a time. {@link #next} runs on the consumer
+ * thread; {@link #requestKeyframe} may be called from any thread.
+ */
+final class FrameDeltas {
+
+    /** How one frame is published: a keyframe, or a delta whose changed tiles are listed by origin. */
+    static final class Delta {
+        final boolean key;
+        final long seq;
+        final long baseSeq;          // 0 for keyframes
+        final int tileSize;
+        final int[] tiles;           // changed tiles as cell index of the top-left corner (deltas only)
+
+        private Delta(boolean key, long seq, long baseSeq, int tileSize, int[] tiles) {
+            this.key = key;
+            this.seq = seq;
+            this.baseSeq = baseSeq;
+            this.tileSize = tileSize;
+            this.tiles = tiles;
+        }
+    }
+
+    private static final class Last {
+        byte[] grid;
+        int rows, cols, dxM, dyM, rotationMilliDeg, xOffsetM, yOffsetM, trpLatMicroDeg, trpLonMicroDeg;
+        long seq;
+        int sinceKey;
+    }
+
+    private final int tileSize;
+    private final int keyframeEvery;
+    private final Map<String, Last> last = new HashMap<>();
+    private volatile boolean keyframeRequested;
+
+    FrameDeltas(int tileSize, int keyframeEvery) {
+        this.tileSize = Math.max(1, tileSize);
+        this.keyframeEvery = Math.max(1, keyframeEvery);
+    }
+
+    /** The endpoint lost track of our frames: the next {@link #next} call returns a keyframe. */
+    void requestKeyframe() {
+        keyframeRequested = true;
+    }
+
+    /** Decides how {@code f} is published and remembers its grid as the base for the next frame. */
+    Delta next(ItwsJsonConsumer.PrecipFrame f) {
+        if (keyframeRequested) {
+            keyframeRequested = false;
+            for (Last l : last.values()) l.sinceKey = keyframeEvery;
+        }
+
+        String key = f.productId + "/" + f.site;
+        Last prev = last.get(key);
+        byte[] grid = f.grid;
+
+        Delta d;
+        if (prev == null || prev.sinceKey + 1 >= keyframeEvery || !sameGeometry(prev, f)) {
+            long seq = (prev == null) ? 1 : prev.seq + 1;
+            d = new Delta(true, seq, 0, tileSize, null);
+            if (prev == null || prev.grid.length != grid.length) {
+                prev = new Last();
+                prev.grid = new byte[grid.length];
+                last.put(key, prev);
+            }
+            prev.sinceKey = 0;
+        } else {
+            d = new Delta(false, prev.seq + 1, prev.seq, tileSize, changedTiles(prev.grid, grid, f.rows, f.cols));
+            prev.sinceKey++;
+        }
+
+        System.arraycopy(grid, 0, prev.grid, 0, grid.length);
+        prev.seq = d.seq;
+        prev.rows = f.rows;
+        prev.cols = f.cols;
+        prev.dxM = f.dxM;
+        prev.dyM = f.dyM;
+        prev.rotationMilliDeg = f.rotationMilliDeg;
+        prev.xOffsetM = f.xOffsetM;
+        prev.yOffsetM = f.yOffsetM;
+        prev.trpLatMicroDeg = f.trpLatMicroDeg;
+        prev.trpLonMicroDeg = f.trpLonMicroDeg;
+        return d;
+    }
+
+    private static boolean sameGeometry(Last p, ItwsJsonConsumer.PrecipFrame f) {
+        return p.rows == f.rows && p.cols == f.cols && p.dxM == f.dxM && p.dyM == f.dyM
+                && p.rotationMilliDeg == f.rotationMilliDeg && p.xOffsetM == f.xOffsetM && p.yOffsetM == f.yOffsetM
+                && p.trpLatMicroDeg == f.trpLatMicroDeg && p.trpLonMicroDeg == f.trpLonMicroDeg
+                && p.grid.length == f.grid.length;
+    }
+
+    // Tiles in row-major tile order; each tile row is compared with Arrays.mismatch
+    private int[] changedTiles(byte[] a, byte[] b, int rows, int cols) {
+        int[] out = new int[16];
+        int n = 0;
+        for (int y0 = 0; y0 < rows; y0 += tileSize) {
+            int y1 = Math.min(rows, y0 + tileSize);
+            for (int x0 = 0; x0 < cols; x0 += tileSize) {
+                int x1 = Math.min(cols, x0 + tileSize);
+                for (int y = y0; y < y1; y++) {
+                    int from = y * cols + x0;
+                    int to = y * cols + x1;
+                    if (Arrays.mismatch(a, from, to, b, from, to) >= 0) {
+                        if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                        out[n++] = y0 * cols + x0;
+                        break;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
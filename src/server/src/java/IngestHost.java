@@ -0,0 +1,185 @@
+package dev.vstars;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Several consumer pipelines (TAIS and ITWS queues, e.g. one per facility) in one JVM, instead of a
+ * consumer process per queue. Pipelines share one broker connection per broker/VPN/user and one HTTP
+ * client, and each runs on its own thread: a pipeline that fails is logged and restarted after
+ * HOST_RESTART_DELAY_MS without touching the others.
+ *
+ * INGEST_PIPELINES_FILE is a properties file naming the pipelines:
+ * <pre>
+ * SCDS_USERNAME=...
+ * SCDS_PASSWORD=...
+ *
+ * n90.type=tais
+ * n90.queue=...
+ * n90.url=http://localhost:3000/api/flightRules
+ * n90.token=...
+ *
+ * n90wx.type=itws
+ * n90wx.queue=...
+ * n90wx.url=http://localhost:3000/api/wx/radar
+ * n90wx.ITWS_PRODUCTS=9850,9849
+ * </pre>
+ * {@code <name>.type} is {@code tais} or {@code itws}; {@code queue}, {@code url} and {@code token}
+ * stand for that consumer's queue, POST URL and ingest token variables, and any other setting of
+ * the consumer is given as {@code <name>.<VARIABLE>}. A setting not given for the pipeline comes
+ * from an unprefixed entry in the file, then from the environment. Every pipeline's settings are
+ * checked before any of them starts.
+ *
+ * Metrics of all pipelines of a kind are added up under that kind's prefix; HOST_METRICS_PORT
+ * serves them together with the host's own.
+ */
+public final class IngestHost {
+
+    /** One consumer run: returns when its source ends, throws when it fails. */
+    interface Pipeline {
+        void run(MessageSource.Brokers brokers, HttpClient http) throws Exception;
+    }
+
+    private static final Map<String, Function<Function<String, String>, Pipeline>> TYPES = Map.of(
+            "tais", TaisJsonConsumer::hosted,
+            "itws", ItwsJsonConsumer::hosted);
+
+    // <name>.queue / .url / .token, per type
+    private static final Map<String, Map<String, String>> SHORTHANDS = Map.of(
+            "tais", Map.of("queue", "SCDS_QUEUE_TAIS", "url", "FLIGHTRULES_POST_URL", "token", "TAIS_INGEST_TOKEN"),
+            "itws", Map.of("queue", "SCDS_QUEUE_ITWS", "url", "WX_POST_URL", "token", "ITWS_INGEST_TOKEN"));
+
+    private static final Metrics METRICS = new Metrics("ingest");
+    private static final Metrics.LabeledCounter RESTARTS =
+            METRICS.counter("pipeline_restarts_total", "Pipelines restarted after a failure", "pipeline");
+    private static final AtomicInteger RUNNING = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        String file = System.getenv("INGEST_PIPELINES_FILE");
+        if (file == null || file.isBlank()) throw new IllegalArgumentException("Missing env INGEST_PIPELINES_FILE");
+        Properties props = load(Path.of(file.trim()));
+        Function<String, String> hostEnv = k -> {
+            String v = props.getProperty(k);
+            return v != null ? v.trim() : System.getenv(k);
+        };
+
+        // Fail fast on any bad pipeline, before connecting anything
+        Map<String, Pipeline> pipelines = new LinkedHashMap<>();
+        for (String name : names(props)) {
+            String type = props.getProperty(name + ".type").trim().toLowerCase(Locale.ROOT);
+            Function<Function<String, String>, Pipeline> factory = TYPES.get(type);
+            if (factory == null) {
+                throw new IllegalArgumentException(name + ".type: unknown type '" + type + "' (known: " + TYPES.keySet() + ")");
+            }
+            try {
+                pipelines.put(name, factory.apply(pipelineEnv(props, name, SHORTHANDS.get(type), hostEnv)));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("pipeline " + name + ": " + e.getMessage(), e);
+            }
+        }
+        if (pipelines.isEmpty()) throw new IllegalArgumentException(file + ": no <name>.type entries");
+
+        METRICS.registerJvm();
+        METRICS.gauge("pipelines_running", "Pipelines currently running", RUNNING::get);
+        Metrics.serve(parseIntOrDefault(hostEnv.apply("HOST_METRICS_PORT"), 0),
+                METRICS, TaisJsonConsumer.metrics(), ItwsJsonConsumer.metrics());
+
+        long restartDelayMs = parseIntOrDefault(hostEnv.apply("HOST_RESTART_DELAY_MS"), 10_000);
+
+        // One HTTP client (and connection pool) for every pipeline
+        final HttpClient http = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(parseIntOrDefault(hostEnv.apply("HTTP_CONNECT_TIMEOUT_MS"), 1500)))
+                .build();
+
+        try (MessageSource.Brokers brokers = new MessageSource.Brokers()) {
+            // Platform threads: the build targets Java 17. A pipeline spends its time blocked in receive
+            // or in a POST, so a thread each costs little.
+            List<Thread> threads = new ArrayList<>();
+            pipelines.forEach((name, pipeline) -> {
+                Thread t = new Thread(() -> supervise(name, pipeline, brokers, http, restartDelayMs), "pipeline-" + name);
+                t.start();
+                threads.add(t);
+            });
+            System.out.println("Ingest host running " + pipelines.keySet());
+            for (Thread t : threads) t.join();
+        }
+    }
+
+    /** Runs {@code pipeline} until its source ends, restarting it after each failure. */
+    private static void supervise(String name, Pipeline pipeline, MessageSource.Brokers brokers,
+                                  HttpClient http, long restartDelayMs) {
+        while (true) {
+            RUNNING.incrementAndGet();
+            try {
+                pipeline.run(brokers, http);
+                System.out.println("Pipeline " + name + ": source ended");
+                return;
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable e) {
+                System.err.println("Pipeline " + name + " failed: " + e);
+            } finally {
+                RUNNING.decrementAndGet();
+            }
+
+            try {
+                Thread.sleep(restartDelayMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+            RESTARTS.inc(name);
+            System.out.println("Pipeline " + name + ": restarting");
+        }
+    }
+
+    /** Settings of pipeline {@code name}: its own entries, then the shorthands, then the host's. */
+    private static Function<String, String> pipelineEnv(Properties props, String name, Map<String, String> shorthands,
+                                                        Function<String, String> hostEnv) {
+        Map<String, String> own = new LinkedHashMap<>();
+        shorthands.forEach((shorthand, variable) -> {
+            String v = props.getProperty(name + "." + shorthand);
+            if (v != null) own.put(variable, v.trim());
+        });
+        String prefix = name + ".";
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith(prefix) && !shorthands.containsKey(key.substring(prefix.length()))) {
+                own.put(key.substring(prefix.length()), props.getProperty(key).trim());
+            }
+        }
+        return k -> own.containsKey(k) ? own.get(k) : hostEnv.apply(k);
+    }
+
+    private static TreeSet<String> names(Properties props) {
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.endsWith(".type")) names.add(key.substring(0, key.length() - ".type".length()));
+        }
+        return names;
+    }
+
+    private static Properties load(Path file) throws IOException {
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(file)) {
+            props.load(r);
+        }
+        return props;
+    }
+
+    private static int parseIntOrDefault(String s, int def) {
+        if (s == null || s.isBlank()) return def;
+        try { return Integer.parseInt(s.trim()); } catch (Exception e) { return def; }
+    }
+}
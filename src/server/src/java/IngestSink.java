@@ -0,0 +1,25 @@
+package dev.vstars;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous delivery of JSON bodies to the Node ingest endpoint: one POST per body
+ * ({@link AsyncPoster}) or records on a long-lived stream ({@link StreamSink}).
+ */
+interface IngestSink extends AutoCloseable {
+
+    /**
+     * Completes once the endpoint has accepted the body (true) or it has been spooled to disk (false);
+     * never completes exceptionally. {@code body} must not be modified until the future completes.
+     */
+    CompletableFuture<Boolean> post(byte[] body, int offset, int length);
+
+    default CompletableFuture<Boolean> post(byte[] body) {
+        return post(body, 0, body.length);
+    }
+
+    /** Stops delivering; bodies not yet accepted are abandoned (their messages are not acked). */
+    @Override
+    default void close() {
+    }
+}
@@ -1,7 +1,6 @@
 package dev.vstars;
 
-import com.solacesystems.jms.SolConnectionFactory;
-import com.solacesystems.jms.SolJmsUtility;
+import com.solacesystems.jms.SupportedProperty;
 
 import javax.jms.*;
 import javax.xml.stream.*;
@@ -11,192 +10,623 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
 
 public final class ItwsJsonConsumer {
 
-    // TRACON precip product
-    private static final int TARGET_PRODUCT_ID = 9850;
-
-    private static int countNonZero(int[] grid) {
-        int c = 0;
-        for (int v : grid) if (v != 0) c++;
-        return c;
-    }
+    // Frames of a product share rows*cols, and a grid is only held until its body is built
+    private static final GridPool GRIDS = new GridPool(4);
+
+    // ---------------- Metrics (ITWS_METRICS_PORT) ----------------
+
+    private static final Metrics METRICS = new Metrics("itws");
+    private static final Metrics.Counter RECEIVED =
+            METRICS.counter("messages_received_total", "JMS messages received");
+    private static final Metrics.LabeledCounter FILTERED =
+            METRICS.counter("messages_filtered_total", "Messages skipped for another productID", "product_id");
+    private static final Metrics.Counter DROPPED =
+            METRICS.counter("messages_dropped_total", "Messages without a decodable precip frame");
+    private static final Metrics.Counter OVERSIZED =
+            METRICS.counter("messages_oversized_total", "Messages over ITWS_MAX_XML_BYTES (dropped)");
+    private static final Metrics.Counter ERRORS =
+            METRICS.counter("errors_total", "Messages that failed with an exception");
+    private static final Metrics.Counter POSTS =
+            METRICS.counter("posts_total", "Frames accepted by the endpoint");
+    private static final Metrics.Counter SUPERSEDED =
+            METRICS.counter("frames_superseded_total", "Frames dropped for a newer frame of the same product/site (ITWS_CONFLATE)");
+    private static final Metrics.Counter RETRIES =
+            METRICS.counter("post_retries_total", "Failed POST attempts that were retried");
+    private static final Metrics.Counter RECONNECTS =
+            METRICS.counter("stream_reconnects_total", "Streaming sink reconnects");
+    private static final Metrics.LabeledCounter FRAMES_ENCODED =
+            METRICS.counter("frames_encoded_total", "Frames published as keyframes or deltas (ITWS_DELTA)", "kind");
+    private static final Metrics.Counter PYRAMID_TILES =
+            METRICS.counter("pyramid_tiles_sent_total", "Pyramid tiles sent with new content (ITWS_PYRAMID)");
+    private static final Metrics.Counter CONTOUR_VERTICES =
+            METRICS.counter("contour_vertices_total", "Contour polygon vertices sent (ITWS_CONTOURS)");
+    private static final Metrics.Histogram RECEIVE_LAG =
+            METRICS.histogram("receive_lag_seconds", "Broker timestamp (JMSTimestamp) to receive");
+    private static final Metrics.Histogram DECODE =
+            METRICS.histogram("decode_seconds", "XML parse and RLE decode per frame");
+    private static final Metrics.Histogram JSON_BUILD =
+            METRICS.histogram("json_build_seconds", "Body encoding (JSON or binary, see ITWS_WIRE_FORMAT) per frame");
+    private static final Metrics.Histogram CONTOUR =
+            METRICS.histogram("contour_seconds", "Contour extraction and simplification per frame (ITWS_CONTOURS)");
+    private static final Metrics.Histogram POST =
+            METRICS.histogram("post_seconds", "POST (or stream write) until accepted, including retries");
+    private static final Metrics.Histogram POST_LAG =
+            METRICS.histogram("post_lag_seconds", "Broker timestamp to the frame being accepted");
 
     public static void main(String[] args) throws Exception {
         Config cfg = Config.fromEnv();
 
+        METRICS.registerJvm();
+        METRICS.serve(cfg.metricsPort);
+
         HttpClient http = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofMillis(cfg.httpConnectTimeoutMs))
                 .build();
 
-        SolConnectionFactory cf = SolJmsUtility.createConnectionFactory();
-        cf.setHost(normalizeJmsHostList(cfg.jmsUrl));
-        cf.setVPN(cfg.vpn);
-        cf.setUsername(cfg.username);
-        cf.setPassword(cfg.password);
-        cf.setConnectRetries(5);
-        cf.setConnectRetriesPerHost(3);
+        try (MessageSource source = openSource(cfg, null)) {
+            run(cfg, source, http);
+        }
+    }
 
-        try (Connection conn = cf.createConnection();
-             Session session = conn.createSession(false, Session.CLIENT_ACKNOWLEDGE)) {
+    /**
+     * This consumer as a pipeline of {@link IngestHost}: settings from {@code env}, checked before anything
+     * starts; the broker connection and HTTP client are the host's. ITWS_METRICS_PORT is not used there.
+     */
+    static IngestHost.Pipeline hosted(Function<String, String> env) {
+        Config cfg = Config.fromEnv(env);
+        return (brokers, http) -> {
+            try (MessageSource source = openSource(cfg, brokers)) {
+                run(cfg, source, http);
+            }
+        };
+    }
 
-            Queue queue = session.createQueue(cfg.queueName);
-            MessageConsumer consumer = session.createConsumer(queue);
+    static Metrics metrics() {
+        return METRICS;
+    }
 
-            conn.start();
-            System.out.println("Connected. Consuming queue: " + cfg.queueName);
-            System.out.println("Posting to: " + cfg.postUrl);
+    /**
+     * The Solace queue (through the host's shared connection when {@code brokers} is given), or a capture
+     * file when ITWS_REPLAY_FILE is set; optionally recorded to ITWS_RECORD_FILE.
+     */
+    private static MessageSource openSource(Config cfg, MessageSource.Brokers brokers) throws Exception {
+        MessageSource source;
+        if (cfg.replayFile != null) {
+            source = new ReplaySource(cfg.replayFile, cfg.replaySpeed, "ITWS");
+        } else if (brokers != null) {
+            source = brokers.queue(cfg.jmsUrl, cfg.vpn, cfg.username, cfg.password, cfg.queueName);
+        } else {
+            source = MessageSource.jms(MessageSource.solace(cfg.jmsUrl, cfg.vpn, cfg.username, cfg.password), cfg.queueName);
+        }
+        return cfg.recordFile == null ? source : MessageSource.recording(source, cfg.recordFile);
+    }
 
-            XMLInputFactory xif = XMLInputFactory.newFactory();
-            trySet(xif, XMLInputFactory.SUPPORT_DTD, false);
-            trySet(xif, "javax.xml.stream.isSupportingExternalEntities", false);
+    // Threads, the spool and metric sources of the run are released when it ends
+    private static void run(Config cfg, MessageSource source, HttpClient http) throws Exception {
+        try (Closer closer = new Closer("ITWS")) {
+            run(cfg, source, http, closer);
+        }
+    }
 
-            long empty = 0;
-            long lastBeat = System.currentTimeMillis();
+    private static void run(Config cfg, MessageSource source, HttpClient http, Closer closer) throws Exception {
+        // Pipelined and conflated delivery ack messages out of receive order, which needs Solace individual acks
+        final boolean pipelined = cfg.maxInFlight > 1;
+        final boolean conflate = useConflation(cfg);
+        final int ackMode = (pipelined || conflate) ? SupportedProperty.SOL_CLIENT_ACKNOWLEDGE : Session.CLIENT_ACKNOWLEDGE;
+
+        // Let the broker drop the products we do not ingest
+        final ItwsProducts products = cfg.products;
+        String selector = cfg.useSelector ? products.selector() : null;
+        MessageSource.Receiver consumer = source.createReceiver(ackMode, selector);
+
+        source.start();
+        System.out.println("Connected. Consuming " + source);
+        System.out.println("Products: " + products + (selector != null ? " (selector: " + selector + ")" : ""));
+        System.out.println("Posting to: " + (cfg.streamUrl != null ? cfg.streamUrl : cfg.postUrl));
+
+        XMLInputFactory xif = XMLInputFactory.newFactory();
+        trySet(xif, XMLInputFactory.SUPPORT_DTD, false);
+        trySet(xif, "javax.xml.stream.isSupportingExternalEntities", false);
+        final JmsPayload payload = new JmsPayload(OVERSIZED);
+
+        // Frame body format: JSON, or the packed binary grid if configured / offered by the endpoint
+        final boolean binary = useBinaryFrames(cfg, http);
+        System.out.println("Frame format: " + (binary ? PrecipGridCodec.CONTENT_TYPE : "application/json"));
+
+        // Optional delta frames: only the tiles that changed since the previous frame of the site
+        final FrameDeltas deltas = useDeltas(cfg, binary)
+                ? new FrameDeltas(cfg.deltaTileSize, cfg.keyframeEvery) : null;
+        // Optional tile pyramid: downsampled levels, tiles sent once per content hash
+        final TilePyramid pyramid = usePyramid(cfg, binary) ? new TilePyramid(cfg.pyramidTileSize) : null;
+        // Optional gzip of POST bodies, compressed while they are written (not for the NDJSON stream)
+        final BodyGzip gzip = (cfg.streamUrl != null) ? null
+                : BodyGzip.fromEnv(cfg.contentEncoding, cfg.compressMinBytes, "ITWS");
+        if (gzip != null) System.out.println("POST bodies: gzip from " + cfg.compressMinBytes + " bytes");
+        // Optional level contours: simplified, georeferenced polygons next to the cells
+        final PrecipContours contours = useContours(cfg, binary) ? new PrecipContours(cfg.contourToleranceM) : null;
+        final Runnable onConflict = (deltas == null && pyramid == null) ? null : () -> {
+            System.out.println("WX endpoint asked for a keyframe");
+            if (deltas != null) deltas.requestKeyframe();
+            if (pyramid != null) pyramid.resendAll();
+        };
+
+        // Optional disk spool: frames the endpoint rejects are written locally and acked, then replayed
+        final Spool spool = closer.add(openSpool(cfg, http, onConflict));
+        if (spool != null) {
+            closer.add(METRICS.counter("spooled_total", "Frames written to the disk spool", spool::appended));
+            closer.add(METRICS.counter("spool_replayed_total", "Spooled frames delivered", spool::replayed));
+        }
 
-            while (true) {
-                Message msg = consumer.receive(cfg.receiveTimeoutMs);
-                if (msg == null) {
-                    empty++;
-                    long now = System.currentTimeMillis();
-                    if (now - lastBeat >= cfg.heartbeatMs) {
-                        System.out.println("Waiting… (" + empty + " empty polls)");
-                        lastBeat = now;
-                    }
-                    continue;
+        final AckWindow window = pipelined ? new AckWindow(cfg.maxInFlight) : null;
+        final IngestSink poster;
+        if (cfg.streamUrl != null) {
+            // One long-lived connection instead of a POST per frame
+            poster = new StreamSink(cfg.streamUrl, "X-WX-Token", cfg.ingestToken,
+                    cfg.httpConnectTimeoutMs, cfg.retrySleepMs, "WX stream", RECONNECTS);
+        } else if (pipelined) {
+            poster = new AsyncPoster(http, cfg.postUrl, binary ? PrecipGridCodec.CONTENT_TYPE : "application/json",
+                    "X-WX-Token", cfg.ingestToken,
+                    cfg.httpRequestTimeoutMs, cfg.retrySleepMs, "WX POST", spool, RETRIES);
+        } else {
+            poster = null;
+        }
+        closer.add(poster);
+        // Concurrent POSTs of the same product/site could reach Node out of order, and Node keeps the last
+        // frame it receives: each waits for the previous one of its product/site
+        final KeyedOrder<String> order = (poster instanceof AsyncPoster) ? new KeyedOrder<>() : null;
+
+        final BodyEncoder encoder = new BodyEncoder(cfg, binary, deltas, pyramid, contours, gzip);
+
+        // Bodies are encoded into reused buffers and posted straight from them: one buffer when blocking,
+        // a pool when pipelined (a buffer goes back once the endpoint has its frame)
+        final ByteSink single = new ByteSink(1 << 20);
+        final ConcurrentLinkedQueue<ByteSink> bodies = new ConcurrentLinkedQueue<>();
+
+        // Optional latest-wins delivery: decoded frames wait for the delivery thread, newest per product/site
+        final ConflatingQueue<String, Pending> latest = conflate ? new ConflatingQueue<>() : null;
+        final ConcurrentLinkedQueue<Message> delivered = new ConcurrentLinkedQueue<>();
+        if (latest != null) {
+            closer.add(METRICS.gauge("frames_pending", "Frames waiting for delivery (ITWS_CONFLATE)", latest::size));
+            closer.add(startDelivery(cfg, http, encoder, single, spool, onConflict, latest, delivered)::interrupt);
+        }
+
+        long empty = 0;
+        long lastBeat = System.currentTimeMillis();
+
+        while (true) {
+            if (window != null) window.ackCompleted();
+            for (Message done; (done = delivered.poll()) != null; ) done.acknowledge();
+
+            boolean outstanding = (window != null && !window.isEmpty()) || (latest != null && !latest.isIdle());
+            int waitMs = outstanding ? Math.min(cfg.receiveTimeoutMs, 20) : cfg.receiveTimeoutMs;
+            Message msg = consumer.receive(waitMs);
+            if (msg == null) {
+                empty++;
+                long now = System.currentTimeMillis();
+                if (now - lastBeat >= cfg.heartbeatMs) {
+                    System.out.println("Waiting… (" + empty + " empty polls)");
+                    lastBeat = now;
                 }
+                continue;
+            }
 
-                boolean acked = false;
-                try {
-                    // Cheap gate: skip non-9850 messages quickly
-                    if (msg.propertyExists("productID")) {
-                        int pid = toInt(msg.getObjectProperty("productID"), -1);
-                        if (pid != TARGET_PRODUCT_ID) {
-                            msg.acknowledge();
-                            acked = true;
-                            continue;
-                        }
-                    }
+            RECEIVED.inc();
+            final long sourceTs = msg.getJMSTimestamp();
+            if (sourceTs > 0) RECEIVE_LAG.recordMillis(System.currentTimeMillis() - sourceTs);
 
-                    PrecipFrame frame = parseAndDecode(msg, xif, cfg);
-                    if (frame == null || frame.productId != TARGET_PRODUCT_ID || frame.grid == null) {
-                        // Not our frame or malformed => ack so we don't poison-loop
+            boolean acked = false;
+            try {
+                // Cheap gate for what the selector let through (replays, ITWS_SELECTOR=false)
+                ItwsProducts.Kind kind = products.fallback();
+                if (msg.propertyExists("productID")) {
+                    int pid = toInt(msg.getObjectProperty("productID"), -1);
+                    kind = products.get(pid);
+                    if (kind == null) {
+                        FILTERED.inc(String.valueOf(pid));
                         msg.acknowledge();
                         acked = true;
                         continue;
                     }
+                }
 
-                    // Build JSON bytes (streamed) and POST
-                    byte[] json = buildJsonBytes(frame, cfg.maxCellsOut);
+                long decodeStart = System.nanoTime();
+                PrecipFrame frame = parseAndDecode(msg, payload, xif, cfg, kind.decoder);
+                DECODE.since(decodeStart);
+                boolean ingested = frame != null && products.get(frame.productId) != null;
+                if (!ingested || !frame.hasCells()) {
+                    // Not our frame or malformed => ack so we don't poison-loop
+                    if (frame != null && !ingested) {
+                        FILTERED.inc(String.valueOf(frame.productId));
+                    } else {
+                        DROPPED.inc();
+                    }
+                    msg.acknowledge();
+                    acked = true;
+                    continue;
+                }
 
-                    if (cfg.printJson) {
-                        System.out.write(json);
-                        System.out.write('\n');
-                        System.out.flush();
+                if (latest != null) {
+                    // Hand off to the delivery thread, which acks through `delivered`. A frame of the same
+                    // product/site still waiting there is stale now: drop it and ack it here.
+                    Pending stale = latest.offer(frame.productId + "/" + frame.site, new Pending(frame, kind, msg, sourceTs));
+                    acked = true;
+                    if (stale != null) {
+                        SUPERSEDED.inc();
+                        GRIDS.release(stale.frame);
+                        stale.msg.acknowledge();
                     }
+                    continue;
+                }
 
-                    postWithRetry(http, cfg.postUrl, cfg.ingestToken, json,
-                            cfg.httpRequestTimeoutMs, cfg.retrySleepMs);
-                        
-                    int nonZero = countNonZero(frame.grid);
-                    System.out.println(
-                        "POST OK " + isoNow()
-                        + " productId=" + frame.productId
-                        + " size=" + frame.cols + "x" + frame.rows
-                        + " maxLvl=" + frame.maxPrecipLevel
-                        + " nonZero=" + nonZero
-                        + " filled=" + frame.filledCells
-                    );
-
-                    // ACK only after successful POST
+                if (window == null) {
+                    postFrame(cfg, http, encoder, frame, kind, single, spool, onConflict, sourceTs);
+
+                    // ACK only after successful POST (or once the frame is safely spooled)
                     msg.acknowledge();
                     acked = true;
+                    continue;
+                }
+
+                // Build the body (streamed JSON or packed binary; no deltas when pipelined) and POST
+                ByteSink plain = bodies.poll();
+                if (plain == null) plain = new ByteSink(1 << 20);
+                byte[] gz;
+                try {
+                    gz = encoder.encode(frame, kind, plain);
+                } finally {
+                    // The body is self-contained from here on; recycle the grid for the next frame
+                    GRIDS.release(frame);
+                }
+                byte[] body = (gz != null) ? gz : plain.array();
+                int bodyLength = (gz != null) ? gz.length : plain.size();
+
+                // Hand off to the pipeline; the ack is released by window.ackCompleted() on this thread
+                // once this and every earlier frame have been posted.
+                AckWindow.Slot slot = window.open(msg);
+                acked = true;
+                long postStart = System.nanoTime();
+                ByteSink buffer = plain;
+                CompletableFuture<Boolean> sent = (order == null)
+                        ? poster.post(body, 0, bodyLength)
+                        : order.post(frame.productId + "/" + frame.site, () -> poster.post(body, 0, bodyLength));
+                sent.thenAccept(posted -> {
+                    if (posted) {
+                        recordPosted(postStart, sourceTs);
+                        logPostOk(frame);
+                    }
+                    bodies.offer(buffer);
+                    window.complete(slot);
+                });
+
+            } catch (Exception e) {
+                ERRORS.inc();
+                System.err.println("Error: " + e.getMessage());
+                // If we didn't ACK and it's a transient error, message will redeliver.
+                // For parsing errors, we already acked above to avoid poison loops.
+            } finally {
+                // Safety: avoid double-acking; only ack if not already done and you explicitly want it.
+                // (Leave it off for reliability.)
+                if (!acked && cfg.ackOnException) {
+                    try { msg.acknowledge(); } catch (Exception ignored) {}
+                }
+            }
+        }
+    }
+
+    // ---------------- Body encoding ----------------
+
+    // What a frame's body depends on besides the frame. Deltas and the pyramid follow frames in the order
+    // they are encoded, so a single thread encodes every frame.
+    private static final class BodyEncoder {
+        private final Config cfg;
+        private final boolean binary;
+        private final FrameDeltas deltas;        // optional
+        private final TilePyramid pyramid;       // optional
+        private final PrecipContours contours;   // optional
+        private final BodyGzip gzip;             // optional
+
+        BodyEncoder(Config cfg, boolean binary, FrameDeltas deltas, TilePyramid pyramid,
+                    PrecipContours contours, BodyGzip gzip) {
+            this.cfg = cfg;
+            this.binary = binary;
+            this.deltas = deltas;
+            this.pyramid = pyramid;
+            this.contours = contours;
+            this.gzip = gzip;
+        }
+
+        // Writes the body (streamed JSON, a delta against the previous frame, or packed binary) into plain
+        // and returns its gzip encoding, or null to send plain as is. The caller releases the frame's grid:
+        // after a 409 the same frame is encoded again.
+        byte[] encode(PrecipFrame frame, ItwsProducts.Kind kind, ByteSink plain) throws IOException {
+            long buildStart = System.nanoTime();
+            plain.reset();
+            FrameDeltas.Delta delta = (deltas == null) ? null : deltas.next(frame);
+            if (delta != null) FRAMES_ENCODED.inc(delta.key ? "key" : "delta");
+            TilePyramid.Update tiles = (pyramid == null) ? null : pyramid.next(frame);
+            if (tiles != null) PYRAMID_TILES.add(tiles.newTiles.size());
+            PrecipContours.Result areas = null;
+            if (contours != null) {
+                long contourStart = System.nanoTime();
+                areas = contours.trace(frame);
+                CONTOUR.since(contourStart);
+                CONTOUR_VERTICES.add(areas.vertices);
+            }
+            kind.encoder.encode(frame, binary, cfg.maxCellsOut, delta, tiles, areas,
+                    gzip == null ? plain : gzip.tee(plain));
+            byte[] gz = (gzip == null) ? null : gzip.finish(plain.array(), plain.size());
+            JSON_BUILD.since(buildStart);
+
+            if (cfg.printJson) {
+                if (binary) System.out.write(buildJsonBytes(frame, cfg.maxCellsOut));
+                else System.out.write(plain.array(), 0, plain.size());
+                System.out.write('\n');
+                System.out.flush();
+            }
+            return gz;
+        }
+    }
 
+    // ---------------- Latest-wins delivery (ITWS_CONFLATE) ----------------
+
+    // A decoded frame waiting for the delivery thread, with the message to ack once it is posted
+    private static final class Pending {
+        final PrecipFrame frame;
+        final ItwsProducts.Kind kind;
+        final Message msg;
+        final long sourceTs;
+
+        Pending(PrecipFrame frame, ItwsProducts.Kind kind, Message msg, long sourceTs) {
+            this.frame = frame;
+            this.kind = kind;
+            this.msg = msg;
+            this.sourceTs = sourceTs;
+        }
+    }
+
+    // Pipelined POSTs already keep the receive thread moving, and their frames are encoded up front
+    private static boolean useConflation(Config cfg) {
+        if (!cfg.conflate) return false;
+        if (cfg.maxInFlight > 1) {
+            System.out.println("ITWS_CONFLATE ignored with " + (cfg.streamUrl != null ? "WX_STREAM_URL" : "HTTP_MAX_IN_FLIGHT > 1"));
+            return false;
+        }
+        System.out.println("Delivery: latest frame per product/site, superseded frames are dropped");
+        return true;
+    }
+
+    // Encodes and posts frames one at a time, blocking on retries, while the receive thread keeps
+    // decoding and replacing what waits in `latest`. Messages to ack go back through `delivered`
+    // (acks belong to the session thread).
+    private static Thread startDelivery(Config cfg, HttpClient http, BodyEncoder encoder, ByteSink plain, Spool spool,
+                                        Runnable onConflict, ConflatingQueue<String, Pending> latest,
+                                        ConcurrentLinkedQueue<Message> delivered) {
+        Thread t = new Thread(() -> {
+            while (true) {
+                Pending p;
+                try {
+                    p = latest.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                boolean done = false;
+                try {
+                    postFrame(cfg, http, encoder, p.frame, p.kind, plain, spool, onConflict, p.sourceTs);
+                    done = true;
+                } catch (InterruptedException e) {
+                    return;
                 } catch (Exception e) {
+                    ERRORS.inc();
                     System.err.println("Error: " + e.getMessage());
-                    // If we didn't ACK and it's a transient error, message will redeliver.
-                    // For parsing errors, we already acked above to avoid poison loops.
                 } finally {
-                    // Safety: avoid double-acking; only ack if not already done and you explicitly want it.
-                    // (Leave it off for reliability.)
-                    if (!acked && cfg.ackOnException) {
-                        try { msg.acknowledge(); } catch (Exception ignored) {}
-                    }
+                    // Unacked on failure, as on the receive thread, unless ITWS_ACK_ON_EXCEPTION
+                    if (done || cfg.ackOnException) delivered.offer(p.msg);
+                    latest.done();
                 }
             }
+        }, "WX-delivery");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    // Encodes and posts one frame (blocking, with retries), then releases its grid. A 409 means the endpoint
+    // lacks the frame a delta or the pyramid's tiles refer to (e.g. Node restarted); onConflict has reset
+    // both, so the same frame goes out again at once as a keyframe instead of waiting for the next one.
+    private static void postFrame(Config cfg, HttpClient http, BodyEncoder encoder, PrecipFrame frame,
+                                  ItwsProducts.Kind kind, ByteSink plain, Spool spool, Runnable onConflict,
+                                  long sourceTs) throws IOException, InterruptedException {
+        try {
+            for (int attempt = 0; ; attempt++) {
+                byte[] gz = encoder.encode(frame, kind, plain);
+                byte[] body = (gz != null) ? gz : plain.array();
+                int bodyLength = (gz != null) ? gz.length : plain.size();
+
+                long postStart = System.nanoTime();
+                PostResult result = postWithRetry(http, cfg.postUrl, cfg.ingestToken, body, bodyLength,
+                        cfg.httpRequestTimeoutMs, cfg.retrySleepMs, spool, onConflict);
+                if (result == PostResult.POSTED) {
+                    recordPosted(postStart, sourceTs);
+                    logPostOk(frame);
+                }
+                if (result != PostResult.CONFLICT) return;
+                if (attempt > 0) {
+                    // Already a keyframe: the endpoint will not take this frame, don't loop on it
+                    System.err.println("WX POST failed: HTTP 409 for a keyframe");
+                    return;
+                }
+            }
+        } finally {
+            // The body is self-contained from here on; recycle the grid for the next frame
+            GRIDS.release(frame);
         }
     }
 
+    private static void recordPosted(long startNanos, long sourceTs) {
+        POSTS.inc();
+        POST.since(startNanos);
+        if (sourceTs > 0) POST_LAG.recordMillis(System.currentTimeMillis() - sourceTs);
+    }
+
+    private static void logPostOk(PrecipFrame frame) {
+        int nonZero = frame.nonZeroCells;
+        System.out.println(
+            "POST OK " + isoNow()
+            + " productId=" + frame.productId
+            + " size=" + frame.cols + "x" + frame.rows
+            + " maxLvl=" + frame.maxPrecipLevel
+            + " nonZero=" + nonZero
+            + " filled=" + frame.filledCells
+        );
+    }
+
     // ---------------- Parsing + streaming RLE decode ----------------
 
-    private static PrecipFrame parseAndDecode(Message msg, XMLInputFactory xif, Config cfg) throws Exception {
-        InputStream in = extractXmlStream(msg, cfg.maxXmlBytes);
-        if (in == null) return null;
+    private static PrecipFrame parseAndDecode(Message msg, JmsPayload payload, XMLInputFactory xif, Config cfg,
+                                              ItwsProducts.Decoder decoder) throws Exception {
+        if (!payload.load(msg, cfg.maxXmlBytes)) return null;
+        return decoder.decode(payload, xif, cfg.rleOutput);
+    }
 
-        XMLStreamReader r = xif.createXMLStreamReader(in);
+    static PrecipFrame parseAndDecode(InputStream in, XMLInputFactory xif) throws XMLStreamException {
+        return parseAndDecode(in, xif, false);
+    }
 
+    static PrecipFrame parseAndDecode(InputStream in, XMLInputFactory xif, boolean rle) throws XMLStreamException {
+        return parseAndDecode(xif.createXMLStreamReader(in), rle);
+    }
+
+    /** Text bodies go through StAX as characters; byte bodies take the raw grid path. */
+    static PrecipFrame parseAndDecode(JmsPayload payload, XMLInputFactory xif, boolean rle) throws XMLStreamException {
+        return payload.isText()
+                ? parseAndDecode(payload.xmlReader(xif), rle)
+                : parseAndDecode(payload.buf, 0, payload.len, xif, rle);
+    }
+
+    /**
+     * The grid text is most of a frame, and StAX would hand it over as Strings for the char-by-char
+     * decoder. Instead StAX sees the document with the text of prcp_grid_compressed cut out (two views
+     * of the same array, no copy), and the text is decoded from the bytes in place. Documents where
+     * the element cannot be located safely take the plain StAX path.
+     */
+    static PrecipFrame parseAndDecode(byte[] xml, int off, int len, XMLInputFactory xif, boolean rle) throws XMLStreamException {
+        long text = findGridText(xml, off, off + len);
+        if (text < 0) return parseAndDecode(xif.createXMLStreamReader(new ByteArrayInputStream(xml, off, len)), rle);
+        int from = (int) (text >>> 32), to = (int) text;
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(xml, off, from - off),
+                new ByteArrayInputStream(xml, to, off + len - to));
+        return parseAndDecode(xif.createXMLStreamReader(rest), rle, xml, from, to);
+    }
+
+    // With rle = true the grid is never expanded: the decoder keeps the remapped runs in f.runs instead.
+    static PrecipFrame parseAndDecode(XMLStreamReader r, boolean rle) throws XMLStreamException {
+        return parseAndDecode(r, rle, null, 0, 0);
+    }
+
+    // gridBytes[gridFrom, gridTo) is the prcp_grid_compressed text cut out of the stream r reads, if not null
+    private static PrecipFrame parseAndDecode(XMLStreamReader r, boolean rle, byte[] gridBytes, int gridFrom, int gridTo)
+            throws XMLStreamException {
         PrecipFrame f = new PrecipFrame();
         f.receivedAt = Instant.now().toString();
 
         String current = null;
         StringBuilder smallText = null;
         RleDecoder dec = null;
+        boolean gridText = false;   // prcp_grid_compressed had text of its own in the stream
 
-        while (r.hasNext()) {
-            int ev = r.next();
-
-            if (ev == XMLStreamConstants.START_ELEMENT) {
-                current = r.getLocalName();
-
-                if (!"prcp_grid_compressed".equals(current)) {
-                    smallText = new StringBuilder(64);
-                } else {
-                    smallText = null;
-
-                    if (f.rows > 0 && f.cols > 0 && f.grid == null) {
-                        f.grid = new int[safeMul(f.rows, f.cols)];
-                        dec = new RleDecoder(f.grid);
-                        dec.setSpecials(f.badValue, f.noCoverage, f.attenuated, f.apDetected);
-                    } else if (f.grid != null && dec == null) {
-                        dec = new RleDecoder(f.grid);
-                        dec.setSpecials(f.badValue, f.noCoverage, f.attenuated, f.apDetected);
+        try {
+            while (r.hasNext()) {
+                int ev = r.next();
+
+                if (ev == XMLStreamConstants.START_ELEMENT) {
+                    current = r.getLocalName();
+
+                    if (!"prcp_grid_compressed".equals(current)) {
+                        smallText = new StringBuilder(64);
+                    } else {
+                        smallText = null;
+                        gridText = false;
+
+                        if (rle && dec == null && f.rows > 0 && f.cols > 0) {
+                            dec = RleDecoder.runs(safeMul(f.rows, f.cols));
+                            dec.setSpecials(f.badValue, f.noCoverage, f.attenuated, f.apDetected);
+                        } else if (!rle && f.rows > 0 && f.cols > 0 && f.grid == null) {
+                            f.grid = GRIDS.acquire(safeMul(f.rows, f.cols));
+                            dec = new RleDecoder(f.grid);
+                            dec.setSpecials(f.badValue, f.noCoverage, f.attenuated, f.apDetected);
+                        } else if (f.grid != null && dec == null) {
+                            dec = new RleDecoder(f.grid);
+                            dec.setSpecials(f.badValue, f.noCoverage, f.attenuated, f.apDetected);
+                        }
                     }
-                }
 
-            } else if (ev == XMLStreamConstants.CHARACTERS || ev == XMLStreamConstants.CDATA) {
-                if ("prcp_grid_compressed".equals(current)) {
-                    if (dec != null) dec.feed(r.getText());
-                } else if (smallText != null) {
-                    if (smallText.length() < 512) smallText.append(r.getText());
-                }
+                } else if (ev == XMLStreamConstants.CHARACTERS || ev == XMLStreamConstants.CDATA) {
+                    if ("prcp_grid_compressed".equals(current)) {
+                        gridText = true;
+                        if (dec != null) dec.feed(r.getText());
+                    } else if (smallText != null) {
+                        if (smallText.length() < 512) smallText.append(r.getText());
+                    }
 
-            } else if (ev == XMLStreamConstants.END_ELEMENT) {
-                String end = r.getLocalName();
+                } else if (ev == XMLStreamConstants.END_ELEMENT) {
+                    String end = r.getLocalName();
 
-                if ("prcp_grid_compressed".equals(end)) {
-                    if (dec != null) dec.finish();
-                } else if (current != null && current.equals(end) && smallText != null) {
-                    String v = smallText.toString().trim();
-                    applyField(f, end, v);
+                    if ("prcp_grid_compressed".equals(end)) {
+                        // The element that was cut out arrives empty; another one keeps its text
+                        if (dec != null && gridBytes != null && !gridText) {
+                            dec.feed(gridBytes, gridFrom, gridTo);
+                            gridBytes = null;
+                        }
+                        if (dec != null) dec.finish();
+                    } else if (current != null && current.equals(end) && smallText != null) {
+                        String v = smallText.toString().trim();
+                        applyField(f, end, v);
 
-                    if ((end.equals("prcp_nrows") || end.equals("prcp_ncols")) && f.rows > 0 && f.cols > 0 && f.grid == null) {
-                        f.grid = new int[safeMul(f.rows, f.cols)];
+                        if ((end.equals("prcp_nrows") || end.equals("prcp_ncols")) && f.rows > 0 && f.cols > 0 && f.grid == null && !rle) {
+                            f.grid = GRIDS.acquire(safeMul(f.rows, f.cols));
+                        }
                     }
-                }
 
-                current = null;
-                smallText = null;
+                    current = null;
+                    smallText = null;
+                }
             }
+        } catch (XMLStreamException | RuntimeException e) {
+            GRIDS.release(f);
+            throw e;
         }
 
-        if (f.productId != TARGET_PRODUCT_ID) return null;
-        if (f.grid == null || f.rows <= 0 || f.cols <= 0) return null;
+        // Any product with a grid; the caller checks it is one it ingests
+        if (f.productId < 0 || f.rows <= 0 || f.cols <= 0) {
+            GRIDS.release(f);
+            return null;
+        }
+        if (rle) {
+            f.runs = (dec == null) ? new int[0] : dec.runs();
+        } else if (f.grid == null) {
+            return null;
+        } else {
+            // Pooled grids hold the previous frame: clear whatever the runs did not cover
+            int covered = (dec == null) ? 0 : dec.filled();
+            if (covered < f.grid.length) Arrays.fill(f.grid, covered, f.grid.length, (byte) 0);
+        }
 
         f.filledCells = (dec == null) ? -1 : dec.filled();
+        f.nonZeroCells = (dec == null) ? 0 : dec.nonZero();
         return f;
     }
 
@@ -234,11 +664,85 @@ public final class ItwsJsonConsumer {
 
     // ---------------- RLE decoder (streaming) ----------------
 
-    private static final class RleDecoder {
-        private final int[] out;
+    private static final byte[] GRID_TAG = "prcp_grid_compressed".getBytes(StandardCharsets.US_ASCII);
+
+    // The text of the first prcp_grid_compressed element (any prefix) as (from << 32) | to, or -1 if it
+    // is absent or not safe to cut out: the document is not ASCII-compatible (the name is not found),
+    // "<!" (comment, CDATA, DOCTYPE) comes before it, it is self-closing, or its text holds markup or
+    // references.
+    static long findGridText(byte[] b, int from, int to) {
+        int name = indexOf(b, GRID_TAG, from, to);
+        if (name < 0) return -1;
+        int lt = name - 1;
+        if (lt >= from && b[lt] == ':') {
+            lt--;
+            while (lt >= from && isNameByte(b[lt])) lt--;
+        }
+        if (lt < from || b[lt] != '<') return -1;
+        for (int i = from; i < lt - 1; i++) {
+            if (b[i] == '<' && b[i + 1] == '!') return -1;
+        }
+
+        // Rest of the start tag; attribute values may hold '>'
+        int nameEnd = name + GRID_TAG.length;
+        if (nameEnd >= to || !(b[nameEnd] == '>' || isWs(b[nameEnd]))) return -1;
+        int gt = nameEnd;
+        byte quote = 0;
+        for (; gt < to; gt++) {
+            byte c = b[gt];
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                break;
+            }
+        }
+        if (gt >= to || b[gt - 1] == '/') return -1;
+
+        int textFrom = gt + 1, textTo = textFrom;
+        while (textTo < to && b[textTo] != '<') {
+            if (b[textTo] == '&') return -1;
+            textTo++;
+        }
+
+        // "</" + the same qualified name + optional whitespace + ">"
+        int qlen = nameEnd - (lt + 1);
+        int e = textTo + 2;
+        if (e + qlen > to || b[textTo + 1] != '/' || !Arrays.equals(b, e, e + qlen, b, lt + 1, nameEnd)) return -1;
+        e += qlen;
+        while (e < to && isWs(b[e])) e++;
+        if (e >= to || b[e] != '>') return -1;
+        return ((long) textFrom << 32) | textTo;
+    }
+
+    private static int indexOf(byte[] b, byte[] needle, int from, int to) {
+        byte first = needle[0];
+        for (int i = from, last = to - needle.length; i <= last; i++) {
+            if (b[i] == first && Arrays.equals(b, i, i + needle.length, needle, 0, needle.length)) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isNameByte(byte c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '.' || c < 0;
+    }
+
+    private static boolean isWs(byte c) { return c == ' ' || c == '\n' || c == '\r' || c == '\t'; }
+
+    static final class RleDecoder {
+        private final byte[] out;        // expanded grid, or null when collecting runs
+        private final int capacity;      // cells in the grid
         private int outPos = 0;
+        private int nonZero = 0;
 
-        private int bad = 9, noCov = 15, atten = 7, ap = 8;
+        // Run mode: [level, count] pairs after mapLevel, adjacent equal levels merged
+        private int[] runs;
+        private int runLen = 0;
+
+        // mapLevel for 0..6; the default specials (bad 9, no coverage 15, attenuated 7, AP 8) are all above 6
+        private final byte[] levels = { 0, 1, 2, 3, 4, 5, 6 };
 
         private int curVal = 0;
         private int curCnt = 0;
@@ -247,22 +751,39 @@ public final class ItwsJsonConsumer {
         private boolean inCnt = false;
         private boolean sawDigit = false;
 
-        RleDecoder(int[] out) { this.out = out; }
+        RleDecoder(byte[] out) {
+            this.out = out;
+            this.capacity = out.length;
+        }
+
+        private RleDecoder(int capacity) {
+            this.out = null;
+            this.capacity = capacity;
+            this.runs = new int[64];
+        }
+
+        /** A decoder that keeps the runs instead of expanding them into a grid of {@code capacity} cells. */
+        static RleDecoder runs(int capacity) { return new RleDecoder(capacity); }
 
         void setSpecials(int bad, int noCov, int atten, int ap) {
-            this.bad = bad;
-            this.noCov = noCov;
-            this.atten = atten;
-            this.ap = ap;
+            for (int v = 0; v < levels.length; v++) {
+                levels[v] = (byte) ((v == bad || v == noCov || v == atten || v == ap) ? 0 : v);
+            }
         }
 
         int filled() { return outPos; }
 
+        /** Cells written with a level other than 0 (after mapLevel). */
+        int nonZero() { return nonZero; }
+
+        /** The runs collected so far as [level, count, level, count, ...]; run mode only. */
+        int[] runs() { return Arrays.copyOf(runs, runLen); }
+
         void feed(String chunk) {
-            if (chunk == null || chunk.isEmpty() || outPos >= out.length) return;
+            if (chunk == null || chunk.isEmpty() || outPos >= capacity) return;
 
             final int n = chunk.length();
-            for (int i = 0; i < n && outPos < out.length; i++) {
+            for (int i = 0; i < n && outPos < capacity; i++) {
                 char c = chunk.charAt(i);
 
                 if (!inVal && !inCnt) {
@@ -311,8 +832,98 @@ public final class ItwsJsonConsumer {
             }
         }
 
+        /**
+         * Same grammar and results as {@link #feed(String)}, over ASCII-compatible bytes. Whole runs
+         * ("level,count" and a whitespace byte) are scanned with the state in locals; anything else (a
+         * sign, stray characters, a run cut off by the end of the range) steps through the state machine.
+         */
+        void feed(byte[] b, int from, int to) {
+            int i = from;
+            while (i < to && outPos < capacity) {
+                if (!inVal && !inCnt) {
+                    if (isWs(b[i])) {
+                        i++;
+                        continue;
+                    }
+                    int next = scanRun(b, i, to);
+                    if (next > 0) {
+                        i = next;
+                        continue;
+                    }
+                }
+                step((char) (b[i++] & 0xFF));
+            }
+        }
+
+        // One whole run starting at b[i] when idle. Emits it and returns the index after its trailing
+        // whitespace, or -1 to leave the bytes to step().
+        private int scanRun(byte[] b, int i, int to) {
+            int v = 0, d;
+            int p = i;
+            while (p < to && (d = b[p] - '0') >= 0 && d <= 9) {
+                v = v * 10 + d;
+                p++;
+            }
+            if (p == i || p >= to || b[p] != ',') return -1;
+
+            int cnt = 0;
+            int q = ++p;
+            while (p < to && (d = b[p] - '0') >= 0 && d <= 9) {
+                cnt = cnt * 10 + d;
+                p++;
+            }
+            if (p == q || p >= to || !isWs(b[p])) return -1;
+
+            emitRun(v, cnt);
+            return p + 1;
+        }
+
+        // feed(String)'s state machine for one character
+        private void step(char c) {
+            if (!inVal && !inCnt) {
+                if (isWs(c)) return;
+                inVal = true;
+                neg = false;
+                curVal = 0;
+                curCnt = 0;
+                sawDigit = false;
+                if (c == '-') { neg = true; return; }
+                if (isDigit(c)) { sawDigit = true; curVal = c - '0'; return; }
+                inVal = false;
+                return;
+            }
+
+            if (inVal) {
+                if (isDigit(c)) {
+                    sawDigit = true;
+                    curVal = curVal * 10 + (c - '0');
+                    return;
+                }
+                if (c == ',' && sawDigit) {
+                    if (neg) curVal = -curVal;
+                    inVal = false;
+                    inCnt = true;
+                    curCnt = 0;
+                    sawDigit = false;
+                    return;
+                }
+                inVal = false;
+                return;
+            }
+
+            if (isDigit(c)) {
+                sawDigit = true;
+                curCnt = curCnt * 10 + (c - '0');
+                return;
+            }
+            if (isWs(c) && sawDigit) {
+                emitRun(curVal, curCnt);
+                inCnt = false;
+            }
+        }
+
         void finish() {
-            if (inCnt && sawDigit && outPos < out.length) emitRun(curVal, curCnt);
+            if (inCnt && sawDigit && outPos < capacity) emitRun(curVal, curCnt);
             inVal = false;
             inCnt = false;
             sawDigit = false;
@@ -320,30 +931,57 @@ public final class ItwsJsonConsumer {
 
         private void emitRun(int v, int cnt) {
             int mapped = mapLevel(v);
-            int take = Math.min(cnt, out.length - outPos);
-            for (int k = 0; k < take; k++) out[outPos++] = mapped;
+            int take = Math.min(cnt, capacity - outPos);
+            if (take <= 0) return;
+            if (mapped != 0) nonZero += take;
+            if (out != null) {
+                Arrays.fill(out, outPos, outPos + take, (byte) mapped);
+                outPos += take;
+                return;
+            }
+            if (runLen > 0 && runs[runLen - 2] == mapped) {
+                runs[runLen - 1] += take;
+            } else {
+                if (runLen == runs.length) runs = Arrays.copyOf(runs, runLen * 2);
+                runs[runLen++] = mapped;
+                runs[runLen++] = take;
+            }
+            outPos += take;
         }
 
         // Keep 0..6 verbatim, map special/no-data to 0
         private int mapLevel(int v) {
-            if (v == bad || v == noCov || v == atten || v == ap) return 0;
-            if (v < 0 || v > 6) return 0;
-            return v;
+            return (v >= 0 && v < levels.length) ? levels[v] : 0;
         }
 
         private static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
         private static boolean isWs(char c) { return c == ' ' || c == '\n' || c == '\r' || c == '\t'; }
+        private static boolean isWs(byte c) { return c == ' ' || c == '\n' || c == '\r' || c == '\t'; }
     }
 
     // ---------------- JSON build (streamed) ----------------
 
-    private static byte[] buildJsonBytes(PrecipFrame f, int maxCellsOut) throws IOException {
+    static byte[] buildJsonBytes(PrecipFrame f, int maxCellsOut) throws IOException {
+        return buildJsonBytes(f, maxCellsOut, null, null, null);
+    }
+
+    // With a delta, the body carries "frame":"key"|"delta" and "seq"; a delta's cells are the changed tiles.
+    // With a pyramid update, "pyramid" lists every level's tile hashes and the cells of the new ones.
+    // With contours, "contours" carries the level polygons.
+    static byte[] buildJsonBytes(PrecipFrame f, int maxCellsOut, FrameDeltas.Delta delta,
+                                 TilePyramid.Update pyramid, PrecipContours.Result contours) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(1 << 20);
+        writeJson(baos, f, maxCellsOut, delta, pyramid, contours);
+        return baos.toByteArray();
+    }
+
+    static void writeJson(OutputStream out, PrecipFrame f, int maxCellsOut, FrameDeltas.Delta delta,
+                          TilePyramid.Update pyramid, PrecipContours.Result contours) throws IOException {
         final double trpLatDeg = f.trpLatMicroDeg / 1_000_000.0;
         final double trpLonDeg = f.trpLonMicroDeg / 1_000_000.0;
         final double rotDeg = f.rotationMilliDeg / 1000.0;
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(1 << 20);
-        PrintWriter w = new PrintWriter(new BufferedWriter(new OutputStreamWriter(baos, StandardCharsets.UTF_8)), false);
+        PrintWriter w = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), false);
 
         w.print('{');
 
@@ -380,26 +1018,170 @@ public final class ItwsJsonConsumer {
         jint(w, "maxPrecipLevel", f.maxPrecipLevel); w.print(',');
         jint(w, "filledCells", f.filledCells); w.print(',');
 
-        w.print("\"layout\":\"row-major\",");
-        w.print("\"cells\":[");
+        if (delta != null) {
+            jstr(w, "frame", delta.key ? "key" : "delta"); w.print(',');
+            w.print("\"seq\":"); w.print(delta.seq); w.print(',');
+        }
+
+        if (delta != null && !delta.key) {
+            w.print("\"baseSeq\":"); w.print(delta.baseSeq); w.print(',');
+            writeTiles(w, f, delta);
+        } else if (f.runs != null) {
+            writeRuns(w, f, maxCellsOut);
+        } else {
+            w.print("\"layout\":\"row-major\",");
+            w.print("\"cells\":[");
+
+            int total = f.grid.length;
+            int limit = (maxCellsOut > 0) ? Math.min(total, maxCellsOut) : total;
+
+            for (int i = 0; i < limit; i++) {
+                if (i > 0) w.print(',');
+                jdigits(w, f.grid[i]);
+            }
+            w.print(']');
+
+            if (limit < total) {
+                w.print(",\"cellsTruncated\":true");
+            }
+        }
+
+        if (pyramid != null) {
+            w.print(',');
+            writePyramid(w, pyramid);
+        }
+
+        if (contours != null) {
+            w.print(',');
+            writeContours(w, contours);
+        }
+
+        w.print('}');
+        w.flush();
+    }
+
+    // "tiles":[{"row":y0,"col":x0,"cells":[...]}] with each tile's cells row-major, clipped at the grid edge
+    private static void writeTiles(PrintWriter w, PrecipFrame f, FrameDeltas.Delta d) {
+        jint(w, "tileSize", d.tileSize); w.print(',');
+        w.print("\"layout\":\"tiles\",");
+        w.print("\"tiles\":[");
+        for (int t = 0; t < d.tiles.length; t++) {
+            int y0 = d.tiles[t] / f.cols;
+            int x0 = d.tiles[t] % f.cols;
+            int y1 = Math.min(f.rows, y0 + d.tileSize);
+            int x1 = Math.min(f.cols, x0 + d.tileSize);
+
+            if (t > 0) w.print(',');
+            w.print("{\"row\":"); w.print(y0); w.print(",\"col\":"); w.print(x0); w.print(",\"cells\":[");
+            boolean first = true;
+            for (int y = y0; y < y1; y++) {
+                for (int i = y * f.cols + x0, end = y * f.cols + x1; i < end; i++) {
+                    if (!first) w.print(',');
+                    jdigits(w, f.grid[i]);
+                    first = false;
+                }
+            }
+            w.print("]}");
+        }
+        w.print(']');
+    }
+
+    // "pyramid":{"tileSize":N,"levels":[{"z":0,"rows":R,"cols":C,"tiles":["<hash>",...]},...],
+    //            "tileData":{"<hash>":[cells...],...}}; tiles row-major, tileData only for new hashes
+    private static void writePyramid(PrintWriter w, TilePyramid.Update p) {
+        w.print("\"pyramid\":{");
+        jint(w, "tileSize", p.tileSize); w.print(',');
+        w.print("\"levels\":[");
+        for (int i = 0; i < p.levels.size(); i++) {
+            TilePyramid.Level l = p.levels.get(i);
+            if (i > 0) w.print(',');
+            w.print('{');
+            jint(w, "z", l.z); w.print(',');
+            jint(w, "rows", l.rows); w.print(',');
+            jint(w, "cols", l.cols); w.print(',');
+            w.print("\"tiles\":[");
+            for (int t = 0; t < l.tiles.length; t++) {
+                if (t > 0) w.print(',');
+                w.print('"'); w.print(l.tiles[t]); w.print('"');
+            }
+            w.print("]}");
+        }
+        w.print("],\"tileData\":{");
+        boolean first = true;
+        for (Map.Entry<String, byte[]> e : p.newTiles.entrySet()) {
+            if (!first) w.print(',');
+            first = false;
+            w.print('"'); w.print(e.getKey()); w.print("\":[");
+            byte[] cells = e.getValue();
+            for (int i = 0; i < cells.length; i++) {
+                if (i > 0) w.print(',');
+                jdigits(w, cells[i]);
+            }
+            w.print(']');
+        }
+        w.print("}}");
+    }
+
+    // "contours":{"toleranceM":T,"levels":[{"level":L,"rings":[[lat,lon,lat,lon,...],...]},...]};
+    // levels ascending, each covering the cells at or above it, rings implicitly closed
+    private static void writeContours(PrintWriter w, PrecipContours.Result c) {
+        w.print("\"contours\":{");
+        jint(w, "toleranceM", c.toleranceM); w.print(',');
+        w.print("\"levels\":[");
+        for (int i = 0; i < c.levels.size(); i++) {
+            PrecipContours.Level l = c.levels.get(i);
+            if (i > 0) w.print(',');
+            w.print('{');
+            jint(w, "level", l.level); w.print(',');
+            w.print("\"rings\":[");
+            for (int r = 0; r < l.rings.size(); r++) {
+                double[] ring = l.rings.get(r);
+                if (r > 0) w.print(',');
+                w.print('[');
+                for (int k = 0; k < ring.length; k++) {
+                    if (k > 0) w.print(',');
+                    writeDeg(w, ring[k]);
+                }
+                w.print(']');
+            }
+            w.print("]}");
+        }
+        w.print("]}");
+    }
+
+    // Degrees to 5 decimals (about a metre) without going through Double.toString
+    private static void writeDeg(PrintWriter w, double deg) {
+        long v = Math.round(deg * 100_000);
+        if (v < 0) {
+            w.print('-');
+            v = -v;
+        }
+        w.print(v / 100_000);
+        w.print('.');
+        String frac = Long.toString(v % 100_000);
+        for (int i = frac.length(); i < 5; i++) w.print('0');
+        w.print(frac);
+    }
 
-        int total = f.grid.length;
+    // "runs":[[level,count],...] in row-major order; cells past the last run are 0
+    private static void writeRuns(PrintWriter w, PrecipFrame f, int maxCellsOut) {
+        int total = safeMul(f.rows, f.cols);
         int limit = (maxCellsOut > 0) ? Math.min(total, maxCellsOut) : total;
 
-        for (int i = 0; i < limit; i++) {
+        w.print("\"layout\":\"rle\",");
+        w.print("\"runs\":[");
+        int cells = 0;
+        for (int i = 0; i < f.runs.length && cells < limit; i += 2) {
+            int count = Math.min(f.runs[i + 1], limit - cells);
             if (i > 0) w.print(',');
-            w.print(f.grid[i]);
+            w.print('['); jdigits(w, f.runs[i]); w.print(','); jdigits(w, count); w.print(']');
+            cells += count;
         }
         w.print(']');
 
         if (limit < total) {
             w.print(",\"cellsTruncated\":true");
         }
-
-        w.print('}');
-        w.flush();
-
-        return baos.toByteArray();
     }
 
     private static String isoNow() {
@@ -417,6 +1199,24 @@ public final class ItwsJsonConsumer {
         w.print('\"'); w.print(esc(k)); w.print('\"'); w.print(':');
         w.print(Double.toString(v));
     }
+    // Cell values as digits straight into the writer: print(int) builds a String per cell
+    private static void jdigits(PrintWriter w, int v) {
+        if (v >= 0 && v < 10) {
+            w.write('0' + v);
+            return;
+        }
+        if (v == Integer.MIN_VALUE) {
+            w.print(v);
+            return;
+        }
+        if (v < 0) {
+            w.write('-');
+            v = -v;
+        }
+        int div = 1;
+        while (v / div >= 10) div *= 10;
+        for (; div > 0; div /= 10) w.write('0' + (v / div) % 10);
+    }
     private static String nz(String s) { return (s == null) ? "" : s; }
 
     private static String esc(String s) {
@@ -436,61 +1236,165 @@ public final class ItwsJsonConsumer {
         return sb.toString();
     }
 
+    // ---------------- Wire format ----------------
+
+    // ITWS_WIRE_FORMAT=auto sends an OPTIONS to the radar endpoint and uses the binary grid only if the
+    // server lists it in Accept-Post; older ingest servers keep getting JSON. The NDJSON stream is
+    // line-delimited text, so it always carries JSON.
+    private static boolean useBinaryFrames(Config cfg, HttpClient http) {
+        if (cfg.wireFormat.equals("json")) return false;
+        if (cfg.streamUrl != null) {
+            System.out.println("ITWS_WIRE_FORMAT=" + cfg.wireFormat + " ignored: WX_STREAM_URL carries NDJSON");
+            return false;
+        }
+        if (cfg.wireFormat.equals("binary")) return true;
+
+        try {
+            HttpRequest req = HttpRequest.newBuilder(cfg.postUrl)
+                    .timeout(Duration.ofMillis(cfg.httpRequestTimeoutMs))
+                    .method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+                    .build();
+            HttpResponse<Void> resp = http.send(req, HttpResponse.BodyHandlers.discarding());
+            String accept = resp.headers().firstValue("Accept-Post").orElse("");
+            if (accept.contains(PrecipGridCodec.CONTENT_TYPE)) return true;
+            System.out.println("WX endpoint does not accept " + PrecipGridCodec.CONTENT_TYPE + "; posting JSON");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("WX wire format probe failed (" + e.getMessage() + "); posting JSON");
+        }
+        return false;
+    }
+
+    // Deltas and pyramid tiles refer to earlier frames, so they need the radar POST route (which
+    // answers 409 when it lacks them) delivering in order: pipelined POSTs can overtake each other.
+    // Both also need the JSON body of the expanded grid. Returns what rules them out, or null.
+    private static String incrementalConflict(Config cfg, boolean binary) {
+        return cfg.streamUrl != null ? "WX_STREAM_URL"
+                : cfg.maxInFlight > 1 ? "HTTP_MAX_IN_FLIGHT > 1"
+                : binary ? "the binary wire format"
+                : cfg.rleOutput ? "ITWS_CELL_LAYOUT=rle" : null;
+    }
+
+    private static boolean useDeltas(Config cfg, boolean binary) {
+        if (!cfg.deltas) return false;
+        String conflict = incrementalConflict(cfg, binary);
+        if (conflict == null && cfg.maxCellsOut > 0) conflict = "ITWS_MAX_CELLS_OUT";
+        if (conflict != null) {
+            System.out.println("ITWS_DELTA ignored with " + conflict + "; sending whole frames");
+            return false;
+        }
+        System.out.println("Delta frames: " + cfg.deltaTileSize + "x" + cfg.deltaTileSize
+                + " tiles, a keyframe every " + cfg.keyframeEvery + " frames");
+        return true;
+    }
+
+    private static boolean usePyramid(Config cfg, boolean binary) {
+        if (!cfg.pyramid) return false;
+        String conflict = incrementalConflict(cfg, binary);
+        if (conflict != null) {
+            System.out.println("ITWS_PYRAMID ignored with " + conflict);
+            return false;
+        }
+        System.out.println("Tile pyramid: " + cfg.pyramidTileSize + "x" + cfg.pyramidTileSize + " tiles");
+        return true;
+    }
+
+    // Contours are traced from the expanded grid and travel in the JSON body
+    private static boolean useContours(Config cfg, boolean binary) {
+        if (!cfg.contours) return false;
+        String conflict = binary ? "the binary wire format" : cfg.rleOutput ? "ITWS_CELL_LAYOUT=rle" : null;
+        if (conflict != null) {
+            System.out.println("ITWS_CONTOURS ignored with " + conflict);
+            return false;
+        }
+        System.out.println("Level contours: simplified to " + cfg.contourToleranceM + " m");
+        return true;
+    }
+
     // ---------------- POST with retry ----------------
 
-    private static void postWithRetry(
+    private enum PostResult { POSTED, SPOOLED, CONFLICT }
+
+    // With a spool, a failed POST is written to disk instead of retried (and frames queue behind
+    // undrained spooled ones). The Content-Type follows the body, so spooled frames replay correctly
+    // after ITWS_WIRE_FORMAT changes. With onConflict, a 409 (delta against a frame the endpoint does
+    // not hold) is not retried: onConflict runs and CONFLICT is returned, for the caller to send a keyframe.
+    private static PostResult postWithRetry(
             HttpClient http,
             URI url,
             String token,
-            byte[] json,
+            byte[] body,
+            int length,
             int requestTimeoutMs,
-            int retrySleepMs
+            int retrySleepMs,
+            Spool spool,
+            Runnable onConflict
     ) throws InterruptedException {
+        boolean tryPost = spool == null || !spool.isActive();
         while (true) {
-            try {
-                HttpRequest.Builder b = HttpRequest.newBuilder(url)
-                        .timeout(Duration.ofMillis(requestTimeoutMs))
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofByteArray(json));
-
-                // Optional auth header
-                if (token != null && !token.isBlank()) {
-                    b.header("X-WX-Token", token);
-                }
+            if (tryPost) {
+                try {
+                    HttpRequest.Builder b = HttpRequest.newBuilder(url)
+                            .timeout(Duration.ofMillis(requestTimeoutMs))
+                            .header("Content-Type", PrecipGridCodec.contentTypeOf(body))
+                            .POST(new ArrayBodyPublisher(body, 0, length));
+                    if (BodyGzip.isGzip(body, 0, length)) {
+                        b.header("Content-Encoding", BodyGzip.ENCODING);
+                    }
 
-                HttpRequest req = b.build();
-                HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
-                int code = resp.statusCode();
-                if (code >= 200 && code < 300) return;
+                    // Optional auth header
+                    if (token != null && !token.isBlank()) {
+                        b.header("X-WX-Token", token);
+                    }
 
-                System.err.println("WX POST failed: HTTP " + code);
-                System.err.println("Response: " + resp.body());
-            } catch (Exception e) {
-                System.err.println("WX POST error: " + e.getMessage());
+                    HttpRequest req = b.build();
+                    HttpResponse<String> resp = http.send(req, HttpResponse.BodyHandlers.ofString());
+                    int code = resp.statusCode();
+                    if (code >= 200 && code < 300) return PostResult.POSTED;
+                    if (code == 409 && onConflict != null) {
+                        onConflict.run();
+                        return PostResult.CONFLICT;
+                    }
+
+                    System.err.println("WX POST failed: HTTP " + code);
+                    System.err.println("Response: " + resp.body());
+                } catch (Exception e) {
+                    System.err.println("WX POST error: " + e.getMessage());
+                }
             }
+
+            if (spool != null) {
+                try {
+                    spool.append(body, 0, length);
+                    return PostResult.SPOOLED;
+                } catch (IOException e) {
+                    // Disk full or similar: fall back to retrying the endpoint
+                    System.err.println("WX spool error: " + e.getMessage());
+                }
+            }
+            tryPost = true;
+            RETRIES.inc();
             Thread.sleep(Math.max(50, retrySleepMs));
         }
     }
 
-    // ---------------- JMS payload extraction ----------------
-
-    private static InputStream extractXmlStream(Message msg, int maxBytes) throws JMSException {
-        if (msg instanceof TextMessage tm) {
-            String s = tm.getText();
-            if (s == null || s.isBlank()) return null;
-            if (s.length() > maxBytes) s = s.substring(0, maxBytes);
-            return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
-        }
-        if (msg instanceof BytesMessage bm) {
-            long len = bm.getBodyLength();
-            int take = (int) Math.min(len, (long) maxBytes);
-            byte[] out = new byte[take];
-            bm.readBytes(out);
-            return new ByteArrayInputStream(out);
-        }
-        return null;
+    // The radar endpoint takes one frame per request, so replay posts them one by one, oldest first.
+    // A spooled delta the endpoint no longer has a base for (409) cannot be re-encoded: the next live
+    // frame is a keyframe instead.
+    private static Spool openSpool(Config cfg, HttpClient http, Runnable onConflict) throws IOException {
+        if (cfg.spoolDir == null) return null;
+        return new Spool(cfg.spoolDir, cfg.spoolSegmentBytes, "WX", frames -> {
+            for (byte[] body : frames) {
+                postWithRetry(http, cfg.postUrl, cfg.ingestToken, body, body.length,
+                        cfg.httpRequestTimeoutMs, cfg.retrySleepMs, null, onConflict);
+            }
+            System.out.println("Replayed " + frames.size() + " spooled frames");
+        });
     }
 
+    // ---------------- JMS payload extraction ----------------
+
     private static void trySet(XMLInputFactory f, String prop, Object value) {
         try { f.setProperty(prop, value); } catch (Exception ignored) {}
     }
@@ -519,57 +1423,9 @@ public final class ItwsJsonConsumer {
         try { return Integer.parseInt(String.valueOf(o).trim()); } catch (Exception e) { return def; }
     }
 
-    private static String normalizeJmsHostList(String raw) {
-        if (raw == null) {
-            return "";
-        }
-        String[] parts = raw.split(",");
-        StringBuilder out = new StringBuilder(raw.length());
-        for (String part : parts) {
-            String token = part.trim();
-            if (token.isEmpty()) {
-                continue;
-            }
-
-            String normalized;
-            int idx = token.indexOf("://");
-            if (idx > 0 && idx + 3 < token.length()) {
-                String scheme = token.substring(0, idx).toLowerCase(Locale.ROOT);
-                String hostPort = token.substring(idx + 3);
-                while (hostPort.endsWith("/")) {
-                    hostPort = hostPort.substring(0, hostPort.length() - 1);
-                }
-
-                if (scheme.equals("tcps")) {
-                    normalized = "smfs://" + hostPort;
-                } else if (scheme.equals("tcp")) {
-                    normalized = "smf://" + hostPort;
-                } else if (scheme.equals("smfs") || scheme.equals("smf")) {
-                    normalized = scheme + "://" + hostPort;
-                } else {
-                    normalized = token;
-                }
-            } else {
-                while (token.endsWith("/")) {
-                    token = token.substring(0, token.length() - 1);
-                }
-                normalized = token;
-            }
-
-            if (normalized.isEmpty()) {
-                continue;
-            }
-            if (!out.isEmpty()) {
-                out.append(',');
-            }
-            out.append(normalized);
-        }
-        return out.isEmpty() ? raw.trim() : out.toString();
-    }
-
     // ---------------- Data model ----------------
 
-    private static final class PrecipFrame {
+    static final class PrecipFrame {
         String receivedAt = "";
         int productId = -1;
         String productName = "";
@@ -596,8 +1452,43 @@ public final class ItwsJsonConsumer {
         String compression = "";
         int maxPrecipLevel = -1;
 
-        int[] grid = null;
+        byte[] grid = null;              // one level (0..6) per cell, row-major; pooled, see GRIDS
+        int[] runs = null;               // [level, count, ...] instead of grid when ITWS_CELL_LAYOUT=rle
         int filledCells = -1;
+        int nonZeroCells = 0;
+
+        boolean hasCells() { return grid != null || runs != null; }
+    }
+
+    // ---------------- Grid buffers ----------------
+
+    // A few free grids per size (rows*cols). Grids are returned once the frame's body has been built,
+    // so in steady state every frame reuses the previous one's buffer.
+    static final class GridPool {
+        private final int maxPerSize;
+        private final Map<Integer, ArrayDeque<byte[]>> free = new HashMap<>();
+
+        GridPool(int maxPerSize) { this.maxPerSize = maxPerSize; }
+
+        // Contents are whatever the last frame left; parseAndDecode clears the cells it does not decode
+        synchronized byte[] acquire(int cells) {
+            ArrayDeque<byte[]> q = free.get(cells);
+            byte[] g = (q == null) ? null : q.pollFirst();
+            return (g != null) ? g : new byte[cells];
+        }
+
+        synchronized void release(PrecipFrame f) {
+            byte[] g = f.grid;
+            if (g == null) return;
+            f.grid = null;
+            ArrayDeque<byte[]> q = free.computeIfAbsent(g.length, k -> new ArrayDeque<>(maxPerSize));
+            if (q.size() < maxPerSize) q.addFirst(g);
+        }
+    }
+
+    /** Returns the frame's grid to the pool; the frame must not be encoded afterwards. */
+    static void releaseGrid(PrecipFrame f) {
+        GRIDS.release(f);
     }
 
     // ---------------- Config ----------------
@@ -607,10 +1498,14 @@ public final class ItwsJsonConsumer {
 
         final int receiveTimeoutMs, heartbeatMs;
         final int maxXmlBytes;
+        final ItwsProducts products;     // product IDs to ingest and their decoder/encoder
+        final boolean useSelector;       // filter products on the broker with a JMS selector
 
         final URI postUrl;               // defaults to localhost:8080/api/wx/radar
+        final URI streamUrl;             // optional: stream NDJSON here instead of POSTing
         final String ingestToken;        // optional (sent as X-WX-Token)
         final boolean printJson;
+        final String wireFormat;         // json (default), binary, or auto (binary if the endpoint offers it)
 
         final int httpConnectTimeoutMs;
         final int httpRequestTimeoutMs;
@@ -618,13 +1513,39 @@ public final class ItwsJsonConsumer {
 
         final boolean ackOnException;    // default false
         final int maxCellsOut;           // 0 = all
+        final String contentEncoding;    // identity (default) or gzip, for POST bodies
+        final int compressMinBytes;      // smaller bodies are posted uncompressed
+        final boolean rleOutput;         // emit [level,count] runs instead of the expanded grid
+        final boolean deltas;            // publish changed tiles against the previous frame of the site
+        final int deltaTileSize;
+        final int keyframeEvery;         // frames per keyframe (1 = every frame is a keyframe)
+        final boolean pyramid;           // send max-pooled resolution levels as hashed tiles
+        final int pyramidTileSize;
+        final boolean contours;          // send per-level polygons traced from the grid
+        final int contourToleranceM;     // Douglas-Peucker tolerance (0 = drop only collinear points)
+        final int maxInFlight;           // 1 = blocking POST-then-ack
+        final boolean conflate;          // blocking POST on its own thread, only the newest frame per product/site waits
+
+        final Path spoolDir;             // optional: spool rejected frames here instead of retrying
+        final int spoolSegmentBytes;
+
+        final int metricsPort;           // 0 = no /metrics endpoint
+
+        final Path recordFile;           // optional: capture every received message here
+        final Path replayFile;           // optional: read messages from this capture instead of JMS
+        final double replaySpeed;        // 1 = recorded pace, N = N times faster, 0 = as fast as possible
 
         private Config(
                 String jmsUrl, String vpn, String username, String password, String queueName,
                 int receiveTimeoutMs, int heartbeatMs, int maxXmlBytes,
-                URI postUrl, String ingestToken, boolean printJson,
+                ItwsProducts products, boolean useSelector,
+                URI postUrl, URI streamUrl, String ingestToken, boolean printJson, String wireFormat,
                 int httpConnectTimeoutMs, int httpRequestTimeoutMs, int retrySleepMs,
-                boolean ackOnException, int maxCellsOut
+                boolean ackOnException, int maxCellsOut, String contentEncoding, int compressMinBytes, boolean rleOutput,
+                boolean deltas, int deltaTileSize, int keyframeEvery,
+                boolean pyramid, int pyramidTileSize, boolean contours, int contourToleranceM, int maxInFlight,
+                boolean conflate, Path spoolDir, int spoolSegmentBytes, int metricsPort,
+                Path recordFile, Path replayFile, double replaySpeed
         ) {
             this.jmsUrl = jmsUrl;
             this.vpn = vpn;
@@ -635,10 +1556,14 @@ public final class ItwsJsonConsumer {
             this.receiveTimeoutMs = receiveTimeoutMs;
             this.heartbeatMs = heartbeatMs;
             this.maxXmlBytes = maxXmlBytes;
+            this.products = products;
+            this.useSelector = useSelector;
 
             this.postUrl = postUrl;
+            this.streamUrl = streamUrl;
             this.ingestToken = ingestToken;
             this.printJson = printJson;
+            this.wireFormat = wireFormat;
 
             this.httpConnectTimeoutMs = httpConnectTimeoutMs;
             this.httpRequestTimeoutMs = httpRequestTimeoutMs;
@@ -646,39 +1571,141 @@ public final class ItwsJsonConsumer {
 
             this.ackOnException = ackOnException;
             this.maxCellsOut = maxCellsOut;
+            this.contentEncoding = contentEncoding;
+            this.compressMinBytes = compressMinBytes;
+            this.rleOutput = rleOutput;
+            this.deltas = deltas;
+            this.deltaTileSize = deltaTileSize;
+            this.keyframeEvery = keyframeEvery;
+            this.pyramid = pyramid;
+            this.pyramidTileSize = pyramidTileSize;
+            this.contours = contours;
+            this.contourToleranceM = contourToleranceM;
+            this.maxInFlight = maxInFlight;
+            this.conflate = conflate;
+
+            this.spoolDir = spoolDir;
+            this.spoolSegmentBytes = spoolSegmentBytes;
+
+            this.metricsPort = metricsPort;
+
+            this.recordFile = recordFile;
+            this.replayFile = replayFile;
+            this.replaySpeed = replaySpeed;
         }
 
         static Config fromEnv() {
-            String url = must("SCDS_JMS_URL_ITWS");
-            String vpn = must("SCDS_VPN_ITWS");
-            String user = must("SCDS_USERNAME");
-            String pass = must("SCDS_PASSWORD");
-            String q = must("SCDS_QUEUE_ITWS");
+            return fromEnv(System::getenv);
+        }
 
-            int rto = parseIntOrDefault(System.getenv("ITWS_RECEIVE_TIMEOUT_MS"), 1000);
-            int hb  = parseIntOrDefault(System.getenv("ITWS_HEARTBEAT_MS"), 5000);
-            int max = parseIntOrDefault(System.getenv("ITWS_MAX_XML_BYTES"), 32 * 1024 * 1024);
+        // env: the consumer's settings by environment variable name (a pipeline's settings in IngestHost)
+        static Config fromEnv(Function<String, String> env) {
+            // Optional offline source: replay a capture instead of connecting to SWIM (no JMS settings needed)
+            Path replay = optionalPath(env.apply("ITWS_REPLAY_FILE"));
+            double speed = ReplaySource.parseSpeed(env.apply("ITWS_REPLAY_SPEED"), 1);
+            // Optional capture of everything received, for later replay
+            Path record = optionalPath(env.apply("ITWS_RECORD_FILE"));
+
+            String url = jms(env, "SCDS_JMS_URL_ITWS", replay);
+            String vpn = jms(env, "SCDS_VPN_ITWS", replay);
+            String user = jms(env, "SCDS_USERNAME", replay);
+            String pass = jms(env, "SCDS_PASSWORD", replay);
+            String q = jms(env, "SCDS_QUEUE_ITWS", replay);
+
+            int rto = parseIntOrDefault(env.apply("ITWS_RECEIVE_TIMEOUT_MS"), 1000);
+            int hb  = parseIntOrDefault(env.apply("ITWS_HEARTBEAT_MS"), 5000);
+            int max = parseIntOrDefault(env.apply("ITWS_MAX_XML_BYTES"), 32 * 1024 * 1024);
+
+            // Products to ingest (default the TRACON precip product 9850), filtered on the broker
+            ItwsProducts products = ItwsProducts.parse(env.apply("ITWS_PRODUCTS"));
+            boolean selector = parseBoolOrDefault(env.apply("ITWS_SELECTOR"), true);
 
             // Posting target (default exactly what you asked)
-            String postRaw = System.getenv("WX_POST_URL");
+            String postRaw = env.apply("WX_POST_URL");
             URI postUrl = (postRaw == null || postRaw.isBlank())
                     ? URI.create("http://localhost:8080/api/wx/radar")
                     : URI.create(postRaw.trim());
 
+            // Optional streaming (e.g. http://localhost:8081/api/wx/radar/stream; Node serves streams on
+            // INGEST_STREAM_PORT, not PORT); takes precedence over POSTs
+            String stream = env.apply("WX_STREAM_URL");
+            URI streamUrl = (stream == null || stream.isBlank()) ? null : URI.create(stream.trim());
+
             // Optional token header
-            String token = System.getenv("ITWS_INGEST_TOKEN"); // optional
+            String token = env.apply("ITWS_INGEST_TOKEN"); // optional
 
-            boolean printJson = parseBoolOrDefault(System.getenv("ITWS_PRINT_JSON"), false);
+            boolean printJson = parseBoolOrDefault(env.apply("ITWS_PRINT_JSON"), false);
 
-            int cto = parseIntOrDefault(System.getenv("HTTP_CONNECT_TIMEOUT_MS"), 1500);
-            int hto = parseIntOrDefault(System.getenv("HTTP_REQUEST_TIMEOUT_MS"), 2500);
-            int rs  = parseIntOrDefault(System.getenv("HTTP_RETRY_SLEEP_MS"), 200);
+            // Frame body: json, binary (application/x-precip-grid), or auto (ask the endpoint)
+            String wire = env.apply("ITWS_WIRE_FORMAT");
+            String wireFormat = (wire == null || wire.isBlank()) ? "json" : wire.trim().toLowerCase(Locale.ROOT);
+            if (!wireFormat.equals("json") && !wireFormat.equals("binary") && !wireFormat.equals("auto")) {
+                throw new IllegalArgumentException("ITWS_WIRE_FORMAT must be json, binary or auto: " + wire);
+            }
+
+            int cto = parseIntOrDefault(env.apply("HTTP_CONNECT_TIMEOUT_MS"), 1500);
+            int hto = parseIntOrDefault(env.apply("HTTP_REQUEST_TIMEOUT_MS"), 2500);
+            int rs  = parseIntOrDefault(env.apply("HTTP_RETRY_SLEEP_MS"), 200);
+
+            // Optional compressed POST bodies (the Node server accepts gzip)
+            String encoding = env.apply("HTTP_CONTENT_ENCODING");
+            int compressMin = Math.max(0, parseIntOrDefault(env.apply("HTTP_COMPRESS_MIN_BYTES"), 8192));
 
-            boolean ackOnEx = parseBoolOrDefault(System.getenv("ITWS_ACK_ON_EXCEPTION"), false);
-            int maxCellsOut = parseIntOrDefault(System.getenv("ITWS_MAX_CELLS_OUT"), 0);
+            boolean ackOnEx = parseBoolOrDefault(env.apply("ITWS_ACK_ON_EXCEPTION"), false);
+            int maxCellsOut = parseIntOrDefault(env.apply("ITWS_MAX_CELLS_OUT"), 0);
+
+            // Cell layout: grid (every cell, row-major) or rle (the feed's runs, never expanded)
+            String layout = env.apply("ITWS_CELL_LAYOUT");
+            boolean rleOutput = layout != null && !layout.isBlank() && !layout.trim().equalsIgnoreCase("grid");
+            if (rleOutput && !layout.trim().equalsIgnoreCase("rle")) {
+                throw new IllegalArgumentException("ITWS_CELL_LAYOUT must be grid or rle: " + layout);
+            }
+
+            // Optional delta frames (blocking POST, JSON grid only)
+            boolean deltas = parseBoolOrDefault(env.apply("ITWS_DELTA"), false);
+            int deltaTile = Math.max(1, parseIntOrDefault(env.apply("ITWS_DELTA_TILE"), 16));
+            int keyframeEvery = Math.max(1, parseIntOrDefault(env.apply("ITWS_KEYFRAME_EVERY"), 20));
+
+            // Optional multi-resolution tile pyramid (blocking POST, JSON grid only)
+            boolean pyramid = parseBoolOrDefault(env.apply("ITWS_PYRAMID"), false);
+            int pyramidTile = Math.max(8, parseIntOrDefault(env.apply("ITWS_PYRAMID_TILE"), 64));
+
+            // Optional level contours (JSON grid only)
+            boolean contours = parseBoolOrDefault(env.apply("ITWS_CONTOURS"), false);
+            int contourTol = Math.max(0, parseIntOrDefault(env.apply("ITWS_CONTOUR_TOLERANCE_M"), 500));
+
+            // Optional pipelining: number of POSTs allowed in flight at once.
+            // Streaming always pipelines: the window bounds frames awaiting the server's ack.
+            // Either way each product/site's frames reach Node in order: concurrent POSTs never share one.
+            int inFlight = streamUrl == null
+                    ? Math.max(1, parseIntOrDefault(env.apply("HTTP_MAX_IN_FLIGHT"), 1))
+                    : Math.max(2, parseIntOrDefault(env.apply("HTTP_MAX_IN_FLIGHT"), 16));
+
+            // Optional latest-wins delivery: while a POST is slow or retrying, newer frames replace the
+            // frame of the same product/site waiting behind it (blocking POST only)
+            boolean conflate = parseBoolOrDefault(env.apply("ITWS_CONFLATE"), false);
+
+            // Optional disk spool for when the endpoint is down
+            String spool = env.apply("ITWS_SPOOL_DIR");
+            Path spoolDir = (spool == null || spool.isBlank()) ? null : Path.of(spool.trim());
+            int segment = parseIntOrDefault(env.apply("SPOOL_SEGMENT_BYTES"), 64 * 1024 * 1024);
+
+            // Optional Prometheus-style metrics endpoint
+            int metricsPort = parseIntOrDefault(env.apply("ITWS_METRICS_PORT"), 0);
+
+            return new Config(url, vpn, user, pass, q, rto, hb, max, products, selector,
+                    postUrl, streamUrl, token, printJson, wireFormat, cto, hto, rs, ackOnEx, maxCellsOut, encoding, compressMin, rleOutput,
+                    deltas, deltaTile, keyframeEvery, pyramid, pyramidTile, contours, contourTol, inFlight,
+                    conflate, spoolDir, segment, metricsPort, record, replay, speed);
+        }
+
+        private static Path optionalPath(String s) {
+            return (s == null || s.isBlank()) ? null : Path.of(s.trim());
+        }
 
-            return new Config(url, vpn, user, pass, q, rto, hb, max,
-                    postUrl, token, printJson, cto, hto, rs, ackOnEx, maxCellsOut);
+        // JMS settings are required unless messages come from a replay file
+        private static String jms(Function<String, String> env, String k, Path replay) {
+            return replay == null ? must(env, k) : env.apply(k);
         }
 
         private static int parseIntOrDefault(String s, int def) {
@@ -692,8 +1719,8 @@ public final class ItwsJsonConsumer {
             return v.equals("1") || v.equals("true") || v.equals("yes") || v.equals("y");
         }
 
-        private static String must(String k) {
-            String v = System.getenv(k);
+        private static String must(Function<String, String> env, String k) {
+            String v = env.apply(k);
             if (v == null || v.isBlank()) throw new IllegalArgumentException("Missing env var: " + k);
             return v;
         }
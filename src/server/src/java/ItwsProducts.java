@@ -0,0 +1,113 @@
+package dev.vstars;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * The ITWS products a consumer ingests (ITWS_PRODUCTS) and, per product, how a message becomes a
+ * frame and a frame becomes the POST body.
+ *
+ * ITWS_PRODUCTS is a comma-separated list of {@code productId[=kind]}, e.g. {@code 9850,9849=precip};
+ * the kind names a decoder/encoder pair in {@link #KINDS} and defaults to {@code precip}, the
+ * prcp_grid_* schema of the TRACON precip product 9850. The same list becomes the queue consumer's
+ * JMS message selector, so the broker keeps every other product off the wire.
+ */
+final class ItwsProducts {
+
+    interface Decoder {
+        /** The frame, or null if the message carries no usable grid. */
+        ItwsJsonConsumer.PrecipFrame decode(JmsPayload payload, XMLInputFactory xif, boolean rle) throws XMLStreamException;
+    }
+
+    interface Encoder {
+        /** Writes the body for one frame; delta, tiles and contours are null unless enabled (JSON only). */
+        void encode(ItwsJsonConsumer.PrecipFrame f, boolean binary, int maxCellsOut, FrameDeltas.Delta delta,
+                    TilePyramid.Update tiles, PrecipContours.Result contours, OutputStream out) throws IOException;
+    }
+
+    static final class Kind {
+        final String name;
+        final Decoder decoder;
+        final Encoder encoder;
+
+        private Kind(String name, Decoder decoder, Encoder encoder) {
+            this.name = name;
+            this.decoder = decoder;
+            this.encoder = encoder;
+        }
+    }
+
+    static final Map<String, Kind> KINDS = Map.of(
+            "precip", new Kind("precip", ItwsJsonConsumer::parseAndDecode,
+                    (f, binary, maxCellsOut, delta, tiles, contours, out) -> {
+                        if (binary) out.write(PrecipGridCodec.encode(f, maxCellsOut));
+                        else ItwsJsonConsumer.writeJson(out, f, maxCellsOut, delta, tiles, contours);
+                    }));
+
+    static final String DEFAULT = "9850";
+
+    private final Map<Integer, Kind> byId;
+
+    private ItwsProducts(Map<Integer, Kind> byId) {
+        this.byId = byId;
+    }
+
+    /** Parses an ITWS_PRODUCTS value; throws IllegalArgumentException on an unknown kind or a bad id. */
+    static ItwsProducts parse(String spec) {
+        Map<Integer, Kind> byId = new LinkedHashMap<>();
+        for (String entry : (spec == null || spec.isBlank() ? DEFAULT : spec).split(",")) {
+            String e = entry.trim();
+            if (e.isEmpty()) continue;
+
+            int eq = e.indexOf('=');
+            String id = (eq < 0 ? e : e.substring(0, eq)).trim();
+            String kindName = (eq < 0 ? "precip" : e.substring(eq + 1)).trim();
+            Kind kind = KINDS.get(kindName);
+            if (kind == null) {
+                throw new IllegalArgumentException("ITWS_PRODUCTS: unknown kind '" + kindName + "' (known: " + KINDS.keySet() + ")");
+            }
+            try {
+                byId.put(Integer.parseInt(id), kind);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("ITWS_PRODUCTS: bad product id '" + id + "'");
+            }
+        }
+        if (byId.isEmpty()) throw new IllegalArgumentException("ITWS_PRODUCTS: no products");
+        return new ItwsProducts(byId);
+    }
+
+    /** The kind of an ingested product, or null if the product is not ingested. */
+    Kind get(int productId) {
+        return byId.get(productId);
+    }
+
+    /** Kind used for messages that carry no productID property (the first product listed). */
+    Kind fallback() {
+        return byId.values().iterator().next();
+    }
+
+    /**
+     * JMS selector matching the ingested products. productID may arrive as a number or a string (a
+     * comparison across types is simply false), and a message without it still comes through, as
+     * before: its product is only known once decoded.
+     */
+    String selector() {
+        StringJoiner j = new StringJoiner(" OR ", "productID IS NULL OR ", "");
+        for (int id : byId.keySet()) {
+            j.add("productID = " + id).add("productID = '" + id + "'");
+        }
+        return j.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner j = new StringJoiner(",");
+        byId.forEach((id, kind) -> j.add(id + "=" + kind.name));
+        return j.toString();
+    }
+}
@@ -0,0 +1,134 @@
+package dev.vstars;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+/**
+ * A JMS message body, loaded without a per-message copy. BytesMessage bodies are read straight into
+ * a buffer reused from message to message (it only grows, up to the size limit); a TextMessage
+ * keeps its String, which StAX reads as characters ({@link #xmlReader}) or which is UTF-8 encoded
+ * into the same buffer for byte-level scanners ({@link #loadBytes}).
+ *
+ * Bodies over the limit are dropped whole and counted: a truncated document is never parsed.
+ * One instance per receiving thread.
+ */
+final class JmsPayload {
+
+    private final Metrics.Counter oversized;
+
+    byte[] buf = new byte[64 * 1024];
+    int len;
+    private String text;    // TextMessage body until it is encoded, else null
+
+    JmsPayload(Metrics.Counter oversized) {
+        this.oversized = oversized;
+    }
+
+    /** Returns false if there is nothing to parse: unsupported type, empty, or oversized (dropped). */
+    boolean load(Message msg, int maxBytes) throws JMSException {
+        len = 0;
+        text = null;
+        if (msg instanceof BytesMessage bm) {
+            long n = bm.getBodyLength();
+            if (n <= 0) return false;
+            if (n > maxBytes) {
+                oversized.inc();
+                System.err.println("Dropping oversized BytesMessage: " + n + " bytes");
+                return false;
+            }
+            ensure((int) n);
+            len = Math.max(0, bm.readBytes(buf, (int) n));
+            return len > 0;
+        }
+        if (msg instanceof TextMessage tm) {
+            String s = tm.getText();
+            if (s == null || s.isEmpty()) return false;
+            // Every char is 1..3 UTF-8 bytes (a surrogate pair 4 for 2), so only the middle ground needs counting
+            if (s.length() > maxBytes || ((long) s.length() * 3 > maxBytes && utf8Length(s) > maxBytes)) {
+                oversized.inc();
+                System.err.println("Dropping oversized TextMessage: " + utf8Length(s) + " bytes");
+                return false;
+            }
+            text = s;
+            return true;
+        }
+        return false;
+    }
+
+    /** {@link #load}, with a text body UTF-8 encoded into {@link #buf} as well. */
+    boolean loadBytes(Message msg, int maxBytes) throws JMSException {
+        if (!load(msg, maxBytes)) return false;
+        if (text != null) {
+            ensure(utf8Length(text));
+            len = encodeUtf8(text, buf);
+            text = null;
+        }
+        return true;
+    }
+
+    /** True if the body is a TextMessage string ({@link #buf} is not filled). */
+    boolean isText() {
+        return text != null;
+    }
+
+    /** A reader over the loaded body: the text as characters, or the bytes with their declared encoding. */
+    XMLStreamReader xmlReader(XMLInputFactory xif) throws XMLStreamException {
+        return (text != null)
+                ? xif.createXMLStreamReader(new StringReader(text))
+                : xif.createXMLStreamReader(new ByteArrayInputStream(buf, 0, len));
+    }
+
+    private void ensure(int n) {
+        if (buf.length < n) buf = new byte[Math.max(n, buf.length * 2)];
+    }
+
+    private static int utf8Length(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) n++;
+            else if (c < 0x800) n += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                n += 4;
+                i++;
+            } else n += 3;
+        }
+        return n;
+    }
+
+    private static int encodeUtf8(String s, byte[] out) {
+        int w = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out[w++] = (byte) c;
+            } else if (c < 0x800) {
+                out[w++] = (byte) (0xC0 | (c >> 6));
+                out[w++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out[w++] = (byte) (0xF0 | (cp >> 18));
+                out[w++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[w++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[w++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                // lone surrogates become '?' like String.getBytes(UTF_8)
+                if (Character.isSurrogate(c)) {
+                    out[w++] = '?';
+                    continue;
+                }
+                out[w++] = (byte) (0xE0 | (c >> 12));
+                out[w++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[w++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return w;
+    }
+}
@@ -0,0 +1,49 @@
+package dev.vstars;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Per-key ordering for pipelined POSTs (HTTP_MAX_IN_FLIGHT > 1). Node keeps whichever update of a
+ * track, or of an ITWS product/site, arrives last, and concurrent POSTs on separate connections can
+ * overtake each other. A body therefore starts only once every earlier body sharing one of its keys
+ * has completed (accepted or spooled); bodies with no key in common still overlap.
+ *
+ * Not needed for a {@link StreamSink}, which delivers everything in order on one connection.
+ */
+final class KeyedOrder<K> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<Boolean>> last = new ConcurrentHashMap<>();
+
+    /**
+     * Runs {@code send} now, or once the bodies it must follow have completed. Called from a single
+     * thread; {@code keys} must not change afterwards.
+     */
+    CompletableFuture<Boolean> post(Collection<K> keys, Supplier<CompletableFuture<Boolean>> send) {
+        Set<CompletableFuture<Boolean>> before = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (K key : keys) {
+            CompletableFuture<Boolean> f = last.get(key);
+            if (f != null && !f.isDone()) before.add(f);
+        }
+
+        // IngestSink futures never complete exceptionally
+        CompletableFuture<Boolean> sent = before.isEmpty()
+                ? send.get()
+                : CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0])).thenCompose(v -> send.get());
+        for (K key : keys) last.put(key, sent);
+        sent.whenComplete((posted, err) -> {
+            for (K key : keys) last.remove(key, sent);
+        });
+        return sent;
+    }
+
+    CompletableFuture<Boolean> post(K key, Supplier<CompletableFuture<Boolean>> send) {
+        return post(List.of(key), send);
+    }
+}
@@ -0,0 +1,252 @@
+package dev.vstars;
+
+import com.solacesystems.jms.SolConnectionFactory;
+import com.solacesystems.jms.SolJmsUtility;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Where a consumer's messages come from: the SWIM queue ({@link #jms}), the queue with every message
+ * also captured to a file ({@link #recording}), or such a capture played back ({@link ReplaySource}).
+ *
+ * Receivers behave like competing consumers on one queue, each with its own session; messages are
+ * acknowledged through {@link Message#acknowledge()} as usual.
+ */
+interface MessageSource extends AutoCloseable {
+
+    /** One consumer and its session; used only from the thread that owns it. */
+    interface Receiver {
+        Message receive(long timeoutMs) throws JMSException;
+    }
+
+    /** Opens a receiver; {@code ackMode} is a JMS or Solace session acknowledge mode. */
+    default Receiver createReceiver(int ackMode) throws JMSException {
+        return createReceiver(ackMode, null);
+    }
+
+    /**
+     * Opens a receiver that only gets messages matching the JMS {@code selector} (null = all). Only the
+     * broker applies it: a replay delivers every captured message, so callers keep their own check.
+     */
+    Receiver createReceiver(int ackMode, String selector) throws JMSException;
+
+    /** Starts delivery to every receiver created so far. */
+    void start() throws JMSException;
+
+    @Override
+    void close() throws JMSException;
+
+    static MessageSource jms(ConnectionFactory cf, String queueName) throws JMSException {
+        return new Jms(cf.createConnection(), queueName, true);
+    }
+
+    /** Connection factory for a SWIM broker; {@code hosts} is a comma-separated list of tcp(s):// or smf(s):// URLs. */
+    static SolConnectionFactory solace(String hosts, String vpn, String username, String password) throws Exception {
+        SolConnectionFactory cf = SolJmsUtility.createConnectionFactory();
+        cf.setHost(normalizeJmsHostList(hosts));
+        cf.setVPN(vpn);
+        cf.setUsername(username);
+        cf.setPassword(password);
+        cf.setConnectRetries(5);
+        cf.setConnectRetriesPerHost(3);
+        return cf;
+    }
+
+    /** Passes {@code source} through unchanged, appending every received message to a capture file. */
+    static MessageSource recording(MessageSource source, Path file) throws IOException {
+        return new Recording(source, new CaptureFile.Writer(file));
+    }
+
+    // ---------------- Implementations ----------------
+
+    final class Jms implements MessageSource {
+        private final Connection conn;
+        private final String queueName;
+        private final boolean ownsConnection;     // false when shared through Brokers
+        private final List<Session> sessions = new ArrayList<>();
+
+        private Jms(Connection conn, String queueName, boolean ownsConnection) {
+            this.conn = conn;
+            this.queueName = queueName;
+            this.ownsConnection = ownsConnection;
+        }
+
+        @Override
+        public Receiver createReceiver(int ackMode, String selector) throws JMSException {
+            Session session = conn.createSession(false, ackMode);
+            synchronized (sessions) {
+                sessions.add(session);
+            }
+            MessageConsumer consumer = session.createConsumer(session.createQueue(queueName), selector);
+            return consumer::receive;
+        }
+
+        @Override
+        public void start() throws JMSException {
+            conn.start();   // no-op if another source already started a shared connection
+        }
+
+        @Override
+        public void close() throws JMSException {
+            if (ownsConnection) {
+                conn.close();   // closes its sessions and consumers too
+                return;
+            }
+            synchronized (sessions) {
+                for (Session s : sessions) s.close();
+                sessions.clear();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "queue " + queueName;
+        }
+    }
+
+    /**
+     * Broker connections shared by the pipelines of one process ({@link IngestHost}): one per broker, VPN
+     * and user, with a session per receiver as usual. A connection that fails for good (the factory's
+     * reconnects exhausted) is dropped, so pipelines restarting after the failure open a fresh one.
+     */
+    final class Brokers implements AutoCloseable {
+        private final Map<String, Connection> open = new HashMap<>();
+
+        /** A source for {@code queueName} on the connection to that broker, connecting on first use. */
+        synchronized MessageSource queue(String hosts, String vpn, String username, String password,
+                                         String queueName) throws Exception {
+            String key = hosts + "|" + vpn + "|" + username;
+            Connection conn = open.get(key);
+            if (conn == null) {
+                Connection c = solace(hosts, vpn, username, password).createConnection();
+                c.setExceptionListener(e -> {
+                    System.err.println("Broker connection to " + hosts + " (" + vpn + ") failed: " + e.getMessage());
+                    drop(key, c);
+                });
+                open.put(key, c);
+                conn = c;
+            }
+            return new Jms(conn, queueName, false);
+        }
+
+        private synchronized void drop(String key, Connection c) {
+            if (!open.remove(key, c)) return;
+            try {
+                c.close();
+            } catch (JMSException ignored) {
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            for (Connection c : open.values()) {
+                try {
+                    c.close();
+                } catch (JMSException e) {
+                    System.err.println("Closing broker connection: " + e.getMessage());
+                }
+            }
+            open.clear();
+        }
+    }
+
+    final class Recording implements MessageSource {
+        private final MessageSource source;
+        private final CaptureFile.Writer capture;
+
+        private Recording(MessageSource source, CaptureFile.Writer capture) {
+            this.source = source;
+            this.capture = capture;
+        }
+
+        @Override
+        public Receiver createReceiver(int ackMode, String selector) throws JMSException {
+            Receiver r = source.createReceiver(ackMode, selector);
+            return timeoutMs -> {
+                Message msg = r.receive(timeoutMs);
+                if (msg != null) capture.append(msg);
+                return msg;
+            };
+        }
+
+        @Override
+        public void start() throws JMSException {
+            source.start();
+        }
+
+        @Override
+        public void close() throws JMSException {
+            try {
+                source.close();
+            } finally {
+                capture.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return source + ", recording to " + capture;
+        }
+    }
+
+    // tcp:// and tcps:// URLs become the smf:// and smfs:// forms Solace expects; trailing slashes are dropped
+    private static String normalizeJmsHostList(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        String[] parts = raw.split(",");
+        StringBuilder out = new StringBuilder(raw.length());
+        for (String part : parts) {
+            String token = part.trim();
+            if (token.isEmpty()) {
+                continue;
+            }
+
+            String normalized;
+            int idx = token.indexOf("://");
+            if (idx > 0 && idx + 3 < token.length()) {
+                String scheme = token.substring(0, idx).toLowerCase(Locale.ROOT);
+                String hostPort = token.substring(idx + 3);
+                while (hostPort.endsWith("/")) {
+                    hostPort = hostPort.substring(0, hostPort.length() - 1);
+                }
+
+                if (scheme.equals("tcps")) {
+                    normalized = "smfs://" + hostPort;
+                } else if (scheme.equals("tcp")) {
+                    normalized = "smf://" + hostPort;
+                } else if (scheme.equals("smfs") || scheme.equals("smf")) {
+                    normalized = scheme + "://" + hostPort;
+                } else {
+                    normalized = token;
+                }
+            } else {
+                while (token.endsWith("/")) {
+                    token = token.substring(0, token.length() - 1);
+                }
+                normalized = token;
+            }
+
+            if (normalized.isEmpty()) {
+                continue;
+            }
+            if (!out.isEmpty()) {
+                out.append(',');
+            }
+            out.append(normalized);
+        }
+        return out.isEmpty() ? raw.trim() : out.toString();
+    }
+}
@@ -0,0 +1,303 @@
+package dev.vstars;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and latency histograms for one consumer, served in Prometheus text format on
+ * {@code /metrics} by the JDK's built-in HTTP server.
+ *
+ * Recording is lock-free and allocation-free, so instruments are always updated; the endpoint is
+ * only started when a port is configured. In the ingest host ({@link IngestHost}) every pipeline of a
+ * kind records into that kind's instance, so the values are totals over its pipelines.
+ */
+final class Metrics {
+
+    private final String prefix;
+    private final List<Metric> metrics = new ArrayList<>();
+    private final Map<String, List<LongSupplier>> sources = new HashMap<>();   // by name, for supplier-backed metrics
+
+    Metrics(String prefix) {
+        this.prefix = prefix;
+    }
+
+    // ---------------- Registration ----------------
+
+    synchronized Counter counter(String name, String help) {
+        Counter c = new Counter();
+        metrics.add(new Metric(name, help, "counter", out -> out.sample(name, "", c.get())));
+        return c;
+    }
+
+    /**
+     * Counter whose value is kept elsewhere (e.g. appends inside a {@link Spool}). Registering a name
+     * again reports the sum of every registration; closing one removes it, when what it reads is gone.
+     */
+    synchronized AutoCloseable counter(String name, String help, LongSupplier value) {
+        return register(name, help, "counter", value);
+    }
+
+    /** Gauge read on every scrape; registrations add up as for {@link #counter(String, String, LongSupplier)}. */
+    synchronized AutoCloseable gauge(String name, String help, LongSupplier value) {
+        return register(name, help, "gauge", value);
+    }
+
+    private AutoCloseable register(String name, String help, String type, LongSupplier value) {
+        List<LongSupplier> list = sources.get(name);
+        if (list == null) {
+            List<LongSupplier> sum = new ArrayList<>();
+            sources.put(name, sum);
+            metrics.add(new Metric(name, help, type, out -> {
+                long v = 0;
+                for (LongSupplier s : sum) v += s.getAsLong();
+                out.sample(name, "", v);
+            }));
+            list = sum;
+        }
+        list.add(value);
+        List<LongSupplier> registered = list;
+        return () -> {
+            synchronized (this) {
+                registered.remove(value);
+            }
+        };
+    }
+
+    /** One counter per label value, e.g. filtered messages by productID. */
+    synchronized LabeledCounter counter(String name, String help, String label) {
+        LabeledCounter c = new LabeledCounter();
+        metrics.add(new Metric(name, help, "counter", out -> {
+            for (Map.Entry<String, LongAdder> e : new TreeMap<>(c.values).entrySet()) {
+                out.sample(name, label + "=\"" + e.getKey() + "\"", e.getValue().sum());
+            }
+        }));
+        return c;
+    }
+
+    /** Latency histogram; exposed as a summary in seconds. */
+    synchronized Histogram histogram(String name, String help) {
+        Histogram h = new Histogram();
+        metrics.add(new Metric(name, help, "summary", out -> h.writeTo(out, name)));
+        return h;
+    }
+
+    /** Heap and GC gauges, for sizing. */
+    void registerJvm() {
+        gauge("jvm_heap_used_bytes", "Heap in use",
+                () -> ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        gauge("jvm_heap_peak_bytes", "Sum of the heap pools' peak usage since start", () -> {
+            long peak = 0;
+            for (MemoryPoolMXBean p : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (p.getType() == MemoryType.HEAP && p.getPeakUsage() != null) peak += p.getPeakUsage().getUsed();
+            }
+            return peak;
+        });
+        counter("jvm_gc_collections_total", "GC runs since start", () -> {
+            long n = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+            return n;
+        });
+        counter("jvm_gc_time_ms_total", "Accumulated GC time", () -> {
+            long ms = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) ms += Math.max(0, gc.getCollectionTime());
+            return ms;
+        });
+
+        // Stop-the-world pauses only; concurrent cycles (G1 Concurrent GC, ZGC Cycles) are not pauses
+        Histogram pauses = histogram("jvm_gc_pause_seconds", "GC pause duration");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter emitter)) continue;
+            if (gc.getName().contains("Concurrent") || gc.getName().contains("Cycles")) continue;
+            emitter.addNotificationListener((n, handback) -> {
+                if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+                GarbageCollectionNotificationInfo info =
+                        GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+                pauses.recordMillis(info.getGcInfo().getDuration());
+            }, null, null);
+        }
+    }
+
+    /** Starts {@code GET /metrics} on the given port (0 = disabled). */
+    void serve(int port) throws IOException {
+        serve(port, this);
+    }
+
+    /** One {@code /metrics} endpoint for several instances (the ingest host); their prefixes must differ. */
+    static void serve(int port, Metrics... all) throws IOException {
+        if (port <= 0) return;
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", exchange -> {
+            StringBuilder text = new StringBuilder();
+            for (Metrics m : all) text.append(m.render());
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        });
+        server.start();
+        System.out.println("Metrics on http://localhost:" + port + "/metrics");
+    }
+
+    synchronized String render() {
+        Writer out = new Writer(prefix);
+        for (Metric m : metrics) {
+            String full = prefix + "_" + m.name;
+            out.sb.append("# HELP ").append(full).append(' ').append(m.help).append('\n');
+            out.sb.append("# TYPE ").append(full).append(' ').append(m.type).append('\n');
+            m.body.writeTo(out);
+        }
+        return out.sb.toString();
+    }
+
+    // ---------------- Instruments ----------------
+
+    static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        void inc() { value.increment(); }
+        void add(long n) { value.add(n); }
+        long get() { return value.sum(); }
+    }
+
+    static final class LabeledCounter {
+        private final ConcurrentHashMap<String, LongAdder> values = new ConcurrentHashMap<>();
+
+        void inc(String labelValue) {
+            values.computeIfAbsent(labelValue, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * HDR-style log-linear histogram of microsecond values: exact below 128 us, then 64 linear
+     * sub-buckets per power of two (under 1.6% relative error) up to about 12 days.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 6;
+        private static final int SUB = 1 << SUB_BITS;            // 64
+        private static final int LINEAR = SUB << 1;              // 128
+        private static final int MAX_EXP = 40;
+        private static final int BUCKETS = LINEAR + (MAX_EXP - SUB_BITS) * SUB;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder sumMicros = new LongAdder();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        void recordNanos(long nanos) {
+            recordMicros(nanos / 1000);
+        }
+
+        void recordMillis(long millis) {
+            recordMicros(millis * 1000);
+        }
+
+        /** Records the time since {@code startNanos} (from {@link System#nanoTime()}). */
+        void since(long startNanos) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+
+        void recordMicros(long micros) {
+            if (micros < 0) micros = 0;
+            counts.incrementAndGet(indexOf(micros));
+            sumMicros.add(micros);
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+
+        private static int indexOf(long v) {
+            if (v < LINEAR) return (int) v;
+            int exp = 63 - Long.numberOfLeadingZeros(v);
+            if (exp > MAX_EXP) return BUCKETS - 1;
+            int shift = exp - SUB_BITS;
+            return LINEAR + (exp - SUB_BITS - 1) * SUB + (int) ((v >>> shift) - SUB);
+        }
+
+        // Midpoint of the bucket's value range
+        private static long valueOf(int index) {
+            if (index < LINEAR) return index;
+            int i = index - LINEAR;
+            int shift = i / SUB + 1;
+            long lower = (long) (SUB + i % SUB) << shift;
+            return lower + (1L << shift) / 2;
+        }
+
+        private void writeTo(Writer out, String name) {
+            long[] snap = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snap[i] = counts.get(i);
+                total += snap[i];
+            }
+
+            double[] qs = { 0.5, 0.9, 0.99, 0.999 };
+            for (double q : qs) {
+                long rank = (long) Math.ceil(q * total);
+                long seen = 0;
+                long value = 0;
+                for (int i = 0; i < BUCKETS && total > 0; i++) {
+                    seen += snap[i];
+                    if (seen >= rank) {
+                        value = valueOf(i);
+                        break;
+                    }
+                }
+                out.seconds(name, "quantile=\"" + q + "\"", value);
+            }
+            out.seconds(name, "quantile=\"1.0\"", maxMicros.get());
+            out.seconds(name + "_sum", "", sumMicros.sum());
+            out.sample(name + "_count", "", total);
+        }
+    }
+
+    // ---------------- Rendering ----------------
+
+    private record Metric(String name, String help, String type, Body body) {}
+
+    @FunctionalInterface
+    private interface Body {
+        void writeTo(Writer out);
+    }
+
+    private static final class Writer {
+        final String prefix;
+        final StringBuilder sb = new StringBuilder(4096);
+
+        Writer(String prefix) { this.prefix = prefix; }
+
+        void sample(String name, String labels, long value) {
+            line(name, labels).append(value).append('\n');
+        }
+
+        void seconds(String name, String labels, long micros) {
+            line(name, labels).append(String.format(Locale.ROOT, "%.6f", micros / 1e6)).append('\n');
+        }
+
+        private StringBuilder line(String name, String labels) {
+            sb.append(prefix).append('_').append(name);
+            if (!labels.isEmpty()) sb.append('{').append(labels).append('}');
+            return sb.append(' ');
+        }
+    }
+}
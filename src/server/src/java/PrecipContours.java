@@ -0,0 +1,309 @@
+package dev.vstars;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Filled level areas of a precip grid as polygons (ITWS_CONTOURS): for each level 1..6, marching
+ * squares over the cells at or above that level, so the areas nest and drawing them in level order
+ * paints the same picture as the cells. The grid is padded with level 0, so every ring closes; outer
+ * rings and holes wind in opposite directions (fill even-odd or non-zero).
+ *
+ * Rings are simplified (Douglas-Peucker) to ITWS_CONTOUR_TOLERANCE_M metres, then georeferenced the
+ * way the scope places cells: TRP, plus the grid offset, dxM/dyM and rotation, on a flat earth
+ * around the TRP. A ring never simplifies away: an isolated cell stays a diamond and any larger
+ * ring keeps at least a triangle, so no level disappears.
+ *
+ * Not thread-safe: one instance per consumer thread.
+ */
+final class PrecipContours {
+
+    static final int MAX_LEVEL = 6;
+
+    /** Rings of one level; each ring is lat,lon pairs in degrees, implicitly closed. */
+    static final class Level {
+        final int level;
+        final List<double[]> rings;
+
+        private Level(int level, List<double[]> rings) {
+            this.level = level;
+            this.rings = rings;
+        }
+    }
+
+    static final class Result {
+        final int toleranceM;
+        final List<Level> levels;
+        final int vertices;
+
+        private Result(int toleranceM, List<Level> levels, int vertices) {
+            this.toleranceM = toleranceM;
+            this.levels = levels;
+            this.vertices = vertices;
+        }
+    }
+
+    private static final double M_PER_DEG_LAT = 1852.0 * 60.0;
+
+    private final int toleranceM;
+
+    // Scratch, grown to the largest grid seen. next[edge] = edge the contour continues to, -1 if none;
+    // tracing resets every entry it follows, so the array is back to all -1 after each level.
+    private int[] next = new int[0];
+    private int[] rowMax = new int[0];         // highest level in each grid row
+    private int[] starts = new int[64];
+    private int[] ring = new int[64];          // traced points as x2,y2 pairs (half-cell units)
+    private boolean[] keep = new boolean[32];
+    private int[] stack = new int[64];
+
+    PrecipContours(int toleranceM) {
+        this.toleranceM = Math.max(0, toleranceM);
+    }
+
+    Result trace(ItwsJsonConsumer.PrecipFrame f) {
+        int rows = f.rows, cols = f.cols;
+        List<Level> levels = new ArrayList<>();
+        if (f.grid == null || f.nonZeroCells == 0 || rows <= 0 || cols <= 0 || f.grid.length < rows * cols) {
+            return new Result(toleranceM, levels, 0);
+        }
+
+        int edges = 2 * (rows + 2) * (cols + 2);
+        if (next.length < edges) {
+            next = new int[edges];
+            Arrays.fill(next, -1);
+        }
+
+        if (rowMax.length < rows) rowMax = new int[rows];
+        int top = 0;
+        for (int y = 0; y < rows; y++) {
+            int m = 0;
+            for (int i = y * cols, end = i + cols; i < end; i++) m = Math.max(m, f.grid[i]);
+            rowMax[y] = m;
+            top = Math.max(top, m);
+        }
+
+        Geo geo = new Geo(f);
+        int vertices = 0;
+        for (int level = 1; level <= Math.min(top, MAX_LEVEL); level++) {
+            int n = link(f.grid, rows, cols, level);
+            if (n == 0) continue;
+
+            List<double[]> rings = new ArrayList<>();
+            for (int s = 0; s < n; s++) {
+                int points = follow(starts[s], cols + 2);
+                if (points == 0) continue;          // already traced as part of an earlier ring
+                double[] r = simplify(points, f.dxM, f.dyM, geo);
+                rings.add(r);
+                vertices += r.length / 2;
+            }
+            levels.add(new Level(level, rings));
+        }
+        return new Result(toleranceM, levels, vertices);
+    }
+
+    // ---------------- Marching squares ----------------
+
+    // For each corner case (bits: top-left 8, top-right 4, bottom-right 2, bottom-left 1), pairs of
+    // block edges {out, in} numbered clockwise from the top (edge k runs from corner k to k+1): the
+    // contour leaves the area across "out" and continues from the crossing before it, which enters
+    // the area. In a saddle this keeps diagonal cells apart.
+    private static final int[][] CASES = new int[16][];
+
+    static {
+        for (int c = 0; c < 16; c++) {
+            boolean[] v = { (c & 8) != 0, (c & 4) != 0, (c & 2) != 0, (c & 1) != 0 };
+            int[] pairs = new int[4];
+            int n = 0;
+            for (int k = 0; k < 4; k++) {
+                if (!v[k] || v[(k + 1) & 3]) continue;
+                int p = (k + 3) & 3;
+                while (v[p] == v[(p + 1) & 3]) p = (p + 3) & 3;
+                pairs[n++] = k;
+                pairs[n++] = p;
+            }
+            CASES[c] = Arrays.copyOf(pairs, n);
+        }
+    }
+
+    // Sample (y, x) of the padded grid is cell (y-1, x-1); outside the grid is level 0.
+    // Edge ids: horizontal edge between samples (y,x)-(y,x+1) = 2*(y*w+x), vertical (y,x)-(y+1,x) = that + 1.
+    private int link(byte[] grid, int rows, int cols, int level) {
+        int w = cols + 2;
+        int n = 0;
+        for (int i = 0; i <= rows; i++) {
+            // Blocks of this row see grid rows i-1 and i; nothing at the level there, no contour
+            if ((i == 0 || rowMax[i - 1] < level) && (i == rows || rowMax[i] < level)) continue;
+            boolean b = in(grid, rows, cols, i, 0, level), c = in(grid, rows, cols, i + 1, 0, level);
+            for (int j = 0; j <= cols; j++) {
+                boolean a = b, d = c;
+                b = in(grid, rows, cols, i, j + 1, level);
+                c = in(grid, rows, cols, i + 1, j + 1, level);
+                int[] pairs = CASES[(a ? 8 : 0) | (b ? 4 : 0) | (c ? 2 : 0) | (d ? 1 : 0)];
+                for (int k = 0; k < pairs.length; k += 2) {
+                    int out = edge(pairs[k], i, j, w);
+                    next[out] = edge(pairs[k + 1], i, j, w);
+                    if (n == starts.length) starts = Arrays.copyOf(starts, n * 2);
+                    starts[n++] = out;
+                }
+            }
+        }
+        return n;
+    }
+
+    // Block edges clockwise: top, right, bottom, left
+    private static int edge(int k, int i, int j, int w) {
+        switch (k) {
+            case 0: return 2 * (i * w + j);
+            case 1: return 2 * (i * w + j + 1) + 1;
+            case 2: return 2 * ((i + 1) * w + j);
+            default: return 2 * (i * w + j) + 1;
+        }
+    }
+
+    private static boolean in(byte[] grid, int rows, int cols, int y, int x, int level) {
+        return y >= 1 && y <= rows && x >= 1 && x <= cols && grid[(y - 1) * cols + x - 1] >= level;
+    }
+
+    // Walks one ring into ring[] as half-cell coordinates of the edge midpoints; returns its point count
+    private int follow(int start, int w) {
+        int n = 0;
+        int e = start;
+        while (next[e] >= 0) {
+            if (2 * n + 2 > ring.length) ring = Arrays.copyOf(ring, ring.length * 2);
+            int sample = e >> 1;
+            int y = sample / w, x = sample % w;
+            if ((e & 1) == 0) {
+                ring[2 * n] = 2 * x;             // between samples x and x+1: cell boundary x
+                ring[2 * n + 1] = 2 * y - 1;     // centre of cell row y-1
+            } else {
+                ring[2 * n] = 2 * x - 1;
+                ring[2 * n + 1] = 2 * y;
+            }
+            n++;
+            int to = next[e];
+            next[e] = -1;
+            e = to;
+        }
+        return n;
+    }
+
+    // ---------------- Simplification + georeferencing ----------------
+
+    // Douglas-Peucker in grid metres on the closed ring, split at point 0 and the point farthest from it
+    private double[] simplify(int n, int dxM, int dyM, Geo geo) {
+        double sx = dxM * 0.5, sy = dyM * 0.5;
+        if (keep.length < n) keep = new boolean[Math.max(n, keep.length * 2)];
+        Arrays.fill(keep, 0, n, false);
+        keep[0] = true;
+
+        int far = 0;
+        double farD = -1;
+        for (int i = 1; i < n; i++) {
+            double ddx = (ring[2 * i] - ring[0]) * sx, ddy = (ring[2 * i + 1] - ring[1]) * sy;
+            double d = ddx * ddx + ddy * ddy;
+            if (d > farD) {
+                farD = d;
+                far = i;
+            }
+        }
+        keep[far] = true;
+
+        int kept = 2;
+        if (n > 3) {
+            double tol2 = (double) toleranceM * toleranceM;
+            int sp = 0;
+            sp = push(sp, 0, far);
+            sp = push(sp, far, n);                  // index n is point 0 again
+            while (sp > 0) {
+                int to = stack[--sp], from = stack[--sp];
+                int best = -1;
+                double bestD = tol2;                // strict: with no tolerance only collinear points go
+                for (int i = from + 1; i < to; i++) {
+                    double d = segDist2(i, from, to % n, n, sx, sy);
+                    if (d > bestD) {
+                        bestD = d;
+                        best = i;
+                    }
+                }
+                if (best >= 0) {
+                    keep[best] = true;
+                    kept++;
+                    sp = push(sp, from, best);
+                    sp = push(sp, best, to);
+                }
+            }
+        }
+        if (kept < 3 && n <= 4) {
+            Arrays.fill(keep, 0, n, true);        // a single cell stays a diamond
+            kept = n;
+        } else if (kept < 3) {
+            int best = 1;                           // collapsed to a line: keep a triangle
+            double bestD = -1;
+            for (int i = 1; i < n; i++) {
+                double d = segDist2(i, 0, far, n, sx, sy);
+                if (i != far && d > bestD) {
+                    bestD = d;
+                    best = i;
+                }
+            }
+            keep[best] = true;
+            kept = 3;
+        }
+
+        double[] out = new double[2 * kept];
+        int o = 0;
+        for (int i = 0; i < n; i++) {
+            if (!keep[i]) continue;
+            geo.toLatLon(ring[2 * i] * 0.5, ring[2 * i + 1] * 0.5, out, o);
+            o += 2;
+        }
+        return out;
+    }
+
+    private int push(int sp, int from, int to) {
+        if (sp + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[sp] = from;
+        stack[sp + 1] = to;
+        return sp + 2;
+    }
+
+    // Squared distance in metres from point i to the segment a-b
+    private double segDist2(int i, int a, int b, int n, double sx, double sy) {
+        double ax = ring[2 * a] * sx, ay = ring[2 * a + 1] * sy;
+        double bx = ring[2 * b] * sx, by = ring[2 * b + 1] * sy;
+        double px = ring[2 * i] * sx, py = ring[2 * i + 1] * sy;
+        double vx = bx - ax, vy = by - ay;
+        double len2 = vx * vx + vy * vy;
+        double t = (len2 == 0) ? 0 : Math.max(0, Math.min(1, ((px - ax) * vx + (py - ay) * vy) / len2));
+        double qx = ax + t * vx - px, qy = ay + t * vy - py;
+        return qx * qx + qy * qy;
+    }
+
+    // Grid (col, row) in cells from the grid's top-left corner to lat/lon, as the scope places cells:
+    // origin at the TRP plus the rotated offset; columns run along (cos, sin), rows along (sin, -cos)
+    private static final class Geo {
+        final double lat0, lon0, mPerDegLon, e0, n0, colE, colN, rowE, rowN;
+
+        Geo(ItwsJsonConsumer.PrecipFrame f) {
+            double rot = Math.toRadians(f.rotationMilliDeg / 1000.0);
+            double cos = Math.cos(rot), sin = Math.sin(rot);
+            lat0 = f.trpLatMicroDeg / 1_000_000.0;
+            lon0 = f.trpLonMicroDeg / 1_000_000.0;
+            mPerDegLon = M_PER_DEG_LAT * Math.cos(Math.toRadians(lat0));
+            e0 = f.xOffsetM * cos - f.yOffsetM * sin;
+            n0 = f.xOffsetM * sin + f.yOffsetM * cos;
+            colE = f.dxM * cos;
+            colN = f.dxM * sin;
+            rowE = f.dyM * sin;
+            rowN = -f.dyM * cos;
+        }
+
+        void toLatLon(double col, double row, double[] out, int at) {
+            double east = e0 + col * colE + row * rowE;
+            double north = n0 + col * colN + row * rowN;
+            out[at] = lat0 + north / M_PER_DEG_LAT;
+            out[at + 1] = lon0 + east / mPerDegLon;
+        }
+    }
+}
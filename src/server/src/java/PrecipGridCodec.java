@@ -0,0 +1,128 @@
+package dev.vstars;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary alternative to the JSON frame body ({@code "cells":[...]}): a fixed header carrying the
+ * {@link ItwsJsonConsumer.PrecipFrame} geometry, then the grid packed one nibble per cell (levels and
+ * the ITWS special values all fit in 0..15) or one byte per cell otherwise. Frames decoded with {@code ITWS_CELL_LAYOUT=rle} keep their runs instead (bits = 0).
+ *
+ * Layout, big-endian, posted as {@value #CONTENT_TYPE}:
+ * <pre>
+ *   0  "PGRD"                         magic
+ *   4  u8  version (1)
+ *   5  u8  bits per cell (4 or 8), or 0 for runs
+ *   6  u16 flags (bit 0: cells truncated at ITWS_MAX_CELLS_OUT)
+ *   8  i32 productId, rows, cols
+ *  20  i32 trpLatMicroDeg, trpLonMicroDeg
+ *  28  i32 xOffsetM, yOffsetM, dxM, dyM, rotationMilliDeg
+ *  48  u8  attenuated, apDetected, badValue, noCoverage
+ *  52  i32 maxPrecipLevel, filledCells
+ *  60  u16-length UTF-8 strings: receivedAt, productName, site, airport, compression
+ *   …  u32 cell count, then the packed cells (row-major; nibbles high first, odd count zero-padded)
+ *      or, for runs, u32 run count, then per run u8 level + u32 cell count
+ * </pre>
+ * The Node side decodes this in {@code precip-grid.ts}.
+ */
+final class PrecipGridCodec {
+
+    static final String CONTENT_TYPE = "application/x-precip-grid";
+
+    private static final byte[] MAGIC = { 'P', 'G', 'R', 'D' };
+    private static final int VERSION = 1;
+    private static final int FLAG_TRUNCATED = 1;
+
+    private PrecipGridCodec() {}
+
+    static byte[] encode(ItwsJsonConsumer.PrecipFrame f, int maxCellsOut) {
+        if (f.runs != null) return encodeRuns(f, maxCellsOut);
+
+        byte[] grid = f.grid;
+        int count = (maxCellsOut > 0) ? Math.min(grid.length, maxCellsOut) : grid.length;
+
+        int bits = 4;
+        for (int i = 0; i < count; i++) {
+            if ((grid[i] & 0xF0) != 0) {
+                bits = 8;
+                break;
+            }
+        }
+
+        int cellBytes = bits == 4 ? (count + 1) >>> 1 : count;
+        ByteBuffer b = header(f, bits, count < grid.length, 4 + cellBytes);
+        b.putInt(count);
+
+        byte[] out = b.array();
+        int at = b.position();
+        if (bits == 8) {
+            System.arraycopy(grid, 0, out, at, count);
+        } else {
+            int i = 0;
+            for (; i + 1 < count; i += 2) out[at++] = (byte) ((grid[i] << 4) | grid[i + 1]);
+            if (i < count) out[at] = (byte) (grid[i] << 4);
+        }
+        return out;
+    }
+
+    // Runs as emitted by the decoder (levels already 0..6), cut at maxCellsOut like the grid
+    private static byte[] encodeRuns(ItwsJsonConsumer.PrecipFrame f, int maxCellsOut) {
+        int[] runs = f.runs;
+        long total = (long) f.rows * f.cols;
+        long limit = (maxCellsOut > 0) ? Math.min(total, maxCellsOut) : total;
+
+        int n = 0;
+        long cells = 0;
+        while (n < runs.length && cells < limit) {
+            cells += runs[n + 1];
+            n += 2;
+        }
+
+        ByteBuffer b = header(f, 0, limit < total, 4 + (n / 2) * 5);
+        b.putInt(n / 2);
+        cells = 0;
+        for (int i = 0; i < n; i += 2) {
+            int count = (int) Math.min(runs[i + 1], limit - cells);
+            b.put((byte) Math.max(0, Math.min(255, runs[i]))).putInt(count);
+            cells += count;
+        }
+        return b.array();
+    }
+
+    // Fixed fields and strings; the returned buffer is positioned at the cell section
+    private static ByteBuffer header(ItwsJsonConsumer.PrecipFrame f, int bits, boolean truncated, int cellSectionBytes) {
+        byte[][] strings = {
+                utf8(f.receivedAt), utf8(f.productName), utf8(f.site), utf8(f.airport), utf8(f.compression)
+        };
+        int stringBytes = 0;
+        for (byte[] s : strings) stringBytes += 2 + s.length;
+
+        ByteBuffer b = ByteBuffer.allocate(60 + stringBytes + cellSectionBytes);
+        b.put(MAGIC).put((byte) VERSION).put((byte) bits).putShort((short) (truncated ? FLAG_TRUNCATED : 0));
+        b.putInt(f.productId).putInt(f.rows).putInt(f.cols);
+        b.putInt(f.trpLatMicroDeg).putInt(f.trpLonMicroDeg);
+        b.putInt(f.xOffsetM).putInt(f.yOffsetM).putInt(f.dxM).putInt(f.dyM).putInt(f.rotationMilliDeg);
+        b.put((byte) f.attenuated).put((byte) f.apDetected).put((byte) f.badValue).put((byte) f.noCoverage);
+        b.putInt(f.maxPrecipLevel).putInt(f.filledCells);
+        for (byte[] s : strings) b.putShort((short) s.length).put(s);
+        return b;
+    }
+
+    /** True if the body is a binary frame (e.g. when replaying a spool written under either format). */
+    static boolean isBinary(byte[] body) {
+        return body.length >= MAGIC.length
+                && body[0] == MAGIC[0] && body[1] == MAGIC[1] && body[2] == MAGIC[2] && body[3] == MAGIC[3];
+    }
+
+    static String contentTypeOf(byte[] body) {
+        return isBinary(BodyGzip.isGzip(body) ? BodyGzip.head(body, MAGIC.length) : body) ? CONTENT_TYPE : "application/json";
+    }
+
+    // Strings are header fields from the feed; anything over the u16 length is cut
+    private static byte[] utf8(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        if (b.length <= 0xFFFF) return b;
+        return Arrays.copyOf(b, 0xFFFF);
+    }
+}
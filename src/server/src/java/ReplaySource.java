@@ -0,0 +1,277 @@
+package dev.vstars;
+
+import javax.jms.BytesMessage;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays a {@link CaptureFile} back as if it were the SWIM queue, for load tests without a broker.
+ *
+ * Messages keep their recorded spacing divided by {@code speed} (1 = real time); with speed 0 they
+ * are handed out as fast as the receivers ask. JMSTimestamp is shifted so each message keeps its
+ * recorded broker-to-receive lag, which keeps the lag histograms meaningful. Acks are counted, and
+ * once every message of the file has been acknowledged the elapsed time and rate are logged: that
+ * is the end-to-end throughput of parse, encode and delivery.
+ */
+final class ReplaySource implements MessageSource {
+
+    private static final Class<?>[] BYTES = { BytesMessage.class };
+    private static final Class<?>[] TEXT = { TextMessage.class };
+
+    private final Path file;
+    private final double speed;            // 0 = as fast as possible
+    private final String label;
+    private final CaptureFile.Reader reader;
+
+    // Guarded by this
+    private CaptureFile.Entry next;        // read ahead, not yet due
+    private boolean started;
+    private boolean eof;
+    private boolean reported;
+    private long startMs;
+    private long firstRecordedMs;
+    private long delivered;
+    private long bytes;
+
+    private final AtomicLong acked = new AtomicLong();
+
+    ReplaySource(Path file, double speed, String label) throws IOException {
+        this.file = file;
+        this.speed = Math.max(0, speed);
+        this.label = label;
+        this.reader = new CaptureFile.Reader(file);
+    }
+
+    /** Parses a replay speed: {@code 1}, {@code 10}, {@code 10x}, {@code 0.5}, or {@code max} (= 0). */
+    static double parseSpeed(String s, double def) {
+        if (s == null || s.isBlank()) return def;
+        String v = s.trim().toLowerCase(Locale.ROOT);
+        if (v.equals("max")) return 0;
+        if (v.endsWith("x")) v = v.substring(0, v.length() - 1);
+        try { return Math.max(0, Double.parseDouble(v)); } catch (Exception e) { return def; }
+    }
+
+    // The capture holds what the broker delivered when it was recorded; selectors are not re-applied
+    @Override
+    public Receiver createReceiver(int ackMode, String selector) {
+        return new ReplayReceiver(ackMode == Session.CLIENT_ACKNOWLEDGE);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        startMs = System.currentTimeMillis();
+        notifyAll();
+    }
+
+    @Override
+    public void close() throws JMSException {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new JMSException("closing " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "replay of " + file + " (" + (speed == 0 ? "max speed" : speed + "x") + ")";
+    }
+
+    // Next due message, or null if none is due before the deadline
+    private synchronized Message take(ReplayReceiver receiver, long timeoutMs) throws JMSException {
+        long deadline = System.currentTimeMillis() + Math.max(0, timeoutMs);
+        while (true) {
+            long now = System.currentTimeMillis();
+            if (started && next == null && !eof) readAhead();
+
+            long due = Long.MAX_VALUE;
+            if (started && next != null) {
+                due = speed == 0 ? now : startMs + (long) ((next.receivedAtMs() - firstRecordedMs) / speed);
+            }
+            if (due <= now) {
+                CaptureFile.Entry e = next;
+                next = null;
+                delivered++;
+                bytes += e.body().length;
+                return message(e, receiver, receiver.delivered++, now);
+            }
+            if (now >= deadline) return null;
+            try {
+                wait(Math.max(1, Math.min(due, deadline) - now));
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+
+    private void readAhead() throws JMSException {
+        try {
+            next = reader.next();
+        } catch (IOException e) {
+            System.err.println(label + " replay: " + e.getMessage());
+            next = null;
+        }
+        if (next == null) {
+            eof = true;
+            System.out.println(label + " replay: end of " + file + " after " + delivered + " messages");
+            reportIfDone();
+        } else if (delivered == 0) {
+            firstRecordedMs = next.receivedAtMs();
+        }
+    }
+
+    private void onAcked(long n) {
+        if (n <= 0) return;
+        acked.addAndGet(n);
+        synchronized (this) {
+            if (eof) reportIfDone();
+        }
+    }
+
+    private void reportIfDone() {
+        if (reported || acked.get() < delivered) return;
+        reported = true;
+        double secs = Math.max(1, System.currentTimeMillis() - startMs) / 1000.0;
+        System.out.printf(Locale.ROOT,
+                "%s replay complete: %d messages (%.1f MB) acked in %.3f s = %.0f msg/s, %.1f MB/s%n",
+                label, delivered, bytes / 1e6, secs, delivered / secs, bytes / 1e6 / secs);
+    }
+
+    // ---------------- Receivers + messages ----------------
+
+    private final class ReplayReceiver implements Receiver {
+        private final boolean cumulative;  // CLIENT_ACKNOWLEDGE acks everything this session received
+        private long delivered;            // only touched under the source lock
+        private long ackedThrough;         // cumulative mode: messages acked so far
+
+        ReplayReceiver(boolean cumulative) {
+            this.cumulative = cumulative;
+        }
+
+        @Override
+        public Message receive(long timeoutMs) throws JMSException {
+            return take(this, timeoutMs);
+        }
+
+        void acknowledge(long index) {
+            long n;
+            synchronized (this) {
+                if (cumulative) {
+                    n = Math.max(0, index + 1 - ackedThrough);
+                    ackedThrough = Math.max(ackedThrough, index + 1);
+                } else {
+                    n = 1;
+                }
+            }
+            onAcked(n);
+        }
+    }
+
+    private static Message message(CaptureFile.Entry e, ReplayReceiver receiver, long index, long nowMs) {
+        // Keep the recorded lag: a message received 40 ms after its JMSTimestamp still appears 40 ms old
+        long ts = e.jmsTimestamp() > 0 ? nowMs - (e.receivedAtMs() - e.jmsTimestamp()) : 0;
+        boolean text = e.kind() == CaptureFile.KIND_TEXT;
+        return (Message) Proxy.newProxyInstance(ReplaySource.class.getClassLoader(), text ? TEXT : BYTES,
+                new Replayed(e, receiver, index, ts, text));
+    }
+
+    /** Read-only JMS message view of a capture entry; anything a consumer does not use is unsupported. */
+    private static final class Replayed implements InvocationHandler {
+        private final CaptureFile.Entry e;
+        private final ReplayReceiver receiver;
+        private final long index;
+        private final long timestamp;
+        private final boolean text;
+        private int readPos;
+
+        Replayed(CaptureFile.Entry e, ReplayReceiver receiver, long index, long timestamp, boolean text) {
+            this.e = e;
+            this.receiver = receiver;
+            this.index = index;
+            this.timestamp = timestamp;
+            this.text = text;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) {
+            Map<String, Object> props = e.properties();
+            switch (m.getName()) {
+                case "acknowledge":
+                    receiver.acknowledge(index);
+                    return null;
+                case "getJMSTimestamp":
+                    return timestamp;
+                case "getJMSMessageID":
+                    return "ID:replay-" + index;
+                case "getJMSRedelivered":
+                    return false;
+                case "getJMSDeliveryMode":
+                    return DeliveryMode.PERSISTENT;
+                case "propertyExists":
+                    return props.containsKey((String) args[0]);
+                case "getPropertyNames":
+                    return Collections.enumeration(props.keySet());
+                case "getObjectProperty":
+                    return props.get((String) args[0]);
+                case "getStringProperty": {
+                    Object v = props.get((String) args[0]);
+                    return v == null ? null : String.valueOf(v);
+                }
+                case "getIntProperty":
+                    return (int) number(props.get((String) args[0]), args[0]);
+                case "getLongProperty":
+                    return number(props.get((String) args[0]), args[0]);
+                case "getBooleanProperty": {
+                    Object v = props.get((String) args[0]);
+                    return v instanceof Boolean b ? b : Boolean.parseBoolean(String.valueOf(v));
+                }
+                case "getText":
+                    return text ? new String(e.body(), StandardCharsets.UTF_8) : null;
+                case "getBodyLength":
+                    return (long) e.body().length;
+                case "reset":
+                    readPos = 0;
+                    return null;
+                case "readBytes": {
+                    byte[] dst = (byte[]) args[0];
+                    int want = args.length > 1 ? (Integer) args[1] : dst.length;
+                    int n = Math.min(want, e.body().length - readPos);
+                    if (n <= 0) return -1;
+                    System.arraycopy(e.body(), readPos, dst, 0, n);
+                    readPos += n;
+                    return n;
+                }
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "ReplayedMessage[" + index + ", " + e.body().length + " bytes]";
+                default:
+                    throw new UnsupportedOperationException("replayed message: " + m.getName());
+            }
+        }
+
+        private static long number(Object v, Object name) {
+            if (v instanceof Number n) return n.longValue();
+            if (v == null) throw new NumberFormatException("no property " + name);
+            return Long.parseLong(String.valueOf(v).trim());
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package dev.vstars;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Durable local spool for bodies the ingest endpoint could not take.
+ *
+ * An append-only log of memory-mapped segment files ({@code <seq>.seg}). Each record is
+ * {@code [int length][int crc32][bytes]}; a zero length marks the end of written data, since new
+ * segments are zero-filled. {@link #append} returns only after the record has been forced to disk,
+ * so the caller can ack the JMS message right after.
+ *
+ * A drainer thread replays spooled records through a {@link Sender} in large batches, persists its
+ * read position in {@code checkpoint}, and deletes segments once they are fully drained. While the
+ * spool holds undrained records it is {@linkplain #isActive active}: callers should append new bodies
+ * instead of posting them directly, so replay order is kept.
+ *
+ * {@link #close} stops the drainer; records not yet delivered stay on disk for the next instance.
+ */
+final class Spool implements AutoCloseable {
+
+    /**
+     * Delivers a batch of spooled bodies, retrying until the endpoint accepts them. Batches are bounded
+     * by stored (possibly compressed) size, so a sender with a request size limit splits them itself.
+     */
+    @FunctionalInterface
+    interface Sender {
+        void send(List<byte[]> bodies) throws InterruptedException;
+    }
+
+    private static final int HEADER = 8;
+    private static final int DRAIN_MAX_RECORDS = 500;
+    private static final int DRAIN_MAX_BYTES = 8 * 1024 * 1024;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final Sender sender;
+    private final String label;
+    private final CRC32 crc = new CRC32();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final Thread drainer;
+
+    // Writer position
+    private long writeSeq;
+    private MappedByteBuffer writeMap;
+    private int writePos;
+
+    // Reader cursor; may run ahead of the committed position while a batch is being sent
+    private long readSeq;
+    private MappedByteBuffer readMap;
+    private int readPos;
+
+    // Position up to which records have been delivered (and written to the checkpoint)
+    private long doneSeq;
+    private int donePos;
+
+    Spool(Path dir, int segmentBytes, String label, Sender sender) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.max(1 << 20, segmentBytes);
+        this.label = label;
+        this.sender = sender;
+        Files.createDirectories(dir);
+        recover();
+
+        drainer = new Thread(this::drainLoop, label + "-spool-drainer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /** Stops the drainer and waits for it, so another instance can take over the directory. */
+    @Override
+    public void close() {
+        drainer.interrupt();
+        try {
+            drainer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** True while undelivered records exist; new bodies must be appended to keep order. */
+    synchronized boolean isActive() {
+        return doneSeq != writeSeq || donePos != writePos;
+    }
+
+    /** Bodies written to the spool since start. */
+    long appended() {
+        return appended.sum();
+    }
+
+    /** Spooled bodies delivered by the drainer since start. */
+    long replayed() {
+        return replayed.sum();
+    }
+
+    private boolean hasUnread() {
+        return readSeq != writeSeq || readPos != writePos;
+    }
+
+    /** Appends one body and forces it to disk before returning. */
+    synchronized void append(byte[] body, int offset, int length) throws IOException {
+        boolean wasActive = isActive();
+        if (writePos + HEADER + length > writeMap.capacity()) {
+            // Seal: a zero length after the last record tells the reader to move on, even if
+            // a torn write from before a crash left stale bytes further along
+            if (writePos + 4 <= writeMap.capacity()) {
+                writeMap.putInt(writePos, 0);
+                writeMap.force(writePos, 4);
+            }
+            openWriteSegment(writeSeq + 1, HEADER + length);
+        }
+
+        crc.reset();
+        crc.update(body, offset, length);
+
+        int at = writePos;
+        writeMap.putInt(at + 4, (int) crc.getValue());
+        writeMap.put(at + HEADER, body, offset, length);
+        writeMap.putInt(at, length);
+        writeMap.force(at, HEADER + length);
+        writePos = at + HEADER + length;
+        appended.increment();
+
+        if (!wasActive) {
+            System.err.println(label + " endpoint unavailable; spooling to " + dir);
+        }
+        notifyAll();
+    }
+
+    // ---------------- Drainer ----------------
+
+    private void drainLoop() {
+        List<byte[]> batch = new ArrayList<>();
+        while (true) {
+            try {
+                synchronized (this) {
+                    while (!hasUnread()) wait();
+                    readBatch(batch);
+                }
+                if (batch.isEmpty()) continue;
+
+                sender.send(batch);
+                replayed.add(batch.size());
+
+                synchronized (this) {
+                    doneSeq = readSeq;
+                    donePos = readPos;
+                    writeCheckpoint();
+                    deleteDrainedSegments();
+                    if (!isActive()) System.out.println(label + " spool drained");
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // Sender or disk failure: records stay spooled and the batch is re-read next time
+                System.err.println(label + " spool drain error: " + e.getMessage());
+                batch.clear();
+                rewind();
+                sleepQuietly(1000);
+            }
+        }
+    }
+
+    // Copies up to one batch of records from the read position; advances readPos in memory only.
+    private void readBatch(List<byte[]> out) throws IOException {
+        int bytes = 0;
+        while (out.size() < DRAIN_MAX_RECORDS && bytes < DRAIN_MAX_BYTES && hasUnread()) {
+            if (readSeq != writeSeq && endOfSegment(readMap, readPos)) {
+                openReadSegment(readSeq + 1, 0);
+                continue;
+            }
+            int at = readPos;
+            int len = readMap.getInt(at);
+            byte[] body = new byte[len];
+            readMap.get(at + HEADER, body);
+            readPos = at + HEADER + len;
+
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != readMap.getInt(at + 4)) {
+                System.err.println(label + " spool: skipping corrupt record in segment " + readSeq);
+                continue;
+            }
+            out.add(body);
+            bytes += len;
+        }
+    }
+
+    // Moves the cursor back to the last delivered record so a failed batch is sent again
+    private synchronized void rewind() {
+        try {
+            openReadSegment(doneSeq, donePos);
+        } catch (IOException e) {
+            System.err.println(label + " spool: cannot rewind: " + e.getMessage());
+        }
+    }
+
+    private void deleteDrainedSegments() throws IOException {
+        for (long seq : listSegments().keySet()) {
+            if (seq < doneSeq) Files.deleteIfExists(segmentPath(seq));
+        }
+    }
+
+    // ---------------- Recovery + segment files ----------------
+
+    private void recover() throws IOException {
+        TreeMap<Long, Path> segments = listSegments();
+        long[] cp = readCheckpoint();
+
+        if (segments.isEmpty()) {
+            openWriteSegment(0, 0);
+            openReadSegment(0, 0);
+            writeCheckpoint();
+            return;
+        }
+
+        long last = segments.lastKey();
+        openWriteSegment(last, 0);
+        // Find the end of written data: first zero length, truncated record, or bad checksum
+        int pos = 0;
+        while (!endOfSegment(writeMap, pos)) {
+            int len = writeMap.getInt(pos);
+            byte[] body = new byte[len];
+            writeMap.get(pos + HEADER, body);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != writeMap.getInt(pos + 4)) break;
+            pos += HEADER + len;
+        }
+        writePos = pos;
+
+        if (cp != null && segments.containsKey(cp[0])) {
+            openReadSegment(cp[0], (int) cp[1]);
+        } else {
+            openReadSegment(segments.firstKey(), 0);
+        }
+        doneSeq = readSeq;
+        donePos = readPos;
+        deleteDrainedSegments();
+
+        if (isActive()) {
+            System.out.println(label + " spool: resuming replay from " + dir);
+        }
+    }
+
+    private boolean endOfSegment(ByteBuffer map, int pos) {
+        if (pos + HEADER > map.capacity()) return true;
+        int len = map.getInt(pos);
+        return len <= 0 || pos + HEADER + len > map.capacity();
+    }
+
+    private void openWriteSegment(long seq, int minBytes) throws IOException {
+        writeSeq = seq;
+        writeMap = map(seq, Math.max(segmentBytes, minBytes));
+        writePos = 0;
+        if (readSeq == seq) readMap = writeMap.duplicate();
+    }
+
+    private void openReadSegment(long seq, int pos) throws IOException {
+        readSeq = seq;
+        readMap = (seq == writeSeq && writeMap != null) ? writeMap.duplicate() : map(seq, 0);
+        readPos = pos;
+    }
+
+    private MappedByteBuffer map(long seq, int size) throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentPath(seq),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long len = Math.max(size, ch.size());
+            return ch.map(FileChannel.MapMode.READ_WRITE, 0, len);
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> out = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*.seg")) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                try {
+                    out.put(Long.parseLong(name.substring(0, name.length() - 4)), p);
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        return out;
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("%020d.seg", seq));
+    }
+
+    private long[] readCheckpoint() throws IOException {
+        Path p = dir.resolve("checkpoint");
+        if (!Files.exists(p)) return null;
+        byte[] b = Files.readAllBytes(p);
+        if (b.length != 12) return null;
+        ByteBuffer bb = ByteBuffer.wrap(b);
+        return new long[] { bb.getLong(), bb.getInt() };
+    }
+
+    private void writeCheckpoint() throws IOException {
+        Path tmp = dir.resolve("checkpoint.tmp");
+        ByteBuffer bb = ByteBuffer.allocate(12).putLong(doneSeq).putInt(donePos).flip();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (bb.hasRemaining()) ch.write(bb);
+            ch.force(true);
+        }
+        Files.move(tmp, dir.resolve("checkpoint"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void sleepQuietly(long ms) {
+        try { Thread.sleep(ms); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
@@ -0,0 +1,302 @@
+package dev.vstars;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Streams bodies to the Node server over one long-lived HTTP/1.1 request instead of a POST each.
+ *
+ * The request body is chunked NDJSON, one record per line prefixed with a sequence number
+ * ({@code <seq> <json>\n}). The server answers on the same connection with a chunked stream of
+ * cumulative ack lines ({@code <seq>\n}), the first of which is the last sequence it has already
+ * applied for this session ({@code X-Stream-Session}). Records stay buffered until acked; after a
+ * reconnect everything past that first ack is resent, and the server drops duplicates by sequence.
+ *
+ * Spoken over a plain socket because {@code HttpClient} does not read a response before the
+ * request body has been sent.
+ */
+final class StreamSink implements IngestSink {
+
+    private record Entry(long seq, byte[] body, int offset, int length, CompletableFuture<Boolean> done) {}
+
+    private final URI url;
+    private final String tokenHeader;
+    private final String token;          // optional
+    private final int connectTimeoutMs;
+    private final int retrySleepMs;
+    private final String label;          // log prefix, e.g. "TAIS stream"
+    private final Metrics.Counter reconnects;
+    private final String session = UUID.randomUUID().toString();
+    private final Thread connection;
+    private volatile boolean closed;
+
+    // Guarded by this
+    private final ArrayDeque<Entry> unacked = new ArrayDeque<>();
+    private long nextSeq = 1;
+    private Socket socket;               // null while disconnected
+    private OutputStream out;
+
+    StreamSink(URI url, String tokenHeader, String token, int connectTimeoutMs, int retrySleepMs, String label,
+               Metrics.Counter reconnects) {
+        this.url = url;
+        this.tokenHeader = tokenHeader;
+        this.token = token;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.retrySleepMs = Math.max(50, retrySleepMs);
+        this.label = label;
+        this.reconnects = reconnects;
+
+        connection = new Thread(this::connectLoop, label.replace(' ', '-') + "-connection");
+        connection.setDaemon(true);
+        connection.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        connection.interrupt();
+        synchronized (this) {
+            closeQuietly(socket);   // unblocks the ack reader
+            socket = null;
+            out = null;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> post(byte[] body, int offset, int length) {
+        CompletableFuture<Boolean> done = new CompletableFuture<>();
+        synchronized (this) {
+            Entry e = new Entry(nextSeq++, body, offset, length, done);
+            unacked.add(e);
+            if (out != null) {
+                try {
+                    writeRecord(out, e);
+                    out.flush();
+                } catch (IOException ex) {
+                    // The connection thread notices the broken socket, reconnects, and resends
+                    System.err.println(label + " write error: " + ex.getMessage());
+                    closeQuietly(socket);
+                    socket = null;
+                    out = null;
+                }
+            }
+        }
+        return done;
+    }
+
+    // ---------------- Connection ----------------
+
+    private void connectLoop() {
+        while (!closed) {
+            Socket s = null;
+            try {
+                s = open();
+                OutputStream o = new BufferedOutputStream(s.getOutputStream(), 64 * 1024);
+                o.write(requestHead());
+                o.flush();
+
+                LineReader acks = LineReader.forResponse(new BufferedInputStream(s.getInputStream()));
+                String first = acks.readLine();
+                if (first == null) throw new EOFException("stream closed before handshake");
+                long resumeAfter = Long.parseLong(first.trim());
+
+                List<Entry> completed;
+                synchronized (this) {
+                    if (closed) throw new EOFException("closed");
+                    completed = ackThrough(resumeAfter);
+                    for (Entry e : unacked) writeRecord(o, e);
+                    o.flush();
+                    socket = s;
+                    out = o;
+                }
+                complete(completed);
+                System.out.println(label + " connected to " + url + " (resuming after #" + resumeAfter + ")");
+
+                String line;
+                while ((line = acks.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    List<Entry> acked;
+                    synchronized (this) {
+                        acked = ackThrough(Long.parseLong(line.trim()));
+                    }
+                    complete(acked);
+                }
+                throw new EOFException("stream closed by server");
+            } catch (Exception e) {
+                if (!closed) System.err.println(label + " error: " + e.getMessage());
+            }
+
+            synchronized (this) {
+                if (socket == s) {
+                    socket = null;
+                    out = null;
+                }
+            }
+            closeQuietly(s);
+            if (closed) return;
+            reconnects.inc();
+            try {
+                Thread.sleep(retrySleepMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private Socket open() throws IOException {
+        boolean tls = "https".equalsIgnoreCase(url.getScheme());
+        int port = url.getPort() > 0 ? url.getPort() : (tls ? 443 : 80);
+
+        Socket s = new Socket();
+        s.connect(new InetSocketAddress(url.getHost(), port), connectTimeoutMs);
+        s.setTcpNoDelay(true);
+        s.setKeepAlive(true);
+        if (!tls) return s;
+
+        SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                .createSocket(s, url.getHost(), port, true);
+        SSLParameters params = ssl.getSSLParameters();
+        params.setEndpointIdentificationAlgorithm("HTTPS");
+        ssl.setSSLParameters(params);
+        ssl.startHandshake();
+        return ssl;
+    }
+
+    private byte[] requestHead() {
+        String path = url.getRawPath() == null || url.getRawPath().isEmpty() ? "/" : url.getRawPath();
+        if (url.getRawQuery() != null) path += "?" + url.getRawQuery();
+
+        StringBuilder sb = new StringBuilder(256)
+                .append("POST ").append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(url.getHost());
+        if (url.getPort() > 0) sb.append(':').append(url.getPort());
+        sb.append("\r\n")
+                .append("Content-Type: application/x-ndjson\r\n")
+                .append("Transfer-Encoding: chunked\r\n")
+                .append("X-Stream-Session: ").append(session).append("\r\n");
+        if (token != null && !token.isBlank()) {
+            sb.append(tokenHeader).append(": ").append(token).append("\r\n");
+        }
+        return sb.append("\r\n").toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // One chunk per record: <hex size>\r\n<seq> <json>\n\r\n
+    private static void writeRecord(OutputStream o, Entry e) throws IOException {
+        byte[] seq = (e.seq() + " ").getBytes(StandardCharsets.US_ASCII);
+        int size = seq.length + e.length() + 1;
+        o.write(Integer.toHexString(size).getBytes(StandardCharsets.US_ASCII));
+        o.write('\r');
+        o.write('\n');
+        o.write(seq);
+        o.write(e.body(), e.offset(), e.length());
+        o.write('\n');
+        o.write('\r');
+        o.write('\n');
+    }
+
+    // Removes every entry up to and including seq; futures are completed outside the lock
+    private List<Entry> ackThrough(long seq) {
+        List<Entry> out = new ArrayList<>();
+        while (!unacked.isEmpty() && unacked.peekFirst().seq() <= seq) {
+            out.add(unacked.pollFirst());
+        }
+        return out;
+    }
+
+    private static void complete(List<Entry> entries) {
+        for (Entry e : entries) e.done().complete(true);
+    }
+
+    private static void closeQuietly(Socket s) {
+        if (s == null) return;
+        try { s.close(); } catch (IOException ignored) {}
+    }
+
+    // ---------------- Response parsing ----------------
+
+    /** Reads the response head, then lines from a chunked (or close-delimited) body. */
+    private static final class LineReader {
+        private final InputStream in;
+        private final boolean chunked;
+        private long chunkLeft;             // bytes left in the current chunk
+        private boolean done;
+
+        private LineReader(InputStream in, boolean chunked) {
+            this.in = in;
+            this.chunked = chunked;
+        }
+
+        static LineReader forResponse(InputStream in) throws IOException {
+            String status = rawLine(in);
+            if (status == null) throw new EOFException("no response");
+            String[] parts = status.split(" ", 3);
+            int code = parts.length > 1 ? Integer.parseInt(parts[1]) : -1;
+
+            boolean chunked = false;
+            String h;
+            while ((h = rawLine(in)) != null && !h.isEmpty()) {
+                String lower = h.toLowerCase(Locale.ROOT);
+                if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) chunked = true;
+            }
+            if (code != 200) throw new IOException("HTTP " + code);
+            return new LineReader(in, chunked);
+        }
+
+        String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder(24);
+            int c;
+            while ((c = read()) != -1) {
+                if (c == '\n') return sb.toString();
+                sb.append((char) c);
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+
+        private int read() throws IOException {
+            if (!chunked) return in.read();
+            if (done) return -1;
+            if (chunkLeft == 0) {
+                String size = rawLine(in);
+                if (size == null) return -1;
+                if (size.isEmpty()) size = rawLine(in);   // CRLF closing the previous chunk
+                if (size == null) return -1;
+                int semi = size.indexOf(';');
+                chunkLeft = Long.parseLong((semi >= 0 ? size.substring(0, semi) : size).trim(), 16);
+                if (chunkLeft == 0) {
+                    done = true;
+                    return -1;
+                }
+            }
+            int c = in.read();
+            if (c != -1) chunkLeft--;
+            return c;
+        }
+
+        // Reads an ASCII line terminated by CRLF (or LF); null at end of stream
+        private static String rawLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder(64);
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    int n = sb.length();
+                    if (n > 0 && sb.charAt(n - 1) == '\r') sb.setLength(n - 1);
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+    }
+}
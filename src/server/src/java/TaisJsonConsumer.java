@@ -1,12 +1,13 @@
 package dev.vstars;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.solacesystems.jms.SolConnectionFactory;
-import com.solacesystems.jms.SolJmsUtility;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.solacesystems.jms.SupportedProperty;
 
-import javax.jms.*;
-import javax.jms.Queue;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
 import javax.xml.stream.*;
 import java.io.*;
 import java.net.URI;
@@ -14,13 +15,20 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 public final class TaisJsonConsumer {
 
-    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON = new JsonFactory();
 
     // tags we try to extract (namespace-agnostic)
     private static final Set<String> WANTED_TAGS = Set.of(
@@ -38,216 +46,956 @@ public final class TaisJsonConsumer {
             "destinationAirport"
     );
 
+    // ---------------- Metrics (TAIS_METRICS_PORT) ----------------
+
+    private static final Metrics METRICS = new Metrics("tais");
+    private static final Metrics.Counter RECEIVED =
+            METRICS.counter("messages_received_total", "JMS messages received");
+    private static final Metrics.Counter DROPPED =
+            METRICS.counter("messages_dropped_total", "Messages without a usable payload (empty, oversized, unsupported type)");
+    private static final Metrics.Counter OVERSIZED =
+            METRICS.counter("messages_oversized_total", "Messages over TAIS_MAX_BYTES");
+    private static final Metrics.Counter REJECTED =
+            METRICS.counter("posts_rejected_total", "Bodies dropped because the endpoint refused their size (HTTP 413)");
+    private static final Metrics.Counter FORWARDED =
+            METRICS.counter("records_forwarded_total", "Records written to an outgoing body");
+    private static final Metrics.Counter SUPPRESSED =
+            METRICS.counter("records_suppressed_total", "Records dropped as unchanged or out of order");
+    private static final Metrics.Counter POSTS =
+            METRICS.counter("posts_total", "Bodies accepted by the endpoint");
+    private static final Metrics.Counter RETRIES =
+            METRICS.counter("post_retries_total", "Failed POST attempts that were retried");
+    private static final Metrics.Counter RECONNECTS =
+            METRICS.counter("stream_reconnects_total", "Streaming sink reconnects");
+    private static final Metrics.Histogram RECEIVE_LAG =
+            METRICS.histogram("receive_lag_seconds", "Broker timestamp (JMSTimestamp) to receive");
+    private static final Metrics.Histogram PARSE =
+            METRICS.histogram("parse_seconds", "XML scan per message");
+    private static final Metrics.Histogram JSON_BUILD =
+            METRICS.histogram("json_build_seconds", "JSON serialization per record");
+    private static final Metrics.Histogram POST =
+            METRICS.histogram("post_seconds", "POST (or stream write) until accepted, including retries");
+    private static final Metrics.Histogram POST_LAG =
+            METRICS.histogram("post_lag_seconds", "Broker timestamp of the oldest message in a body to the body being accepted");
+
     public static void main(String[] args) throws Exception {
         Config cfg = Config.fromEnv();
 
+        METRICS.registerJvm();
+        METRICS.serve(cfg.metricsPort);
+
         // HTTP client for posting to your Next endpoint (created once)
         final HttpClient http = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofMillis(cfg.httpConnectTimeoutMs))
                 .build();
 
-        // Solace JMS ConnectionFactory programmatically
-        SolConnectionFactory cf = SolJmsUtility.createConnectionFactory();
-        cf.setHost(normalizeJmsHostList(cfg.jmsUrl));
-        cf.setVPN(cfg.vpn);
-        cf.setUsername(cfg.username);
-        cf.setPassword(cfg.password);
-        cf.setConnectRetries(5);
-        cf.setConnectRetriesPerHost(3);
+        try (MessageSource source = openSource(cfg, null)) {
+            run(cfg, source, http);
+        }
+    }
+
+    /**
+     * This consumer as a pipeline of {@link IngestHost}: settings from {@code env}, checked before anything
+     * starts; the broker connection and HTTP client are the host's. TAIS_METRICS_PORT is not used there.
+     */
+    static IngestHost.Pipeline hosted(Function<String, String> env) {
+        Config cfg = Config.fromEnv(env);
+        return (brokers, http) -> {
+            try (MessageSource source = openSource(cfg, brokers)) {
+                run(cfg, source, http);
+            }
+        };
+    }
+
+    static Metrics metrics() {
+        return METRICS;
+    }
+
+    /**
+     * The Solace queue (through the host's shared connection when {@code brokers} is given), or a capture
+     * file when TAIS_REPLAY_FILE is set; optionally recorded to TAIS_RECORD_FILE.
+     */
+    private static MessageSource openSource(Config cfg, MessageSource.Brokers brokers) throws Exception {
+        MessageSource source;
+        if (cfg.replayFile != null) {
+            source = new ReplaySource(cfg.replayFile, cfg.replaySpeed, "TAIS");
+        } else if (brokers != null) {
+            source = brokers.queue(cfg.jmsUrl, cfg.vpn, cfg.username, cfg.password, cfg.queueName);
+        } else {
+            source = MessageSource.jms(MessageSource.solace(cfg.jmsUrl, cfg.vpn, cfg.username, cfg.password), cfg.queueName);
+        }
+        return cfg.recordFile == null ? source : MessageSource.recording(source, cfg.recordFile);
+    }
+
+    // Threads, the spool and metric sources of the run are released when it ends
+    private static void run(Config cfg, MessageSource source, HttpClient http) throws Exception {
+        try (Closer closer = new Closer("TAIS")) {
+            run(cfg, source, http, closer);
+        }
+    }
+
+    private static void run(Config cfg, MessageSource source, HttpClient http, Closer closer) throws Exception {
+        // Optional disk spool: bodies the endpoint rejects are written locally and acked, then replayed
+        final Spool spool = closer.add(openSpool(cfg, http));
+        if (spool != null) {
+            closer.add(METRICS.counter("spooled_total", "Bodies written to the disk spool", spool::appended));
+            closer.add(METRICS.counter("spool_replayed_total", "Spooled bodies delivered", spool::replayed));
+        }
+
+        // Optional streaming sink: one long-lived connection instead of a POST per body
+        final StreamSink stream = cfg.streamUrl == null ? null
+                : closer.add(new StreamSink(cfg.streamUrl, "X-TAIS-Token", cfg.ingestToken,
+                        cfg.httpConnectTimeoutMs, cfg.retrySleepMs, "TAIS stream", RECONNECTS));
+
+        // Optional gzip of POST bodies, compressed as records are appended (not for the NDJSON stream)
+        final BodyGzip gzip = (stream != null || cfg.postUrl == null) ? null
+                : BodyGzip.fromEnv(cfg.contentEncoding, cfg.compressMinBytes, "TAIS");
+        if (gzip != null) System.out.println("POST bodies: gzip from " + cfg.compressMinBytes + " bytes");
+
+        if (cfg.stripes > 1 || cfg.consumers > 1) {
+            new Partitioned(cfg, http, spool, stream, gzip).run(source);
+            return;
+        }
+
+        // Pipelined delivery acks messages out of receive order, which needs Solace individual acks
+        final boolean pipelined = cfg.maxInFlight > 1;
+        final int ackMode = pipelined ? SupportedProperty.SOL_CLIENT_ACKNOWLEDGE : Session.CLIENT_ACKNOWLEDGE;
+
+        MessageSource.Receiver consumer = source.createReceiver(ackMode);
+
+        source.start();
+        System.out.println("Connected. Consuming " + source);
+
+        XMLInputFactory xif = XMLInputFactory.newFactory();
+        trySet(xif, XMLInputFactory.SUPPORT_DTD, false);
+        trySet(xif, "javax.xml.stream.isSupportingExternalEntities", false);
+
+        final Delivery delivery = closer.add(new Delivery(http, cfg, spool, stream));
+
+        // Everything below is reused across messages so the steady state allocates nothing per record:
+        // payload bytes, scanned field slots, the JSON generator, and the body buffer(s).
+        final JmsPayload payload = new JmsPayload(OVERSIZED);
+        final TaisScanner scanner = new TaisScanner();
+        final RecordWriter writer = new RecordWriter();
+
+        // Records accumulated for the next POST. With TAIS_BATCH_MAX_RECORDS > 1 the body is a JSON array;
+        // CLIENT_ACKNOWLEDGE acks every message consumed so far, so nothing is acked while a batch is open.
+        final Batch batch = new Batch(cfg.batchMaxRecords > 1, delivery.acquire(), gzip);
+        boolean[] forward = new boolean[16];    // per-record decision for the current message
+
+        // Last forwarded callsign/beacon/rules per track; repeats are acked without a POST.
+        final TrackStateTable tracks = cfg.suppressUnchanged
+                ? new TrackStateTable(4096, cfg.keepAliveMs, cfg.trackTtlMs)
+                : null;
+        long nextEvictMs = System.currentTimeMillis() + cfg.trackTtlMs;
+
+        while (true) {
+            delivery.ackCompleted();
+
+            if (tracks != null && System.currentTimeMillis() >= nextEvictMs) {
+                tracks.evictStale(System.currentTimeMillis());
+                nextEvictMs = System.currentTimeMillis() + Math.max(1000, cfg.trackTtlMs / 4);
+            }
+
+            long waitMs = batch.isOpen() ? Math.max(1, batch.deadlineMs - System.currentTimeMillis()) : 1000;
+            if (delivery.hasPending()) waitMs = Math.min(waitMs, 20);
+            Message msg = consumer.receive(waitMs);
+            if (msg == null) {
+                if (batch.isOpen() && System.currentTimeMillis() >= batch.deadlineMs) {
+                    flushBatch(batch, delivery);
+                }
+                continue;
+            }
+            recordReceive(msg);
+
+            if (!payload.loadBytes(msg, cfg.maxBytes)) {
+                // Nothing to forward; ack together with the open batch instead of acking it early.
+                DROPPED.inc();
+                batch.addAckOnly(msg, cfg.batchLingerMs);
+                if (cfg.batchMaxRecords == 1) flushBatch(batch, delivery);
+                continue;
+            }
+
+            long parseStart = System.nanoTime();
+            if (!scanner.scan(payload.buf, 0, payload.len)) {
+                // Not ASCII-compatible (e.g. UTF-16): let StAX handle the encoding
+                scanner.fill(parseMinimalFields(xif, new ByteArrayInputStream(payload.buf, 0, payload.len)));
+            }
+            PARSE.since(parseStart);
+
+            // A message may carry several records; decide per record, then write the survivors
+            // into the same body so the whole message costs one parse and one POST.
+            int n = scanner.records();
+            if (forward.length < n) forward = new boolean[Math.max(n, forward.length * 2)];
+            int forwardCount = 0;
+            long now = System.currentTimeMillis();
+            for (int r = 0; r < n; r++) {
+                scanner.select(r);
+                boolean fwd = true;
+                if (tracks != null) {
+                    long key = trackKey(scanner);
+                    fwd = key < 0 || tracks.shouldForward((int) key, fingerprint(scanner, normalizeRules(scanner)), now);
+                }
+                forward[r] = fwd;
+                if (fwd) forwardCount++;
+            }
+            SUPPRESSED.add(n - forwardCount);
+
+            if (forwardCount == 0) {
+                batch.addAckOnly(msg, cfg.batchLingerMs);
+                if (cfg.batchMaxRecords == 1) flushBatch(batch, delivery);
+                continue;
+            }
+
+            // Serialize straight into the body buffer (then optionally print + post)
+            batch.beginMessage(forwardCount, cfg.batchLingerMs);
+            for (int r = 0; r < n; r++) {
+                if (!forward[r]) continue;
+                scanner.select(r);
+                int recordStart = batch.beginRecord();
+                long buildStart = System.nanoTime();
+                writer.write(batch.body, scanner, normalizeRules(scanner), now);
+                JSON_BUILD.since(buildStart);
+                batch.records++;
+                if (delivery.keyed()) batch.addKey(trackKey(scanner));
+                FORWARDED.inc();
+
+                if (cfg.printJson) {
+                    System.out.write(batch.body.array(), recordStart, batch.body.size() - recordStart);
+                    System.out.write('\n');
+                }
+            }
+            batch.messages.add(msg);
+            batch.compress();
+            if (cfg.printJson) System.out.flush();
+
+            // A message's records are never split across POSTs, so a batch may overshoot the limit slightly
+            if (cfg.batchMaxRecords == 1 || batch.records >= cfg.batchMaxRecords) {
+                flushBatch(batch, delivery);
+            }
+        }
+    }
+
+    // ---------------- Partitioned mode (TAIS_STRIPES / TAIS_CONSUMERS) ----------------
+
+    /**
+     * Multi-core variant of the main loop. TAIS_CONSUMERS receiver threads (each with its own session and
+     * consumer on the same queue) parse messages and hash every record by track key onto one of
+     * TAIS_STRIPES workers. A stripe owns its tracks outright: change suppression, JSON building,
+     * batching, and POSTs run there in arrival order, so per-track ordering holds without locks.
+     *
+     * A message is acked once all of its records have been posted (or suppressed), and only as part
+     * of its receiver's contiguous completed prefix, using Solace individual acks.
+     */
+    private static final class Partitioned {
+
+        // One record on its way to a stripe, plus the message it must be counted against
+        private record Item(TaisScanner record, int key, long sourceTs, Pending pending) {}
+
+        // Outstanding record count of one message; the last one to finish releases the ack slot
+        private static final class Pending {
+            private final AckWindow window;
+            private final AckWindow.Slot slot;
+            private final AtomicInteger remaining;
 
-        try (Connection conn = cf.createConnection();
-             Session session = conn.createSession(false, Session.CLIENT_ACKNOWLEDGE)) {
+            Pending(AckWindow window, AckWindow.Slot slot, int records) {
+                this.window = window;
+                this.slot = slot;
+                this.remaining = new AtomicInteger(records);
+            }
 
-            Queue queue = session.createQueue(cfg.queueName);
-            MessageConsumer consumer = session.createConsumer(queue);
+            void done() {
+                if (remaining.decrementAndGet() == 0) window.complete(slot);
+            }
+        }
 
-            conn.start();
-            System.out.println("Connected. Consuming queue: " + cfg.queueName);
+        private final Config cfg;
+        private final HttpClient http;
+        private final Spool spool;          // optional, shared by all stripes
+        private final StreamSink stream;    // optional, shared by all stripes
+        private final BodyGzip gzip;        // optional; each stripe compresses with its own copy
+        private final Stripe[] stripes;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
 
-            XMLInputFactory xif = XMLInputFactory.newFactory();
+        Partitioned(Config cfg, HttpClient http, Spool spool, StreamSink stream, BodyGzip gzip) {
+            this.cfg = cfg;
+            this.http = http;
+            this.spool = spool;
+            this.stream = stream;
+            this.gzip = gzip;
+            this.stripes = new Stripe[cfg.stripes];
+            for (int i = 0; i < stripes.length; i++) stripes[i] = new Stripe(i);
+        }
+
+        void run(MessageSource source) throws Exception {
+            List<Thread> threads = new ArrayList<>();
+            for (Stripe s : stripes) {
+                threads.add(start("tais-stripe-" + s.id, s::loop));
+            }
+
+            for (int i = 0; i < cfg.consumers; i++) {
+                MessageSource.Receiver consumer = source.createReceiver(SupportedProperty.SOL_CLIENT_ACKNOWLEDGE);
+                threads.add(start("tais-receiver-" + i, () -> receive(consumer)));
+            }
+
+            source.start();
+            System.out.println("Connected. Consuming " + source
+                    + " (consumers=" + cfg.consumers + ", stripes=" + cfg.stripes + ")");
+
+            // Any worker dying takes the whole pipeline down; unacked messages are redelivered on restart.
+            // Sessions are closed with the source.
+            try {
+                while (failure.get() == null) Thread.sleep(500);
+            } finally {
+                for (Thread t : threads) t.interrupt();
+            }
+            throw new IllegalStateException("TAIS pipeline worker failed", failure.get());
+        }
+
+        private Thread start(String name, ThrowingRunnable body) {
+            Thread t = new Thread(() -> {
+                try {
+                    body.run();
+                } catch (Throwable e) {
+                    if (failure.compareAndSet(null, e)) {
+                        System.err.println(Thread.currentThread().getName() + " failed: " + e);
+                    }
+                }
+            }, name);
+            t.setDaemon(true);
+            t.start();
+            return t;
+        }
+
+        // Receiver: parse, split into records, route each to its stripe. Acks run here (session thread).
+        private void receive(MessageSource.Receiver consumer) throws Exception {
+            final AckWindow window = new AckWindow(cfg.maxPendingMessages);
+            final JmsPayload payload = new JmsPayload(OVERSIZED);
+            final TaisScanner scanner = new TaisScanner();
+            final XMLInputFactory xif = XMLInputFactory.newFactory();
             trySet(xif, XMLInputFactory.SUPPORT_DTD, false);
             trySet(xif, "javax.xml.stream.isSupportingExternalEntities", false);
+            int roundRobin = 0;
+
+            while (failure.get() == null) {
+                window.ackCompleted();
 
-            while (true) {
-                Message msg = consumer.receive(1000);
+                Message msg = consumer.receive(window.isEmpty() ? 1000 : 20);
                 if (msg == null) continue;
+                recordReceive(msg);
 
-                byte[] xmlBytes = extractPayloadBytes(msg, cfg.maxBytes);
-                if (xmlBytes == null || xmlBytes.length == 0) {
-                    msg.acknowledge();
+                if (!payload.loadBytes(msg, cfg.maxBytes)) {
+                    DROPPED.inc();
+                    window.complete(window.open(msg));
                     continue;
                 }
+                long parseStart = System.nanoTime();
+                if (!scanner.scan(payload.buf, 0, payload.len)) {
+                    scanner.fill(parseMinimalFields(xif, new ByteArrayInputStream(payload.buf, 0, payload.len)));
+                }
+                PARSE.since(parseStart);
 
-                Map<String, String> fields = parseMinimalFields(xif, new ByteArrayInputStream(xmlBytes));
+                int n = scanner.records();
+                Pending pending = new Pending(window, window.open(msg), n);
+                long sourceTs = msg.getJMSTimestamp();
+                for (int r = 0; r < n; r++) {
+                    scanner.select(r);
+                    long key = trackKey(scanner);
+                    // Records without a track identity have no ordering to preserve; spread them round-robin
+                    int stripe = key >= 0 ? stripeOf((int) key) : (roundRobin++ & 0x7FFF_FFFF) % stripes.length;
+                    Item item = new Item(scanner.detach(), (int) key, sourceTs, pending);
+                    while (!stripes[stripe].queue.offer(item, 20, TimeUnit.MILLISECONDS)) {
+                        window.ackCompleted();
+                        if (failure.get() != null) return;
+                    }
+                }
+            }
+        }
 
-                ObjectNode out = MAPPER.createObjectNode();
-                out.put("receivedAt", Instant.now().toString());
+        private int stripeOf(int key) {
+            int h = key * 0x9E3779B9;
+            return ((h ^ (h >>> 16)) & 0x7FFF_FFFF) % stripes.length;
+        }
 
-                putIfPresent(out, "callsign", fields.get("acid"));
-                putIfPresent(out, "icao24", fields.get("acAddress"));
-                putIfPresent(out, "trackNum", fields.get("trackNum"));
-                putIfPresent(out, "beaconCode", firstNonNull(fields, "assignedBeaconCode", "reportedBeaconCode"));
+        private final class Stripe {
+            final int id;
+            final ArrayBlockingQueue<Item> queue = new ArrayBlockingQueue<>(4096);
 
-                putIfPresent(out, "flightRules", fields.get("flightRules"));
-                putIfPresent(out, "rawFlightRules", fields.get("rawFlightRules"));
-                out.put("rulesLabel", normalizeRules(fields.get("flightRules"), fields.get("rawFlightRules")));
+            Stripe(int id) { this.id = id; }
 
-                // Serialize once (then optionally print + post)
-                final String json = MAPPER.writeValueAsString(out);
+            void loop() throws Exception {
+                final RecordWriter writer = new RecordWriter();
+                final ByteSink body = new ByteSink(4096);
+                final BodyGzip gz = (gzip == null) ? null : gzip.copy();
+                final List<Pending> covered = new ArrayList<>();
+                // With competing consumers the table also drops updates older than what the stripe already applied
+                final TrackStateTable tracks = (cfg.suppressUnchanged || cfg.consumers > 1)
+                        ? new TrackStateTable(1024, cfg.suppressUnchanged ? cfg.keepAliveMs : 0, cfg.trackTtlMs)
+                        : null;
+                final boolean array = cfg.batchMaxRecords > 1;
+                int records = 0;
+                long deadlineMs = 0;
+                long oldestSourceTs = 0;
+                long nextEvictMs = System.currentTimeMillis() + cfg.trackTtlMs;
 
-                if (cfg.printJson) {
-                    System.out.println(json);
+                while (failure.get() == null) {
+                    long now = System.currentTimeMillis();
+                    if (tracks != null && now >= nextEvictMs) {
+                        tracks.evictStale(now);
+                        nextEvictMs = now + Math.max(1000, cfg.trackTtlMs / 4);
+                    }
+
+                    long waitMs = covered.isEmpty() ? 1000 : Math.max(1, deadlineMs - now);
+                    Item item = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        if (!covered.isEmpty() && System.currentTimeMillis() >= deadlineMs) {
+                            flush(body, gz, records, array, covered, oldestSourceTs);
+                            records = 0;
+                        }
+                        continue;
+                    }
+
+                    TaisScanner rec = item.record();
+                    int rules = normalizeRules(rec);
+                    now = System.currentTimeMillis();
+                    if (tracks != null && item.key() >= 0
+                            && !tracks.shouldForward(item.key(), fingerprint(rec, rules), now, item.sourceTs())) {
+                        SUPPRESSED.inc();
+                        item.pending().done();
+                        continue;
+                    }
+
+                    if (covered.isEmpty()) {
+                        deadlineMs = now + cfg.batchLingerMs;
+                        oldestSourceTs = item.sourceTs();
+                    }
+                    if (array) body.write(records == 0 ? '[' : ',');
+                    int recordStart = body.size();
+                    long buildStart = System.nanoTime();
+                    writer.write(body, rec, rules, now);
+                    if (gz != null) gz.update(body.array(), body.size());
+                    JSON_BUILD.since(buildStart);
+                    FORWARDED.inc();
+                    records++;
+                    covered.add(item.pending());
+
+                    if (cfg.printJson) {
+                        synchronized (System.out) {
+                            System.out.write(body.array(), recordStart, body.size() - recordStart);
+                            System.out.write('\n');
+                            System.out.flush();
+                        }
+                    }
+
+                    if (records >= cfg.batchMaxRecords) {
+                        flush(body, gz, records, array, covered, oldestSourceTs);
+                        records = 0;
+                    }
                 }
+            }
+
+            private void flush(ByteSink body, BodyGzip gz, int records, boolean array, List<Pending> covered,
+                               long oldestSourceTs) throws InterruptedException {
+                long start = System.nanoTime();
+                boolean posted = false;
+                if (records > 0 && stream != null) {
+                    if (array) body.write(']');
+                    // Stripes share the stream; waiting for the ack keeps the body buffer reusable
+                    posted = stream.post(body.array(), 0, body.size()).join();
+                } else if (records > 0 && cfg.postUrl != null) {
+                    if (array) body.write(']');
+                    byte[] zipped = (gz == null) ? null : gz.finish(body.array(), body.size());
+                    posted = (zipped != null)
+                            ? postWithRetry(http, cfg.postUrl, cfg.ingestToken, zipped, zipped.length,
+                                    cfg.httpRequestTimeoutMs, cfg.retrySleepMs, spool)
+                            : postWithRetry(http, cfg.postUrl, cfg.ingestToken, body.array(), body.size(),
+                                    cfg.httpRequestTimeoutMs, cfg.retrySleepMs, spool);
+                }
+                if (posted) recordPosted(start, oldestSourceTs);
+                for (Pending p : covered) p.done();
+                covered.clear();
+                body.reset();
+                if (gz != null) gz.reset();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    // POSTs the open batch (a single object, or a JSON array when batching or a message has several records),
+    // then acks every message in it.
+    private static void flushBatch(Batch batch, Delivery delivery) throws InterruptedException, JMSException {
+        ByteSink body = batch.finish();
+        delivery.send(batch.records > 0 ? body : null, batch.finishGzip(), batch.messages, batch.keys);
+        batch.reset(delivery.acquire());
+    }
+
+    /**
+     * Posts bodies and acks the messages they cover. With HTTP_MAX_IN_FLIGHT <= 1 this is the original
+     * blocking retry-then-ack and a single body buffer is reused; otherwise up to that many POSTs run
+     * concurrently from pooled buffers and acks are released in receive order through an {@link AckWindow}.
+     * Concurrent POSTs still never carry the same track at once: a body waits for the earlier ones sharing
+     * a track with it ({@link KeyedOrder}), so Node receives each track's updates in order.
+     */
+    private static final class Delivery implements AutoCloseable {
+        private final HttpClient http;
+        private final Config cfg;
+        private final AckWindow window;     // null = blocking mode
+        private final IngestSink poster;    // null when not posting or blocking
+        private final Spool spool;          // optional (TAIS_SPOOL_DIR)
+        private final KeyedOrder<Long> order;   // per-track order of concurrent POSTs; null unless pipelined POSTs
 
-                if (cfg.postUrl != null) {
-                    // Retry POST until success, then ACK.
+        private final ByteSink single = new ByteSink(4096);
+        private final ConcurrentLinkedQueue<ByteSink> pool = new ConcurrentLinkedQueue<>();
+
+        Delivery(HttpClient http, Config cfg, Spool spool, StreamSink stream) {
+            this.http = http;
+            this.cfg = cfg;
+            this.spool = spool;
+            this.window = cfg.maxInFlight > 1 ? new AckWindow(cfg.maxInFlight) : null;
+            if (stream != null) {
+                this.poster = stream;
+            } else if (window != null && cfg.postUrl != null) {
+                this.poster = new AsyncPoster(http, cfg.postUrl, "application/json", "X-TAIS-Token", cfg.ingestToken,
+                        cfg.httpRequestTimeoutMs, cfg.retrySleepMs, "POST", spool, RETRIES);
+            } else {
+                this.poster = null;
+            }
+            this.order = (poster instanceof AsyncPoster) ? new KeyedOrder<>() : null;
+        }
+
+        /** True when bodies must list their track keys ({@link Batch#addKey}). */
+        boolean keyed() {
+            return order != null;
+        }
+
+        /** Empty buffer for the next body. Blocking mode always hands back the same one. */
+        ByteSink acquire() {
+            ByteSink b = (window == null) ? single : pool.poll();
+            if (b == null) b = new ByteSink(4096);
+            b.reset();
+            return b;
+        }
+
+        // body may be null when there is nothing to post (e.g. a batch of dropped messages);
+        // gz, when not null, is its gzip encoding and is posted instead
+        void send(ByteSink body, byte[] gz, List<Message> acks, List<Long> keys) throws InterruptedException, JMSException {
+            long start = System.nanoTime();
+            long oldestTs = acks.get(0).getJMSTimestamp();
+            if (window == null) {
+                if (body != null && cfg.postUrl != null) {
+                    // Retry POST until success (or until spooled to disk), then ACK.
                     // This prevents message loss if your Next server is down.
-                    postWithRetry(http, cfg.postUrl, cfg.ingestToken, json, cfg.httpRequestTimeoutMs, cfg.retrySleepMs);
+                    if (postWithRetry(http, cfg.postUrl, cfg.ingestToken, gz != null ? gz : body.array(),
+                            gz != null ? gz.length : body.size(), cfg.httpRequestTimeoutMs, cfg.retrySleepMs, spool)) {
+                        recordPosted(start, oldestTs);
+                    }
                 }
+                // CLIENT_ACKNOWLEDGE: acking the newest message acks everything before it
+                acks.get(acks.size() - 1).acknowledge();
+                return;
+            }
 
-                msg.acknowledge();
+            AckWindow.Slot slot = window.open(acks.toArray(new Message[0]));
+            if (body == null || poster == null) {
+                if (body != null) pool.offer(body);
+                window.complete(slot);
+                return;
             }
+            CompletableFuture<Boolean> sent = (order == null)
+                    ? post(body, gz)
+                    : order.post(List.copyOf(keys), () -> post(body, gz));
+            sent.thenAccept(posted -> {
+                if (posted) recordPosted(start, oldestTs);
+                pool.offer(body);
+                window.complete(slot);
+            });
+        }
+
+        private CompletableFuture<Boolean> post(ByteSink body, byte[] gz) {
+            return (gz != null)
+                    ? poster.post(gz, 0, gz.length)
+                    : poster.post(body.array(), 0, body.size());
+        }
+
+        void ackCompleted() throws JMSException {
+            if (window != null) window.ackCompleted();
+        }
+
+        boolean hasPending() {
+            return window != null && !window.isEmpty();
+        }
+
+        // Stops retries of the POSTs still in flight; a stream is closed by its owner
+        @Override
+        public void close() {
+            if (poster instanceof AsyncPoster) poster.close();
         }
     }
 
-    private static void postWithRetry(
-            HttpClient http,
-            URI url,
-            String token,
-            String json,
-            int requestTimeoutMs,
-            int retrySleepMs
-    ) throws InterruptedException {
-        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+    private static final class Batch {
+        private final boolean batching;     // TAIS_BATCH_MAX_RECORDS > 1: body is always an array
+        private boolean arrayBody;
+        private final BodyGzip gzip;        // optional: compresses the body as messages are added
+        ByteSink body;
+        final List<Message> messages = new ArrayList<>();
+        final List<Long> keys = new ArrayList<>();     // tracks in the body, only when Delivery.keyed()
+        int records = 0;
+        long deadlineMs = 0;
 
-        while (true) {
-            try {
-                HttpRequest req = HttpRequest.newBuilder(url)
-                        .timeout(Duration.ofMillis(requestTimeoutMs))
-                        .header("Content-Type", "application/json")
-                        .header("X-TAIS-Token", token)
-                        .POST(HttpRequest.BodyPublishers.ofByteArray(body))
-                        .build();
-
-                HttpResponse<Void> resp = http.send(req, HttpResponse.BodyHandlers.discarding());
-                int code = resp.statusCode();
-                if ((code >= 200 && code < 300) || code == 204) return;
-
-                System.err.println("POST failed: HTTP " + code);
-            } catch (Exception e) {
-                System.err.println("POST error: " + e.getMessage());
-            }
+        Batch(boolean batching, ByteSink body, BodyGzip gzip) {
+            this.batching = batching;
+            this.body = body;
+            this.gzip = gzip;
+        }
 
-            Thread.sleep(retrySleepMs);
+        boolean isOpen() { return !messages.isEmpty(); }
+
+        void beginMessage(int recordCount, int lingerMs) {
+            open(lingerMs);
+            if (records == 0) arrayBody = batching || recordCount > 1;
+        }
+
+        // Writes the separator for the next record and returns where the record itself starts.
+        int beginRecord() {
+            if (arrayBody) body.write(records == 0 ? '[' : ',');
+            return body.size();
+        }
+
+        void addKey(long trackKey) {
+            if (trackKey >= 0) keys.add(trackKey);
+        }
+
+        void addAckOnly(Message msg, int lingerMs) {
+            open(lingerMs);
+            messages.add(msg);
+        }
+
+        // Compresses what the last message appended, so little is left to do when the batch is flushed.
+        void compress() {
+            if (gzip != null) gzip.update(body.array(), body.size());
+        }
+
+        ByteSink finish() {
+            if (arrayBody && records > 0) body.write(']');
+            return body;
+        }
+
+        // After finish(): the gzip body to post instead, or null (no gzip, nothing to post, or below the threshold)
+        byte[] finishGzip() {
+            return (gzip == null || records == 0) ? null : gzip.finish(body.array(), body.size());
+        }
+
+        void reset(ByteSink next) {
+            if (gzip != null) gzip.reset();
+            body = next;
+            records = 0;
+            messages.clear();
+            keys.clear();
+        }
+
+        private void open(int lingerMs) {
+            if (messages.isEmpty()) deadlineMs = System.currentTimeMillis() + lingerMs;
         }
     }
 
-    private static String normalizeRules(String flightRules, String rawFlightRules) {
-        if (flightRules != null) {
-            String v = flightRules.trim().toUpperCase(Locale.ROOT);
-            if (v.equals("I") || v.equals("IFR")) return "IFR";
-            if (v.equals("V") || v.equals("VFR")) return "VFR";
-            if (v.equals("D") || v.equals("DVFR")) return "DVFR";
+    /**
+     * One record object written with a long-lived streaming generator. The generator's output is
+     * redirected to whichever body buffer is current, and flushed after every record so the caller
+     * can write batch separators directly into the buffer.
+     */
+    static final class RecordWriter {
+        private static final SerializedString RECEIVED_AT = new SerializedString("receivedAt");
+        private static final SerializedString CALLSIGN = new SerializedString("callsign");
+        private static final SerializedString ICAO24 = new SerializedString("icao24");
+        private static final SerializedString TRACK_NUM = new SerializedString("trackNum");
+        private static final SerializedString BEACON_CODE = new SerializedString("beaconCode");
+        private static final SerializedString FLIGHT_RULES = new SerializedString("flightRules");
+        private static final SerializedString RAW_FLIGHT_RULES = new SerializedString("rawFlightRules");
+        private static final SerializedString RULES_LABEL = new SerializedString("rulesLabel");
+
+        private final Redirect out = new Redirect();
+        private final JsonGenerator gen;
+        private final byte[] ts = new byte[24];
+
+        RecordWriter() throws IOException {
+            gen = JSON.createGenerator(out);
+            gen.setRootValueSeparator(null);
         }
-        if (rawFlightRules != null) {
-            String v = rawFlightRules.trim().toUpperCase(Locale.ROOT);
-            if (v.equals("E")) return "IFR";
-            if (v.equals("V")) return "VFR";
-            if (v.equals("P")) return "VFR-ON-TOP";
+
+        void write(ByteSink body, TaisScanner sc, int rules, long receivedAtMs) throws IOException {
+            out.target = body;
+
+            gen.writeStartObject();
+            gen.writeFieldName(RECEIVED_AT);
+            gen.writeUTF8String(ts, 0, formatIsoMillis(receivedAtMs, ts));
+
+            field(CALLSIGN, sc, TaisScanner.ACID);
+            field(ICAO24, sc, TaisScanner.AC_ADDRESS);
+            field(TRACK_NUM, sc, TaisScanner.TRACK_NUM);
+            field(BEACON_CODE, sc, sc.has(TaisScanner.ASSIGNED_BEACON_CODE)
+                    ? TaisScanner.ASSIGNED_BEACON_CODE
+                    : TaisScanner.REPORTED_BEACON_CODE);
+
+            field(FLIGHT_RULES, sc, TaisScanner.FLIGHT_RULES);
+            field(RAW_FLIGHT_RULES, sc, TaisScanner.RAW_FLIGHT_RULES);
+            gen.writeFieldName(RULES_LABEL);
+            gen.writeString(RULES_LABELS[rules]);
+
+            gen.writeEndObject();
+            gen.flush();
+        }
+
+        private void field(SerializedString name, TaisScanner sc, int f) throws IOException {
+            if (!sc.has(f)) return;
+            gen.writeFieldName(name);
+            gen.writeUTF8String(sc.buffer(), sc.start(f), sc.length(f));
         }
-        return "UNKNOWN";
     }
 
-    private static void putIfPresent(ObjectNode n, String key, String val) {
-        if (val != null && !val.isBlank()) n.put(key, val);
+    private static final class Redirect extends OutputStream {
+        ByteSink target;
+
+        @Override public void write(int b) { target.write(b); }
+        @Override public void write(byte[] b, int off, int len) { target.write(b, off, len); }
     }
 
-    private static String firstNonNull(Map<String, String> m, String... keys) {
-        for (String k : keys) {
-            String v = m.get(k);
-            if (v != null && !v.isBlank()) return v;
-        }
-        return null;
+    // ISO-8601 UTC with millisecond precision ("2024-05-01T12:34:56.789Z") without going through Instant.toString().
+    private static int formatIsoMillis(long epochMs, byte[] out) {
+        long days = Math.floorDiv(epochMs, 86_400_000L);
+        int msOfDay = (int) Math.floorMod(epochMs, 86_400_000L);
+
+        // civil-from-days (proleptic Gregorian)
+        long z = days + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long doe = z - era * 146_097;
+        long yoe = (doe - doe / 1460 + doe / 36_524 - doe / 146_096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        int year = (int) (yoe + era * 400 + (month <= 2 ? 1 : 0));
+
+        digits(out, 0, year, 4);
+        out[4] = '-';
+        digits(out, 5, month, 2);
+        out[7] = '-';
+        digits(out, 8, day, 2);
+        out[10] = 'T';
+        digits(out, 11, msOfDay / 3_600_000, 2);
+        out[13] = ':';
+        digits(out, 14, (msOfDay / 60_000) % 60, 2);
+        out[16] = ':';
+        digits(out, 17, (msOfDay / 1000) % 60, 2);
+        out[19] = '.';
+        digits(out, 20, msOfDay % 1000, 3);
+        out[23] = 'Z';
+        return 24;
     }
 
-    private static String normalizeJmsHostList(String raw) {
-        if (raw == null) {
-            return "";
+    private static void digits(byte[] out, int at, int v, int width) {
+        for (int i = at + width - 1; i >= at; i--) {
+            out[i] = (byte) ('0' + v % 10);
+            v /= 10;
         }
-        String[] parts = raw.split(",");
-        StringBuilder out = new StringBuilder(raw.length());
-        for (String part : parts) {
-            String token = part.trim();
-            if (token.isEmpty()) {
+    }
+
+    private static void recordReceive(Message msg) throws JMSException {
+        RECEIVED.inc();
+        long ts = msg.getJMSTimestamp();
+        if (ts > 0) RECEIVE_LAG.recordMillis(System.currentTimeMillis() - ts);
+    }
+
+    private static void recordPosted(long startNanos, long oldestSourceTs) {
+        POSTS.inc();
+        POST.since(startNanos);
+        if (oldestSourceTs > 0) POST_LAG.recordMillis(System.currentTimeMillis() - oldestSourceTs);
+    }
+
+    // ---------------- Spool (TAIS_SPOOL_DIR) ----------------
+
+    // /api/flightRules reads at most 1 MiB of decoded body; merged replay POSTs stay well below that
+    private static final int REPLAY_MAX_BYTES = 512 * 1024;
+
+    private static Spool openSpool(Config cfg, HttpClient http) throws IOException {
+        if (cfg.spoolDir == null || cfg.postUrl == null) return null;
+        ByteSink merged = new ByteSink(64 * 1024);
+        return new Spool(cfg.spoolDir, cfg.spoolSegmentBytes, "TAIS", bodies -> {
+            int posts = replayMerged(bodies, merged, cfg, http);
+            System.out.println("Replayed " + bodies.size() + " spooled bodies in " + posts + " POSTs");
+        });
+    }
+
+    // Each body is a single record object or an array of them, possibly gzip; their records are flattened
+    // into JSON arrays of at most REPLAY_MAX_BYTES uncompressed (a larger single body goes out alone).
+    // Returns the number of POSTs.
+    private static int replayMerged(List<byte[]> bodies, ByteSink out, Config cfg, HttpClient http)
+            throws InterruptedException {
+        int posts = 0;
+        int merged = 0;
+        out.reset();
+        for (byte[] body : bodies) {
+            byte[] b;
+            try {
+                b = BodyGzip.plain(body);
+            } catch (IOException e) {
+                System.err.println("Skipping unreadable spooled body: " + e.getMessage());
                 continue;
             }
+            int from = 0, to = b.length;
+            if (to > 0 && b[0] == '[') {
+                from = 1;
+                to = b.length - 1;
+                if (to <= from) continue;
+            }
+            if (merged > 0 && out.size() + (to - from) + 2 > REPLAY_MAX_BYTES) {
+                out.write(']');
+                postWithRetry(http, cfg.postUrl, cfg.ingestToken, out.array(), out.size(),
+                        cfg.httpRequestTimeoutMs, cfg.retrySleepMs, null);
+                posts++;
+                merged = 0;
+                out.reset();
+            }
+            out.write(merged == 0 ? '[' : ',');
+            out.write(b, from, to - from);
+            merged++;
+        }
+        if (merged > 0) {
+            out.write(']');
+            postWithRetry(http, cfg.postUrl, cfg.ingestToken, out.array(), out.size(),
+                    cfg.httpRequestTimeoutMs, cfg.retrySleepMs, null);
+            posts++;
+        }
+        return posts;
+    }
 
-            String normalized;
-            int idx = token.indexOf("://");
-            if (idx > 0 && idx + 3 < token.length()) {
-                String scheme = token.substring(0, idx).toLowerCase(Locale.ROOT);
-                String hostPort = token.substring(idx + 3);
-                while (hostPort.endsWith("/")) {
-                    hostPort = hostPort.substring(0, hostPort.length() - 1);
-                }
+    // With a spool, a failed POST is written to disk instead of retried (and bodies queue behind
+    // undrained spooled ones). Returns true if posted, false if spooled. A 413 is not retried (nor
+    // spooled): the same body would be refused again, and retrying would stall everything behind it.
+    // The body is logged as dropped and false returned.
+    private static boolean postWithRetry(
+            HttpClient http,
+            URI url,
+            String token,
+            byte[] body,
+            int length,
+            int requestTimeoutMs,
+            int retrySleepMs,
+            Spool spool
+    ) throws InterruptedException {
+        boolean tryPost = spool == null || !spool.isActive();
+        while (true) {
+            if (tryPost) {
+                try {
+                    HttpRequest.Builder b = HttpRequest.newBuilder(url)
+                            .timeout(Duration.ofMillis(requestTimeoutMs))
+                            .header("Content-Type", "application/json")
+                            .header("X-TAIS-Token", token)
+                            .POST(new ArrayBodyPublisher(body, 0, length));
+                    if (BodyGzip.isGzip(body, 0, length)) {
+                        b.header("Content-Encoding", BodyGzip.ENCODING);
+                    }
 
-                if (scheme.equals("tcps")) {
-                    normalized = "smfs://" + hostPort;
-                } else if (scheme.equals("tcp")) {
-                    normalized = "smf://" + hostPort;
-                } else if (scheme.equals("smfs") || scheme.equals("smf")) {
-                    normalized = scheme + "://" + hostPort;
-                } else {
-                    normalized = token;
-                }
-            } else {
-                while (token.endsWith("/")) {
-                    token = token.substring(0, token.length() - 1);
+                    HttpResponse<Void> resp = http.send(b.build(), HttpResponse.BodyHandlers.discarding());
+                    int code = resp.statusCode();
+                    if ((code >= 200 && code < 300) || code == 204) return true;
+                    if (code == 413) {
+                        REJECTED.inc();
+                        System.err.println("POST failed: HTTP 413, dropping a body of " + length + " bytes");
+                        return false;
+                    }
+
+                    System.err.println("POST failed: HTTP " + code);
+                } catch (Exception e) {
+                    System.err.println("POST error: " + e.getMessage());
                 }
-                normalized = token;
             }
 
-            if (normalized.isEmpty()) {
-                continue;
-            }
-            if (!out.isEmpty()) {
-                out.append(',');
+            if (spool != null) {
+                try {
+                    spool.append(body, 0, length);
+                    return false;
+                } catch (IOException e) {
+                    // Disk full or similar: fall back to retrying the endpoint
+                    System.err.println("Spool error: " + e.getMessage());
+                }
             }
-            out.append(normalized);
+            tryPost = true;
+            RETRIES.inc();
+            Thread.sleep(retrySleepMs);
         }
-        return out.isEmpty() ? raw.trim() : out.toString();
     }
 
-    private static void trySet(XMLInputFactory f, String prop, Object value) {
-        try { f.setProperty(prop, value); } catch (Exception ignored) {}
+    private static final String[] RULES_LABELS = { "IFR", "VFR", "DVFR", "VFR-ON-TOP", "UNKNOWN" };
+    private static final int RULES_IFR = 0, RULES_VFR = 1, RULES_DVFR = 2, RULES_VFR_ON_TOP = 3, RULES_UNKNOWN = 4;
+
+    private static final byte[] I = ascii("I"), IFR = ascii("IFR");
+    private static final byte[] V = ascii("V"), VFR = ascii("VFR");
+    private static final byte[] D = ascii("D"), DVFR = ascii("DVFR");
+    private static final byte[] E = ascii("E"), P = ascii("P");
+
+    // Returns an index into RULES_LABELS
+    static int normalizeRules(TaisScanner sc) {
+        int f = TaisScanner.FLIGHT_RULES;
+        if (sc.has(f)) {
+            if (sc.equalsIgnoreCase(f, I) || sc.equalsIgnoreCase(f, IFR)) return RULES_IFR;
+            if (sc.equalsIgnoreCase(f, V) || sc.equalsIgnoreCase(f, VFR)) return RULES_VFR;
+            if (sc.equalsIgnoreCase(f, D) || sc.equalsIgnoreCase(f, DVFR)) return RULES_DVFR;
+        }
+        int r = TaisScanner.RAW_FLIGHT_RULES;
+        if (sc.has(r)) {
+            if (sc.equalsIgnoreCase(r, E)) return RULES_IFR;
+            if (sc.equalsIgnoreCase(r, V)) return RULES_VFR;
+            if (sc.equalsIgnoreCase(r, P)) return RULES_VFR_ON_TOP;
+        }
+        return RULES_UNKNOWN;
     }
 
-    private static byte[] extractPayloadBytes(Message msg, int maxBytes) throws JMSException {
-        if (msg instanceof BytesMessage bm) {
-            long len = bm.getBodyLength();
-            if (len <= 0) return new byte[0];
-            if (len > maxBytes) {
-                System.err.println("Dropping oversized BytesMessage: " + len + " bytes");
-                return new byte[0];
-            }
-            byte[] out = new byte[(int) len];
-            bm.readBytes(out);
-            return out;
-        }
-        if (msg instanceof TextMessage tm) {
-            String s = tm.getText();
-            if (s == null) return new byte[0];
-            byte[] out = s.getBytes(StandardCharsets.UTF_8);
-            if (out.length > maxBytes) {
-                System.err.println("Dropping oversized TextMessage: " + out.length + " bytes");
-                return new byte[0];
-            }
-            return out;
+    // Table key for a track: the 24-bit ICAO address, else the STARS track number tagged with the high bit.
+    // Returns -1 when the record carries neither.
+    private static long trackKey(TaisScanner sc) {
+        long a = sc.parseUnsigned(TaisScanner.AC_ADDRESS, 16);
+        if (a >= 0 && a <= 0xFFFFFF) return a;
+        long t = sc.parseUnsigned(TaisScanner.TRACK_NUM, 10);
+        if (t >= 0 && t <= Integer.MAX_VALUE) return (t | 0x8000_0000L);
+        return -1;
+    }
+
+    // FNV-1a over the fields whose change is worth forwarding: callsign, beacon code, rules label.
+    private static long fingerprint(TaisScanner sc, int rules) {
+        long h = 0xcbf29ce484222325L;
+        h = fnv(h, sc, TaisScanner.ACID);
+        h = fnv(h, sc, sc.has(TaisScanner.ASSIGNED_BEACON_CODE)
+                ? TaisScanner.ASSIGNED_BEACON_CODE
+                : TaisScanner.REPORTED_BEACON_CODE);
+        h ^= rules;
+        h *= 0x100000001b3L;
+        return h;
+    }
+
+    private static long fnv(long h, TaisScanner sc, int f) {
+        byte[] b = sc.buffer();
+        for (int i = sc.start(f), end = i + sc.length(f); i < end; i++) {
+            h ^= (b[i] & 0xFF);
+            h *= 0x100000001b3L;
         }
-        return null;
+        h ^= 0x1F;                      // field separator, so ("AB", "") != ("A", "B")
+        h *= 0x100000001b3L;
+        return h;
     }
 
-    private static Map<String, String> parseMinimalFields(XMLInputFactory xif, InputStream in)
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void trySet(XMLInputFactory f, String prop, Object value) {
+        try { f.setProperty(prop, value); } catch (Exception ignored) {}
+    }
+
+    static Map<String, String> parseMinimalFields(XMLInputFactory xif, InputStream in)
             throws XMLStreamException {
         Map<String, String> out = new HashMap<>(16);
         XMLStreamReader r = xif.createXMLStreamReader(in);
@@ -300,17 +1048,47 @@ public final class TaisJsonConsumer {
         final int maxBytes;
 
         final URI postUrl;               // optional
+        final URI streamUrl;             // optional: stream NDJSON here instead of POSTing
         final String ingestToken;        // required if postUrl set
         final boolean printJson;
 
         final int httpConnectTimeoutMs;
         final int httpRequestTimeoutMs;
         final int retrySleepMs;
+        final String contentEncoding;    // identity (default) or gzip, for POST bodies
+        final int compressMinBytes;      // smaller bodies are posted uncompressed
+
+        final int batchMaxRecords;       // 1 = one POST per message
+        final int batchLingerMs;         // max time a partial batch waits before it is flushed
+        final int maxInFlight;           // 1 = blocking POST-then-ack
+
+        final boolean suppressUnchanged; // only forward a track when callsign/beacon/rules change
+        final long keepAliveMs;          // re-forward unchanged tracks at least this often
+        final long trackTtlMs;           // forget tracks not seen for this long
+
+        final int stripes;               // partitioned mode: worker threads, records hashed by track
+        final int consumers;             // partitioned mode: competing JMS consumers on the queue
+        final int maxPendingMessages;    // partitioned mode: unacked messages per consumer
+
+        final Path spoolDir;             // optional: spool rejected bodies here instead of retrying
+        final int spoolSegmentBytes;
+
+        final int metricsPort;           // 0 = no /metrics endpoint
+
+        final Path recordFile;           // optional: capture every received message here
+        final Path replayFile;           // optional: read messages from this capture instead of JMS
+        final double replaySpeed;        // 1 = recorded pace, N = N times faster, 0 = as fast as possible
 
         private Config(
                 String jmsUrl, String vpn, String username, String password, String queueName, int maxBytes,
-                URI postUrl, String ingestToken, boolean printJson,
-                int httpConnectTimeoutMs, int httpRequestTimeoutMs, int retrySleepMs
+                URI postUrl, URI streamUrl, String ingestToken, boolean printJson,
+                int httpConnectTimeoutMs, int httpRequestTimeoutMs, int retrySleepMs,
+                String contentEncoding, int compressMinBytes,
+                int batchMaxRecords, int batchLingerMs, int maxInFlight,
+                boolean suppressUnchanged, long keepAliveMs, long trackTtlMs,
+                int stripes, int consumers, int maxPendingMessages,
+                Path spoolDir, int spoolSegmentBytes, int metricsPort,
+                Path recordFile, Path replayFile, double replaySpeed
         ) {
             this.jmsUrl = jmsUrl;
             this.vpn = vpn;
@@ -319,38 +1097,119 @@ public final class TaisJsonConsumer {
             this.queueName = queueName;
             this.maxBytes = maxBytes;
             this.postUrl = postUrl;
+            this.streamUrl = streamUrl;
             this.ingestToken = ingestToken;
             this.printJson = printJson;
             this.httpConnectTimeoutMs = httpConnectTimeoutMs;
             this.httpRequestTimeoutMs = httpRequestTimeoutMs;
             this.retrySleepMs = retrySleepMs;
+            this.contentEncoding = contentEncoding;
+            this.compressMinBytes = compressMinBytes;
+            this.batchMaxRecords = batchMaxRecords;
+            this.batchLingerMs = batchLingerMs;
+            this.maxInFlight = maxInFlight;
+            this.suppressUnchanged = suppressUnchanged;
+            this.keepAliveMs = keepAliveMs;
+            this.trackTtlMs = trackTtlMs;
+            this.stripes = stripes;
+            this.consumers = consumers;
+            this.maxPendingMessages = maxPendingMessages;
+            this.spoolDir = spoolDir;
+            this.spoolSegmentBytes = spoolSegmentBytes;
+            this.metricsPort = metricsPort;
+            this.recordFile = recordFile;
+            this.replayFile = replayFile;
+            this.replaySpeed = replaySpeed;
         }
 
         static Config fromEnv() {
-            String url = must("SCDS_JMS_URL_TAIS");
-            String vpn = must("SCDS_VPN_TAIS");
-            String user = must("SCDS_USERNAME");
-            String pass = must("SCDS_PASSWORD");
-            String q = must("SCDS_QUEUE_TAIS");
-            int max = parseIntOrDefault(System.getenv("TAIS_MAX_BYTES"), 10 * 1024 * 1024);
+            return fromEnv(System::getenv);
+        }
+
+        // env: the consumer's settings by environment variable name (a pipeline's settings in IngestHost)
+        static Config fromEnv(Function<String, String> env) {
+            // Optional offline source: replay a capture instead of connecting to SWIM (no JMS settings needed)
+            Path replay = optionalPath(env.apply("TAIS_REPLAY_FILE"));
+            double speed = ReplaySource.parseSpeed(env.apply("TAIS_REPLAY_SPEED"), 1);
+            // Optional capture of everything received, for later replay
+            Path record = optionalPath(env.apply("TAIS_RECORD_FILE"));
+
+            String url = jms(env, "SCDS_JMS_URL_TAIS", replay);
+            String vpn = jms(env, "SCDS_VPN_TAIS", replay);
+            String user = jms(env, "SCDS_USERNAME", replay);
+            String pass = jms(env, "SCDS_PASSWORD", replay);
+            String q = jms(env, "SCDS_QUEUE_TAIS", replay);
+            int max = parseIntOrDefault(env.apply("TAIS_MAX_BYTES"), 10 * 1024 * 1024);
 
             // Optional posting
-            String post = System.getenv("FLIGHTRULES_POST_URL");
+            String post = env.apply("FLIGHTRULES_POST_URL");
             URI postUrl = (post == null || post.isBlank()) ? null : URI.create(post.trim());
 
+            // Optional streaming (e.g. http://localhost:8081/api/flightRules/stream; Node serves streams on
+            // INGEST_STREAM_PORT, not PORT); takes precedence over POSTs
+            String stream = env.apply("TAIS_STREAM_URL");
+            URI streamUrl = (stream == null || stream.isBlank()) ? null : URI.create(stream.trim());
+
             // If posting, require token
-            String token = System.getenv("TAIS_INGEST_TOKEN");
+            String token = env.apply("TAIS_INGEST_TOKEN");
             if (postUrl != null && (token == null || token.isBlank())) {
                 throw new IllegalArgumentException("FLIGHTRULES_POST_URL is set but TAIS_INGEST_TOKEN is missing");
             }
+            if (streamUrl != null && (token == null || token.isBlank())) {
+                throw new IllegalArgumentException("TAIS_STREAM_URL is set but TAIS_INGEST_TOKEN is missing");
+            }
+
+            boolean print = parseBoolOrDefault(env.apply("PRINT_JSON"), true);
+
+            int cto = parseIntOrDefault(env.apply("HTTP_CONNECT_TIMEOUT_MS"), 1500);
+            int rto = parseIntOrDefault(env.apply("HTTP_REQUEST_TIMEOUT_MS"), 1500);
+            int rs  = parseIntOrDefault(env.apply("HTTP_RETRY_SLEEP_MS"), 200);
+
+            // Optional compressed POST bodies (the Node server accepts gzip)
+            String encoding = env.apply("HTTP_CONTENT_ENCODING");
+            int compressMin = Math.max(0, parseIntOrDefault(env.apply("HTTP_COMPRESS_MIN_BYTES"), 8192));
+
+            // Optional batching: flush at N records or after linger ms, whichever comes first
+            int batchMax = Math.max(1, parseIntOrDefault(env.apply("TAIS_BATCH_MAX_RECORDS"), 1));
+            int linger = Math.max(1, parseIntOrDefault(env.apply("TAIS_BATCH_LINGER_MS"), 250));
 
-            boolean print = parseBoolOrDefault(System.getenv("PRINT_JSON"), true);
+            // Optional pipelining: number of POSTs allowed in flight at once.
+            // Streaming always pipelines: the window bounds records awaiting the server's ack.
+            // Either way each track's updates reach Node in order: concurrent POSTs never share a track.
+            int inFlight = streamUrl == null
+                    ? Math.max(1, parseIntOrDefault(env.apply("HTTP_MAX_IN_FLIGHT"), 1))
+                    : Math.max(2, parseIntOrDefault(env.apply("HTTP_MAX_IN_FLIGHT"), 256));
 
-            int cto = parseIntOrDefault(System.getenv("HTTP_CONNECT_TIMEOUT_MS"), 1500);
-            int rto = parseIntOrDefault(System.getenv("HTTP_REQUEST_TIMEOUT_MS"), 1500);
-            int rs  = parseIntOrDefault(System.getenv("HTTP_RETRY_SLEEP_MS"), 200);
+            // Change suppression per track (keyed by acAddress, falling back to trackNum)
+            boolean suppress = parseBoolOrDefault(env.apply("TAIS_SUPPRESS_UNCHANGED"), true);
+            int keepAlive = Math.max(1000, parseIntOrDefault(env.apply("TAIS_KEEPALIVE_MS"), 30_000));
+            int ttl = Math.max(keepAlive, parseIntOrDefault(env.apply("TAIS_TRACK_TTL_MS"), 300_000));
+
+            // Partitioned mode: parse on N consumers, process records on M track-hashed stripes
+            int stripes = Math.max(1, parseIntOrDefault(env.apply("TAIS_STRIPES"), 1));
+            int consumers = Math.max(1, parseIntOrDefault(env.apply("TAIS_CONSUMERS"), 1));
+            int maxPending = Math.max(1, parseIntOrDefault(env.apply("TAIS_MAX_PENDING_MESSAGES"), 4096));
+
+            // Optional disk spool for when the endpoint is down
+            String spool = env.apply("TAIS_SPOOL_DIR");
+            Path spoolDir = (spool == null || spool.isBlank()) ? null : Path.of(spool.trim());
+            int segment = parseIntOrDefault(env.apply("SPOOL_SEGMENT_BYTES"), 64 * 1024 * 1024);
+
+            // Optional Prometheus-style metrics endpoint
+            int metricsPort = parseIntOrDefault(env.apply("TAIS_METRICS_PORT"), 0);
+
+            return new Config(url, vpn, user, pass, q, max, postUrl, streamUrl, token, print, cto, rto, rs,
+                    encoding, compressMin, batchMax, linger, inFlight, suppress, keepAlive, ttl, stripes, consumers, maxPending,
+                    spoolDir, segment, metricsPort, record, replay, speed);
+        }
+
+        private static Path optionalPath(String s) {
+            return (s == null || s.isBlank()) ? null : Path.of(s.trim());
+        }
 
-            return new Config(url, vpn, user, pass, q, max, postUrl, token, print, cto, rto, rs);
+        // JMS settings are required unless messages come from a replay file
+        private static String jms(Function<String, String> env, String k, Path replay) {
+            return replay == null ? must(env, k) : env.apply(k);
         }
 
         private static int parseIntOrDefault(String s, int def) {
@@ -364,8 +1223,8 @@ public final class TaisJsonConsumer {
             return v.equals("1") || v.equals("true") || v.equals("yes") || v.equals("y");
         }
 
-        private static String must(String k) {
-            String v = System.getenv(k);
+        private static String must(Function<String, String> env, String k) {
+            String v = env.apply(k);
             if (v == null || v.isBlank()) throw new IllegalArgumentException("Missing env var: " + k);
             return v;
         }
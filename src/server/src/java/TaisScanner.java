@@ -0,0 +1,435 @@
+package dev.vstars;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Allocation-free extractor for the handful of leaf elements the TAIS consumer forwards.
+ *
+ * Scans the raw UTF-8 payload bytes and records each wanted value as an (offset, length) slot into
+ * the payload buffer, so a message costs no XMLStreamReader, map, or per-tag StringBuilder.
+ * Matching is namespace-agnostic (local names), values are trimmed, and the last occurrence wins,
+ * mirroring {@code TaisJsonConsumer.parseMinimalFields}. Entity references are decoded in place.
+ *
+ * A TAIS message may carry several {@code <record>} elements (one per track / flight plan). Each
+ * one gets its own slot set, filled in the same single pass; {@link #select} picks the record the
+ * accessors read from. Documents without record elements are treated as one record.
+ *
+ * Payloads that are not ASCII-compatible (UTF-16 BOM / NUL bytes) are rejected by {@link #scan} so
+ * the caller can fall back to StAX.
+ */
+final class TaisScanner {
+
+    static final int ACID = 0;
+    static final int AC_ADDRESS = 1;
+    static final int TRACK_NUM = 2;
+    static final int ASSIGNED_BEACON_CODE = 3;
+    static final int REPORTED_BEACON_CODE = 4;
+    static final int FLIGHT_RULES = 5;
+    static final int RAW_FLIGHT_RULES = 6;
+    static final int DEPARTURE_AIRPORT = 7;
+    static final int DESTINATION_AIRPORT = 8;
+    static final int FIELD_COUNT = 9;
+
+    // Indexed by the constants above; must stay in sync with TaisJsonConsumer.WANTED_TAGS.
+    private static final String[] NAMES = {
+            "acid",
+            "acAddress",
+            "trackNum",
+            "assignedBeaconCode",
+            "reportedBeaconCode",
+            "flightRules",
+            "rawFlightRules",
+            "departureAirport",
+            "destinationAirport",
+    };
+    private static final byte[][] TAGS = new byte[FIELD_COUNT][];
+    static {
+        for (int f = 0; f < FIELD_COUNT; f++) TAGS[f] = ascii(NAMES[f]);
+    }
+
+    private static final byte[] CDATA_OPEN = ascii("<![CDATA[");
+    private static final byte[] RECORD = ascii("record");
+
+    // Slot set 0 collects fields outside any <record>; records 1..n follow, FIELD_COUNT slots each.
+    private int[] start;
+    private int[] len;
+    private int records;
+    private int base;           // slot offset of the selected record
+    private byte[] buf;
+
+    // Scratch for the StAX fallback path (see fill) and detached copies
+    private byte[] scratch;
+
+    TaisScanner() {
+        this(8, 256);
+    }
+
+    private TaisScanner(int slotSets, int scratchBytes) {
+        this.start = new int[FIELD_COUNT * slotSets];
+        this.len = new int[FIELD_COUNT * slotSets];
+        this.scratch = new byte[scratchBytes];
+    }
+
+    /** Scans {@code buf[off, end)}. Returns false if the payload is not ASCII-compatible XML. */
+    boolean scan(byte[] buf, int off, int end) {
+        clear();
+        this.buf = buf;
+
+        if (end - off >= 2 && (buf[off] == 0 || buf[off + 1] == 0
+                || (buf[off] == (byte) 0xFE && buf[off + 1] == (byte) 0xFF)
+                || (buf[off] == (byte) 0xFF && buf[off + 1] == (byte) 0xFE))) {
+            return false;
+        }
+
+        int set = 0;            // slot set receiving fields right now
+        int i = off;
+        while (i < end) {
+            int lt = indexOf(buf, (byte) '<', i, end);
+            if (lt < 0 || lt + 1 >= end) break;
+            i = lt + 1;
+
+            byte c = buf[i];
+            if (c == '?') { i = skipPast(buf, i, end, '?', '>'); continue; }
+            if (c == '!') { i = skipMarkup(buf, lt, end); continue; }
+            if (c == '/') {
+                int nameStart = ++i;
+                while (i < end && !isNameEnd(buf[i])) i++;
+                if (isRecord(buf, localStart(buf, nameStart, i), i)) set = 0;
+                i = skipTag(buf, i, end);
+                continue;
+            }
+
+            // Start tag: qualified name, then attributes up to '>'
+            int nameStart = i;
+            while (i < end && !isNameEnd(buf[i])) i++;
+            int nameEnd = i;
+            int gt = skipTag(buf, i, end) - 1;
+            if (gt >= end) break;
+            i = gt + 1;
+            if (buf[gt - 1] == '/') continue;   // <tag/>: no text
+
+            int local = localStart(buf, nameStart, nameEnd);
+            if (isRecord(buf, local, nameEnd)) {
+                set = ++records;
+                ensureSets(set + 1);
+                continue;
+            }
+
+            int field = match(buf, local, nameEnd);
+            if (field < 0) continue;
+
+            // Leaf value: text (or a single CDATA section) immediately followed by the matching end tag
+            int vStart = i;
+            int vEnd;
+            int closeAt;
+            boolean cdata = startsWith(buf, vStart, end, CDATA_OPEN);
+            if (cdata) {
+                vStart += CDATA_OPEN.length;
+                vEnd = indexOfCdataEnd(buf, vStart, end);
+                if (vEnd < 0) break;
+                closeAt = vEnd + 3;
+                while (closeAt < end && isWs(buf[closeAt])) closeAt++;
+            } else {
+                vEnd = indexOf(buf, (byte) '<', vStart, end);
+                if (vEnd < 0) break;
+                closeAt = vEnd;
+            }
+            if (!isEndTag(buf, closeAt, end, nameStart, nameEnd)) continue;   // mixed content: ignore like StAX path
+
+            while (vStart < vEnd && isWs(buf[vStart])) vStart++;
+            while (vEnd > vStart && isWs(buf[vEnd - 1])) vEnd--;
+            if (!cdata) {
+                vEnd = decodeEntities(buf, vStart, vEnd);
+            }
+            if (vEnd > vStart) {
+                start[set * FIELD_COUNT + field] = vStart;
+                len[set * FIELD_COUNT + field] = vEnd - vStart;
+            }
+            i = closeAt;
+        }
+        select(0);
+        return true;
+    }
+
+    /** Number of records found by the last scan (at least 1). */
+    int records() {
+        return Math.max(1, records);
+    }
+
+    /** Points the field accessors at record {@code r} (0-based). */
+    void select(int r) {
+        base = (records == 0 ? 0 : r + 1) * FIELD_COUNT;
+    }
+
+    /**
+     * Copies the selected record into a standalone single-record scanner backed by its own compact
+     * buffer, so it can outlive the payload buffer (e.g. when handed to another thread).
+     */
+    TaisScanner detach() {
+        int total = 0;
+        for (int f = 0; f < FIELD_COUNT; f++) total += len[base + f];
+
+        TaisScanner copy = new TaisScanner(1, total);
+        int pos = 0;
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            int n = len[base + f];
+            if (n == 0) continue;
+            System.arraycopy(buf, start[base + f], copy.scratch, pos, n);
+            copy.start[f] = pos;
+            copy.len[f] = n;
+            pos += n;
+        }
+        copy.buf = copy.scratch;
+        return copy;
+    }
+
+    /** Loads slots from an already-parsed field map (StAX fallback), keyed by tag local name. */
+    void fill(Map<String, String> fields) {
+        clear();
+        int pos = 0;
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            String v = fields.get(NAMES[f]);
+            if (v == null) continue;
+            byte[] b = v.getBytes(StandardCharsets.UTF_8);
+            if (pos + b.length > scratch.length) {
+                byte[] grown = new byte[Math.max(scratch.length * 2, pos + b.length)];
+                System.arraycopy(scratch, 0, grown, 0, pos);
+                scratch = grown;
+            }
+            System.arraycopy(b, 0, scratch, pos, b.length);
+            start[f] = pos;
+            len[f] = b.length;
+            pos += b.length;
+        }
+        this.buf = scratch;
+        select(0);
+    }
+
+    boolean has(int field) { return len[base + field] > 0; }
+    int start(int field) { return start[base + field]; }
+    int length(int field) { return len[base + field]; }
+    byte[] buffer() { return buf; }
+
+    /** ASCII case-insensitive comparison of a slot against an upper-case literal. */
+    boolean equalsIgnoreCase(int field, byte[] upper) {
+        int n = len[base + field];
+        if (n != upper.length) return false;
+        int s = start[base + field];
+        for (int k = 0; k < n; k++) {
+            int b = buf[s + k];
+            if (b >= 'a' && b <= 'z') b -= 32;
+            if (b != upper[k]) return false;
+        }
+        return true;
+    }
+
+    /** Parses a slot as an unsigned integer in {@code radix} (10 or 16); -1 if absent or malformed. */
+    long parseUnsigned(int field, int radix) {
+        int n = len[base + field];
+        if (n == 0 || n > 10) return -1;
+        long v = 0;
+        int s = start[base + field];
+        for (int k = 0; k < n; k++) {
+            int d = Character.digit(buf[s + k], radix);
+            if (d < 0) return -1;
+            v = v * radix + d;
+        }
+        return v;
+    }
+
+    private void clear() {
+        int n = (records + 1) * FIELD_COUNT;
+        for (int k = 0; k < n; k++) {
+            start[k] = 0;
+            len[k] = 0;
+        }
+        records = 0;
+    }
+
+    private void ensureSets(int sets) {
+        int need = sets * FIELD_COUNT;
+        if (need <= start.length) return;
+        int cap = Math.max(need, start.length * 2);
+        start = Arrays.copyOf(start, cap);
+        len = Arrays.copyOf(len, cap);
+    }
+
+    private static boolean isRecord(byte[] buf, int from, int to) {
+        if (to - from != RECORD.length) return false;
+        for (int k = 0; k < RECORD.length; k++) {
+            if (buf[from + k] != RECORD[k]) return false;
+        }
+        return true;
+    }
+
+    private static int match(byte[] buf, int from, int to) {
+        int n = to - from;
+        outer:
+        for (int f = 0; f < FIELD_COUNT; f++) {
+            byte[] t = TAGS[f];
+            if (t.length != n) continue;
+            for (int k = 0; k < n; k++) {
+                if (buf[from + k] != t[k]) continue outer;
+            }
+            return f;
+        }
+        return -1;
+    }
+
+    private static int localStart(byte[] buf, int from, int to) {
+        for (int k = to - 1; k >= from; k--) {
+            if (buf[k] == ':') return k + 1;
+        }
+        return from;
+    }
+
+    // "</" + same qualified name + optional whitespace + ">"
+    private static boolean isEndTag(byte[] buf, int at, int end, int nameStart, int nameEnd) {
+        int n = nameEnd - nameStart;
+        if (at + 2 + n >= end || buf[at] != '<' || buf[at + 1] != '/') return false;
+        for (int k = 0; k < n; k++) {
+            if (buf[at + 2 + k] != buf[nameStart + k]) return false;
+        }
+        int p = at + 2 + n;
+        while (p < end && isWs(buf[p])) p++;
+        return p < end && buf[p] == '>';
+    }
+
+    // Returns the index just past the '>' closing a tag, honouring quoted attribute values.
+    private static int skipTag(byte[] buf, int i, int end) {
+        byte quote = 0;
+        while (i < end) {
+            byte c = buf[i++];
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
+        }
+        return end + 1;
+    }
+
+    // Comments, CDATA outside wanted elements, DOCTYPE
+    private static int skipMarkup(byte[] buf, int lt, int end) {
+        if (lt + 3 < end && buf[lt + 2] == '-' && buf[lt + 3] == '-') {
+            for (int i = lt + 4; i + 2 < end; i++) {
+                if (buf[i] == '-' && buf[i + 1] == '-' && buf[i + 2] == '>') return i + 3;
+            }
+            return end;
+        }
+        if (startsWith(buf, lt, end, CDATA_OPEN)) {
+            int e = indexOfCdataEnd(buf, lt + CDATA_OPEN.length, end);
+            return e < 0 ? end : e + 3;
+        }
+        return skipTag(buf, lt + 1, end);
+    }
+
+    private static int skipPast(byte[] buf, int i, int end, char a, char b) {
+        for (; i + 1 < end; i++) {
+            if (buf[i] == a && buf[i + 1] == b) return i + 2;
+        }
+        return end;
+    }
+
+    private static int indexOfCdataEnd(byte[] buf, int i, int end) {
+        for (; i + 2 < end; i++) {
+            if (buf[i] == ']' && buf[i + 1] == ']' && buf[i + 2] == '>') return i;
+        }
+        return -1;
+    }
+
+    // Decodes the predefined and numeric entities in buf[from, to) in place; returns the new end.
+    private static int decodeEntities(byte[] buf, int from, int to) {
+        int amp = indexOf(buf, (byte) '&', from, to);
+        if (amp < 0) return to;
+
+        int w = amp;
+        int r = amp;
+        while (r < to) {
+            byte c = buf[r];
+            if (c != '&') { buf[w++] = c; r++; continue; }
+            int semi = indexOf(buf, (byte) ';', r + 1, Math.min(to, r + 12));
+            if (semi < 0) { buf[w++] = c; r++; continue; }
+
+            int cp = entityCodePoint(buf, r + 1, semi);
+            if (cp < 0) { buf[w++] = c; r++; continue; }
+            w = putUtf8(buf, w, cp);
+            r = semi + 1;
+        }
+        return w;
+    }
+
+    private static int entityCodePoint(byte[] buf, int from, int to) {
+        int n = to - from;
+        if (n >= 2 && buf[from] == '#') {
+            int radix = 10;
+            int p = from + 1;
+            if (buf[p] == 'x' || buf[p] == 'X') { radix = 16; p++; }
+            if (p >= to) return -1;
+            int v = 0;
+            for (; p < to; p++) {
+                int d = Character.digit(buf[p], radix);
+                if (d < 0 || v > 0x10FFFF) return -1;
+                v = v * radix + d;
+            }
+            return v <= 0x10FFFF ? v : -1;
+        }
+        if (n == 2 && buf[from] == 'l' && buf[from + 1] == 't') return '<';
+        if (n == 2 && buf[from] == 'g' && buf[from + 1] == 't') return '>';
+        if (n == 3 && buf[from] == 'a' && buf[from + 1] == 'm' && buf[from + 2] == 'p') return '&';
+        if (n == 4 && buf[from] == 'q' && buf[from + 1] == 'u' && buf[from + 2] == 'o' && buf[from + 3] == 't') return '"';
+        if (n == 4 && buf[from] == 'a' && buf[from + 1] == 'p' && buf[from + 2] == 'o' && buf[from + 3] == 's') return '\'';
+        return -1;
+    }
+
+    // An entity reference is always at least as long as its UTF-8 encoding, so this never overtakes the reader.
+    private static int putUtf8(byte[] buf, int w, int cp) {
+        if (cp < 0x80) {
+            buf[w++] = (byte) cp;
+        } else if (cp < 0x800) {
+            buf[w++] = (byte) (0xC0 | (cp >> 6));
+            buf[w++] = (byte) (0x80 | (cp & 0x3F));
+        } else if (cp < 0x10000) {
+            buf[w++] = (byte) (0xE0 | (cp >> 12));
+            buf[w++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[w++] = (byte) (0x80 | (cp & 0x3F));
+        } else {
+            buf[w++] = (byte) (0xF0 | (cp >> 18));
+            buf[w++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buf[w++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buf[w++] = (byte) (0x80 | (cp & 0x3F));
+        }
+        return w;
+    }
+
+    private static boolean startsWith(byte[] buf, int at, int end, byte[] prefix) {
+        if (at + prefix.length > end) return false;
+        for (int k = 0; k < prefix.length; k++) {
+            if (buf[at + k] != prefix[k]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static boolean isNameEnd(byte c) {
+        return c == '>' || c == '/' || isWs(c);
+    }
+
+    private static boolean isWs(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
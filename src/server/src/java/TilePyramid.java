@@ -0,0 +1,152 @@
+package dev.vstars;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Multi-resolution view of a precip grid (ITWS_PYRAMID): level 0 is the frame itself, each further
+ * level halves both dimensions by taking the max of every 2x2 block (so a level 6 cell never
+ * disappears into an average), down to a level that fits in one tile.
+ *
+ * Every level is cut into tileSize x tileSize tiles named by a hash of their content. The endpoint
+ * keeps tiles by hash, so per product and site only tiles whose content it has not been sent with
+ * the previous frame go out; the rest are referenced by hash. If the endpoint lost them (409), the
+ * same frame is sent again carrying every tile.
+ */
+final class TilePyramid {
+
+    /** One resolution level, row-major, with its tiles' hashes in row-major tile order. */
+    static final class Level {
+        final int z, rows, cols;
+        final byte[] cells;
+        final String[] tiles;
+
+        private Level(int z, int rows, int cols, byte[] cells, String[] tiles) {
+            this.z = z;
+            this.rows = rows;
+            this.cols = cols;
+            this.cells = cells;
+            this.tiles = tiles;
+        }
+    }
+
+    /** The pyramid of one frame, plus the tiles (by hash) the endpoint does not have yet. */
+    static final class Update {
+        final int tileSize;
+        final List<Level> levels;
+        final Map<String, byte[]> newTiles;   // hash -> cells, row-major, clipped at the level edge
+
+        private Update(int tileSize, List<Level> levels, Map<String, byte[]> newTiles) {
+            this.tileSize = tileSize;
+            this.levels = levels;
+            this.newTiles = newTiles;
+        }
+    }
+
+    private final int tileSize;
+    private final MessageDigest sha;
+    private final Map<String, Set<String>> sent = new HashMap<>();   // product/site -> hashes of the last frame
+    private volatile boolean resendRequested;
+
+    TilePyramid(int tileSize) {
+        this.tileSize = Math.max(8, tileSize);
+        try {
+            this.sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The endpoint is missing tiles: the next {@link #next} call sends every tile. */
+    void resendAll() {
+        resendRequested = true;
+    }
+
+    Update next(ItwsJsonConsumer.PrecipFrame f) {
+        if (resendRequested) {
+            resendRequested = false;
+            sent.clear();
+        }
+
+        String key = f.productId + "/" + f.site;
+        Set<String> had = sent.getOrDefault(key, Set.of());
+        Set<String> now = new HashSet<>();
+        Map<String, byte[]> newTiles = new LinkedHashMap<>();
+        List<Level> levels = new ArrayList<>();
+
+        byte[] cells = f.grid;
+        int rows = f.rows, cols = f.cols;
+        for (int z = 0; ; z++) {
+            Level level = cut(z, rows, cols, cells, had, now, newTiles);
+            levels.add(level);
+            if (rows <= tileSize && cols <= tileSize) break;
+
+            int r2 = (rows + 1) >> 1, c2 = (cols + 1) >> 1;
+            cells = maxPool(cells, rows, cols, r2, c2);
+            rows = r2;
+            cols = c2;
+        }
+
+        sent.put(key, now);
+        return new Update(tileSize, levels, newTiles);
+    }
+
+    private Level cut(int z, int rows, int cols, byte[] cells, Set<String> had, Set<String> now,
+                      Map<String, byte[]> newTiles) {
+        int across = (cols + tileSize - 1) / tileSize;
+        int down = (rows + tileSize - 1) / tileSize;
+        String[] hashes = new String[across * down];
+
+        for (int ty = 0; ty < down; ty++) {
+            for (int tx = 0; tx < across; tx++) {
+                int y0 = ty * tileSize, x0 = tx * tileSize;
+                int h = Math.min(tileSize, rows - y0), w = Math.min(tileSize, cols - x0);
+
+                byte[] tile = new byte[h * w];
+                for (int y = 0; y < h; y++) {
+                    System.arraycopy(cells, (y0 + y) * cols + x0, tile, y * w, w);
+                }
+                String hash = hash(tile, w, h);
+                hashes[ty * across + tx] = hash;
+                if (now.add(hash) && !had.contains(hash)) newTiles.put(hash, tile);
+            }
+        }
+        return new Level(z, rows, cols, cells, hashes);
+    }
+
+    // 2x2 max; the last row/column of an odd-sized level pools with itself
+    private static byte[] maxPool(byte[] src, int rows, int cols, int r2, int c2) {
+        byte[] out = new byte[r2 * c2];
+        for (int y = 0; y < r2; y++) {
+            int a = (2 * y) * cols;
+            int b = Math.min(2 * y + 1, rows - 1) * cols;
+            for (int x = 0; x < c2; x++) {
+                int x0 = 2 * x, x1 = Math.min(2 * x + 1, cols - 1);
+                out[y * c2 + x] = (byte) Math.max(Math.max(src[a + x0], src[a + x1]), Math.max(src[b + x0], src[b + x1]));
+            }
+        }
+        return out;
+    }
+
+    // First 64 bits of SHA-256 over the tile's shape and cells, as hex
+    private String hash(byte[] tile, int w, int h) {
+        sha.reset();
+        sha.update((byte) (w >> 8));
+        sha.update((byte) w);
+        sha.update((byte) (h >> 8));
+        sha.update((byte) h);
+        byte[] d = sha.digest(tile);
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = 0; i < 8; i++) {
+            sb.append(Character.forDigit((d[i] >> 4) & 0xF, 16)).append(Character.forDigit(d[i] & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
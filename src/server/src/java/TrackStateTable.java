@@ -0,0 +1,163 @@
+package dev.vstars;
+
+/**
+ * Last-forwarded state per TAIS track, keyed by a primitive int (24-bit ICAO address, or a track
+ * number tagged with the high bit when the address is missing).
+ *
+ * Open addressing with linear probing and backward-shift deletion, so lookups never allocate and
+ * TTL eviction leaves no tombstones behind. Not thread-safe; owned by the consumer thread.
+ */
+final class TrackStateTable {
+
+    private static final float MAX_LOAD = 0.6f;
+
+    private final long keepAliveMs;
+    private final long ttlMs;
+
+    private int[] keys;
+    private boolean[] used;
+    private long[] fingerprints;  // hash of the forwarded fields (callsign, beacon, rulesLabel)
+    private long[] lastSentMs;
+    private long[] lastSeenMs;
+    private long[] lastSourceTs;  // newest broker timestamp applied, for out-of-order detection
+    private int mask;
+    private int size;
+
+    TrackStateTable(int expectedTracks, long keepAliveMs, long ttlMs) {
+        this.keepAliveMs = keepAliveMs;
+        this.ttlMs = ttlMs;
+        allocate(tableSizeFor(expectedTracks));
+    }
+
+    /**
+     * Records that {@code key} was seen with {@code fingerprint} and decides whether to forward it:
+     * true for new tracks, changed fields, or when the keep-alive interval has elapsed.
+     */
+    boolean shouldForward(int key, long fingerprint, long nowMs) {
+        return shouldForward(key, fingerprint, nowMs, Long.MIN_VALUE);
+    }
+
+    /**
+     * As {@link #shouldForward(int, long, long)}, but also rejects updates whose broker timestamp is
+     * older than one already applied for the track. Needed when competing consumers on one queue can
+     * hand the same track's messages over out of order.
+     */
+    boolean shouldForward(int key, long fingerprint, long nowMs, long sourceTs) {
+        int i = indexOf(key);
+        if (i >= 0) {
+            if (sourceTs < lastSourceTs[i]) return false;
+            lastSourceTs[i] = sourceTs;
+            lastSeenMs[i] = nowMs;
+            if (fingerprints[i] == fingerprint && nowMs - lastSentMs[i] < keepAliveMs) {
+                return false;
+            }
+            fingerprints[i] = fingerprint;
+            lastSentMs[i] = nowMs;
+            return true;
+        }
+
+        if (size + 1 > (int) (keys.length * MAX_LOAD)) {
+            rehash(keys.length << 1);
+        }
+        insert(key, fingerprint, nowMs, nowMs, sourceTs);
+        return true;
+    }
+
+    /** Drops tracks not seen within the TTL. Returns the number of evicted entries. */
+    int evictStale(long nowMs) {
+        int evicted = 0;
+        int i = 0;
+        while (i < keys.length) {
+            if (used[i] && nowMs - lastSeenMs[i] >= ttlMs) {
+                removeAt(i);
+                evicted++;
+                // removeAt may have shifted a later entry into slot i; re-check it
+                continue;
+            }
+            i++;
+        }
+        return evicted;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int indexOf(int key) {
+        int i = mix(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(int key, long fingerprint, long sentMs, long seenMs, long sourceTs) {
+        int i = mix(key) & mask;
+        while (used[i]) i = (i + 1) & mask;
+        used[i] = true;
+        keys[i] = key;
+        fingerprints[i] = fingerprint;
+        lastSentMs[i] = sentMs;
+        lastSeenMs[i] = seenMs;
+        lastSourceTs[i] = sourceTs;
+        size++;
+    }
+
+    // Backward-shift deletion: pull later members of the probe run into the hole so lookups stay correct.
+    private void removeAt(int hole) {
+        int j = hole;
+        while (true) {
+            j = (j + 1) & mask;
+            if (!used[j]) break;
+            int home = mix(keys[j]) & mask;
+            boolean movable = (hole <= j) ? (home <= hole || home > j) : (home <= hole && home > j);
+            if (movable) {
+                keys[hole] = keys[j];
+                fingerprints[hole] = fingerprints[j];
+                lastSentMs[hole] = lastSentMs[j];
+                lastSeenMs[hole] = lastSeenMs[j];
+                lastSourceTs[hole] = lastSourceTs[j];
+                hole = j;
+            }
+        }
+        used[hole] = false;
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        long[] oldFp = fingerprints;
+        long[] oldSent = lastSentMs;
+        long[] oldSeen = lastSeenMs;
+        long[] oldSource = lastSourceTs;
+
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) insert(oldKeys[i], oldFp[i], oldSent[i], oldSeen[i], oldSource[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        used = new boolean[capacity];
+        fingerprints = new long[capacity];
+        lastSentMs = new long[capacity];
+        lastSeenMs = new long[capacity];
+        lastSourceTs = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int tableSizeFor(int expected) {
+        int need = (int) Math.min(1 << 30, (long) (Math.max(16, expected) / MAX_LOAD) + 1);
+        return Integer.highestOneBit(need - 1) << 1;
+    }
+
+    // ICAO addresses are clustered by registry block; scramble so probe runs stay short.
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
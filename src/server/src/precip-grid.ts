@@ -0,0 +1,105 @@
+// Decoder for the ITWS consumer's binary frame body (application/x-precip-grid, see PrecipGridCodec.java).
+// Produces the same object the JSON body parses to, so both go through normalizeWxIngestPayload.
+
+export const PRECIP_GRID_CONTENT_TYPE = "application/x-precip-grid";
+
+const HEADER_BYTES = 60;
+const FLAG_TRUNCATED = 1;
+
+export function isPrecipGridContentType(contentType: string | undefined): boolean {
+  return !!contentType && contentType.split(";")[0].trim().toLowerCase() === PRECIP_GRID_CONTENT_TYPE;
+}
+
+// Returns null if the buffer is not a well-formed version 1 frame
+export function decodePrecipGrid(buf: Buffer): Record<string, unknown> | null {
+  if (buf.length < HEADER_BYTES + 4 || buf.toString("latin1", 0, 4) !== "PGRD" || buf.readUInt8(4) !== 1) {
+    return null;
+  }
+  const bits = buf.readUInt8(5);
+  if (bits !== 0 && bits !== 4 && bits !== 8) {
+    return null;
+  }
+  const flags = buf.readUInt16BE(6);
+
+  let offset = HEADER_BYTES;
+  const strings: string[] = [];
+  for (let i = 0; i < 5; i++) {
+    if (offset + 2 > buf.length) return null;
+    const len = buf.readUInt16BE(offset);
+    offset += 2;
+    if (offset + len > buf.length) return null;
+    strings.push(buf.toString("utf8", offset, offset + len));
+    offset += len;
+  }
+  const [receivedAt, productName, site, airport, compression] = strings;
+
+  if (offset + 4 > buf.length) return null;
+  const count = buf.readUInt32BE(offset);
+  offset += 4;
+  const cells = bits === 0 ? decodeRuns(buf, offset, count) : decodePacked(buf, offset, count, bits);
+  if (!cells) return null;
+
+  const frame: Record<string, unknown> = {
+    receivedAt,
+    productId: buf.readInt32BE(8),
+    productName,
+    site,
+    airport,
+    rows: buf.readInt32BE(12),
+    cols: buf.readInt32BE(16),
+    trp: {
+      latDeg: buf.readInt32BE(20) / 1_000_000,
+      lonDeg: buf.readInt32BE(24) / 1_000_000
+    },
+    gridGeom: {
+      xOffsetM: buf.readInt32BE(28),
+      yOffsetM: buf.readInt32BE(32),
+      dxM: buf.readInt32BE(36),
+      dyM: buf.readInt32BE(40),
+      rotationDeg: buf.readInt32BE(44) / 1000
+    },
+    special: {
+      attenuated: buf.readUInt8(48),
+      apDetected: buf.readUInt8(49),
+      badValue: buf.readUInt8(50),
+      noCoverage: buf.readUInt8(51)
+    },
+    compression,
+    maxPrecipLevel: buf.readInt32BE(52),
+    filledCells: buf.readInt32BE(56),
+    layout: bits === 0 ? "rle" : "row-major",
+    [bits === 0 ? "runs" : "cells"]: cells
+  };
+  if ((flags & FLAG_TRUNCATED) !== 0) {
+    frame.cellsTruncated = true;
+  }
+  return frame;
+}
+
+function decodePacked(buf: Buffer, offset: number, count: number, bits: number): number[] | null {
+  const cellBytes = bits === 4 ? Math.ceil(count / 2) : count;
+  if (offset + cellBytes > buf.length) return null;
+
+  const cells = new Array<number>(count);
+  if (bits === 8) {
+    for (let i = 0; i < count; i++) cells[i] = buf[offset + i];
+  } else {
+    for (let i = 0; i < count; i++) {
+      const b = buf[offset + (i >> 1)];
+      cells[i] = (i & 1) === 0 ? b >> 4 : b & 0x0f;
+    }
+  }
+  return cells;
+}
+
+// [[level, count], ...] as in the JSON body's "runs"
+function decodeRuns(buf: Buffer, offset: number, runCount: number): number[][] | null {
+  if (offset + runCount * 5 > buf.length) return null;
+
+  const runs = new Array<number[]>(runCount);
+  for (let i = 0; i < runCount; i++) {
+    runs[i] = [buf[offset], buf.readUInt32BE(offset + 1)];
+    offset += 5;
+  }
+  return runs;
+}